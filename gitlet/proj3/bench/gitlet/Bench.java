@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** Timing and fixture helpers shared by the gitlet micro-benchmarks.
+ *  @author Joshua Park
+ */
+class Bench {
+
+    /** Random number seed for reproducibility. */
+    static final long RANDOM_SEED = 12345654321L;
+
+    /** Minimum time spent measuring each operation, in nanoseconds. */
+    static final long MIN_NANOS = 500_000_000L;
+
+    /** Returns the mean time in nanoseconds of one execution of OP,
+     *  after running it unmeasured at least WARMUP times and for at
+     *  least MIN_NANOS. */
+    static double nanosPerOp(Runnable op, int warmup) {
+        long warmStart = System.nanoTime();
+        for (int i = 0; i < warmup
+                 || System.nanoTime() - warmStart < MIN_NANOS; i += 1) {
+            op.run();
+        }
+        long reps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            op.run();
+            reps += 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_NANOS);
+        return (double) elapsed / reps;
+    }
+
+    /** Returns a Random seeded with RANDOM_SEED. */
+    static Random random() {
+        return new Random(RANDOM_SEED);
+    }
+
+    /** Returns a random hexadecimal SHA-1 id drawn from R. */
+    static String randomId(Random r) {
+        byte[] raw = new byte[Codec.ID_BYTES];
+        r.nextBytes(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns a new empty temporary directory named after PREFIX. */
+    static File tempDir(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the total size in bytes of the plain files under DIR. */
+    static long diskUsage(File dir) {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                total += f.isDirectory() ? diskUsage(f) : f.length();
+            }
+        }
+        return total;
+    }
+
+    /** Deletes DIR and everything under it. */
+    static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteAll(f);
+            }
+        }
+        dir.delete();
+    }
+}
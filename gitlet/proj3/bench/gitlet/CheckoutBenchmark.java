@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Times checkout between branches of a synthetic flat tree, writing
+ *  the working files one at a time and with the default worker pool.
+ *  Branch "all" changes every file of master; branch "few" changes one
+ *  file in a hundred.  Each gitlet command runs in its own JVM in a
+ *  temporary repository, as it would from the shell, so the times
+ *  include JVM start-up.
+ *  Usage: java gitlet.CheckoutBenchmark [FILES]
+ *  @author Joshua Park
+ */
+public class CheckoutBenchmark {
+
+    /** Default number of files in the tree. */
+    private static final int DEFAULT_FILES = 50000;
+
+    /** Lines per file. */
+    private static final int LINES = 20;
+
+    /** Runs the benchmark on a tree of ARGS[0] files. */
+    public static void main(String... args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILES;
+        File repo = Bench.tempDir("gitlet-checkout");
+        try {
+            Random r = Bench.random();
+            gitlet(repo, "init");
+            commitTree(repo, r, n, 1, "master");
+            gitlet(repo, "branch", "all");
+            gitlet(repo, "branch", "few");
+            gitlet(repo, "checkout", "all");
+            commitTree(repo, r, n, 1, "all");
+            gitlet(repo, "checkout", "few");
+            commitTree(repo, r, n, 100, "few");
+            gitlet(repo, "checkout", "master");
+            System.out.printf("%d files%n", n);
+            System.out.printf("%-8s %14s %14s%n", "workers", "all ms",
+                              "few ms");
+            for (int workers : new int[] { 1, Parallel.THREADS }) {
+                Utils.writeContents(Utils.join(repo, ".gitlet", "config"),
+                                    "checkout.workers = " + workers + "\n");
+                double all = gitlet(repo, "checkout", "all")
+                    + gitlet(repo, "checkout", "master");
+                double few = gitlet(repo, "checkout", "few")
+                    + gitlet(repo, "checkout", "master");
+                System.out.printf("%-8d %14.0f %14.0f%n", workers, all / 2,
+                                  few / 2);
+            }
+        } finally {
+            Bench.deleteAll(repo);
+        }
+    }
+
+    /** Rewrites every STRIDEth of the N files in REPO with contents drawn
+     *  from R, then adds and commits them with message MSG. */
+    private static void commitTree(File repo, Random r, int n, int stride,
+                                   String msg) {
+        List<String> args = new ArrayList<>();
+        args.add("add");
+        for (int i = 0; i < n; i += stride) {
+            String name = "f" + i + ".txt";
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < LINES; k += 1) {
+                text.append(r.nextLong()).append('\n');
+            }
+            Utils.writeContents(Utils.join(repo, name), text.toString());
+            args.add(name);
+        }
+        gitlet(repo, args.toArray(new String[0]));
+        gitlet(repo, "commit", msg);
+    }
+
+    /** Runs gitlet with arguments ARGS in directory DIR and returns the
+     *  elapsed time in milliseconds.  Fails if it prints anything. */
+    private static double gitlet(File dir, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        try {
+            long start = System.nanoTime();
+            Process p = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).start();
+            String output = new String(p.getInputStream().readAllBytes());
+            p.waitFor();
+            double millis = (System.nanoTime() - start) / 1e6;
+            if (!output.isEmpty()) {
+                throw new IllegalStateException(args[0] + ": " + output);
+            }
+            return millis;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+}
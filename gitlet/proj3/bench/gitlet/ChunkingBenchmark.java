@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Measures the bytes on disk of a blob store holding near-duplicate
+ *  large files, and the time to store them, with whole blobs and with
+ *  content-defined chunks.  The sample is a random base file and copies
+ *  of it, each with a few small edits, some of which insert or delete
+ *  bytes and so shift everything after them, plus one unchanged copy
+ *  under another name.
+ *  Usage: java gitlet.ChunkingBenchmark [MEGABYTES [COPIES]]
+ *  @author Joshua Park
+ */
+public class ChunkingBenchmark {
+
+    /** Default size of the base file, in megabytes. */
+    private static final int DEFAULT_MEGABYTES = 16;
+
+    /** Default number of edited copies. */
+    private static final int DEFAULT_COPIES = 8;
+
+    /** Edits made to each copy. */
+    private static final int EDITS = 4;
+
+    /** Longest run of bytes replaced, inserted or deleted by an edit. */
+    private static final int EDIT_SIZE = 100;
+
+    /** Runs the benchmark with the sizes in ARGS. */
+    public static void main(String... args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_MEGABYTES;
+        int copies = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_COPIES;
+        File work = Bench.tempDir("gitlet-chunking");
+        try {
+            List<Blob> sample = sample(Bench.random(), work,
+                                       megabytes << 20, copies);
+            long raw = 0;
+            for (Blob blob : sample) {
+                raw += Utils.join(work, blob.getFilename()).length();
+            }
+            System.out.printf("sample: %d files, %d bytes%n", sample.size(),
+                              raw);
+            System.out.printf("%-8s %12s %8s %12s %12s%n", "format",
+                              "bytes", "ratio", "store ms", "checkout ms");
+            run(work, sample, false, raw);
+            run(work, sample, true, raw);
+        } finally {
+            Bench.deleteAll(work);
+        }
+    }
+
+    /** Stores SAMPLE, whose files are in WORK and total RAW bytes, in a
+     *  fresh store, in chunks if CHUNKED and otherwise as whole raw
+     *  blobs, checks every blob out again, and prints the store size and
+     *  the times taken. */
+    private static void run(File work, List<Blob> sample, boolean chunked,
+                            long raw) {
+        File dir = Bench.tempDir("gitlet-blobs");
+        File out = Utils.join(dir, "checkout");
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            long start = System.nanoTime();
+            for (Blob blob : sample) {
+                if (chunked) {
+                    blob.storeChunked(store);
+                } else {
+                    blob.store(store, 0);
+                }
+            }
+            long stored = System.nanoTime();
+            long bytes = Bench.diskUsage(dir);
+            for (Blob blob : sample) {
+                new Blob(blob.getSha1(), blob.getFilename())
+                    .writeTo(out, store);
+            }
+            long checkedOut = System.nanoTime();
+            System.out.printf("%-8s %12d %8.3f %12.1f %12.1f%n",
+                              chunked ? "chunked" : "whole", bytes,
+                              (double) bytes / raw, (stored - start) / 1e6,
+                              (checkedOut - stored) / 1e6);
+        } finally {
+            Bench.deleteAll(dir);
+        }
+    }
+
+    /** Writes into WORK a base file of SIZE random bytes drawn from R,
+     *  COPIES edited copies of it and one renamed copy, and returns
+     *  unstored blobs for them. */
+    private static List<Blob> sample(Random r, File work, int size,
+                                     int copies) {
+        byte[] base = new byte[size];
+        r.nextBytes(base);
+        List<Blob> result = new ArrayList<>();
+        result.add(write(work, "base.bin", base));
+        result.add(write(work, "renamed.bin", base));
+        for (int i = 0; i < copies; i += 1) {
+            byte[] copy = base;
+            for (int e = 0; e < EDITS; e += 1) {
+                copy = edit(r, copy);
+            }
+            result.add(write(work, "copy" + i + ".bin", copy));
+        }
+        return result;
+    }
+
+    /** Returns DATA with one random edit drawn from R: a run of bytes
+     *  replaced, inserted or deleted. */
+    private static byte[] edit(Random r, byte[] data) {
+        int at = r.nextInt(data.length - EDIT_SIZE);
+        int n = 1 + r.nextInt(EDIT_SIZE);
+        byte[] run = new byte[n];
+        r.nextBytes(run);
+        switch (r.nextInt(3)) {
+        case 0:
+            byte[] replaced = data.clone();
+            System.arraycopy(run, 0, replaced, at, n);
+            return replaced;
+        case 1:
+            byte[] inserted = Arrays.copyOf(data, data.length + n);
+            System.arraycopy(run, 0, inserted, at, n);
+            System.arraycopy(data, at, inserted, at + n, data.length - at);
+            return inserted;
+        default:
+            byte[] deleted = Arrays.copyOf(data, data.length - n);
+            System.arraycopy(data, at + n, deleted, at,
+                             data.length - at - n);
+            return deleted;
+        }
+    }
+
+    /** Writes DATA to NAME in WORK and returns an unstored blob for it. */
+    private static Blob write(File work, String name, byte[] data) {
+        File file = Utils.join(work, name);
+        Utils.writeContents(file, data);
+        return new Blob(file, name);
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Compares the per-object cost and size of Java serialization with the
+ *  binary Codec for commits, and for addition stages of several sizes.
+ *  A commit names its root tree, so its size does not depend on the
+ *  number of files it tracks; a stage lists every staged file.
+ *  Usage: java gitlet.CodecBenchmark [FILES ...]
+ *  where each FILES is the number of staged files in a sample stage.
+ *  @author Joshua Park
+ */
+public class CodecBenchmark {
+
+    /** Default numbers of staged files per sample stage. */
+    private static final int[] DEFAULT_SIZES = { 0, 10, 1000, 100000 };
+
+    /** Runs the benchmark for the stage sizes in ARGS. */
+    public static void main(String... args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        Random r = Bench.random();
+        System.out.printf("%-16s %12s %12s %12s %12s%n", "object",
+                          "bytes", "encode ns", "decode ns", "format");
+        for (int parents = 1; parents <= 2; parents += 1) {
+            Commit commit = sampleCommit(r, parents);
+            String name = parents == 1 ? "commit" : "commit/merge";
+            report(name, "java",
+                   Utils.serialize(commit).length,
+                   Bench.nanosPerOp(() -> Utils.serialize(commit), 20),
+                   javaNanos(Utils.serialize(commit)));
+            report(name, "codec",
+                   commit.encode().length,
+                   Bench.nanosPerOp(commit::encode, 20),
+                   decodeNanos(commit.encode()));
+        }
+        for (int n : sizes) {
+            HashMap<String, ObjectId> stage = sampleStage(r, n);
+            HashMap<String, String> legacy = new HashMap<>();
+            for (Map.Entry<String, ObjectId> e : stage.entrySet()) {
+                legacy.put(e.getKey(), e.getValue().toString());
+            }
+            String name = "stage/" + n;
+            report(name, "java",
+                   Utils.serialize(legacy).length,
+                   Bench.nanosPerOp(() -> Utils.serialize(legacy), 20),
+                   stageNanos(Utils.serialize(legacy)));
+            report(name, "codec",
+                   Stages.encodeAddStage(stage).length,
+                   Bench.nanosPerOp(() -> Stages.encodeAddStage(stage), 20),
+                   stageNanos(Stages.encodeAddStage(stage)));
+        }
+    }
+
+    /** Returns the mean time to deserialize the commit serialized as
+     *  BYTES.  Gitlet never wrote tree commits in this form, so they are
+     *  read back with Utils.deserialize rather than Commit.decode. */
+    private static double javaNanos(byte[] bytes) {
+        return Bench.nanosPerOp(() -> Utils.deserialize(bytes, Commit.class),
+                                20);
+    }
+
+    /** Returns the mean time to decode the commit stored as BYTES. */
+    private static double decodeNanos(byte[] bytes) {
+        return Bench.nanosPerOp(() -> Commit.decode(bytes), 20);
+    }
+
+    /** Returns the mean time to decode the addition stage stored as
+     *  BYTES. */
+    private static double stageNanos(byte[] bytes) {
+        return Bench.nanosPerOp(() -> Stages.decodeAddStage(bytes), 20);
+    }
+
+    /** Prints one result line for format FORMAT of object NAME: its
+     *  encoded size BYTES and mean ENCODE and DECODE times. */
+    private static void report(String name, String format, int bytes,
+                               double encode, double decode) {
+        System.out.printf("%-16s %12d %12.0f %12.0f %12s%n", name, bytes,
+                          encode, decode, format);
+    }
+
+    /** Returns an unstored tree commit with PARENTS parents, drawn from
+     *  R. */
+    static Commit sampleCommit(Random r, int parents) {
+        return new Commit(Bench.randomId(r),
+                          parents > 1 ? Bench.randomId(r) : null,
+                          "sample commit", System.currentTimeMillis(), 0,
+                          Bench.randomId(r));
+    }
+
+    /** Returns an addition stage of N files, drawn from R. */
+    static HashMap<String, ObjectId> sampleStage(Random r, int n) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            result.put("file" + i + ".txt",
+                       ObjectId.fromHex(Bench.randomId(r)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures the bytes on disk of a blob store holding a synthetic sample
+ *  of working files, and the time to store and check them out, at several
+ *  deflate levels.  The sample mixes text, which compresses well, with
+ *  random binary data, which does not and should be stored raw.
+ *  Usage: java gitlet.CompressionBenchmark [LEVEL ...]
+ *  @author Joshua Park
+ */
+public class CompressionBenchmark {
+
+    /** Default deflate levels compared. */
+    private static final int[] DEFAULT_LEVELS = { 0, 1, 6, 9 };
+
+    /** Number of text files in the sample. */
+    private static final int TEXT_FILES = 200;
+
+    /** Number of binary files in the sample. */
+    private static final int BINARY_FILES = 20;
+
+    /** Size of each binary file. */
+    private static final int BINARY_SIZE = 256 * 1024;
+
+    /** Words from which text files are made. */
+    private static final String[] WORDS = {
+        "public", "static", "void", "int", "return", "if", "else", "for",
+        "String", "File", "new", "null", "this", "commit", "blob", "branch",
+        "=", "+", "(", ")", "{", "}", ";", "//", "the", "of", "a",
+    };
+
+    /** Runs the benchmark for the levels in ARGS. */
+    public static void main(String... args) {
+        int[] levels = DEFAULT_LEVELS;
+        if (args.length > 0) {
+            levels = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                levels[i] = Integer.parseInt(args[i]);
+            }
+        }
+        File work = Bench.tempDir("gitlet-compress");
+        try {
+            List<Blob> sample = sample(Bench.random(), work);
+            long raw = 0;
+            for (Blob blob : sample) {
+                raw += Utils.join(work, blob.getFilename()).length();
+            }
+            System.out.printf("sample: %d files, %d bytes%n", sample.size(),
+                              raw);
+            System.out.printf("%-8s %12s %8s %12s %12s%n", "level",
+                              "bytes", "ratio", "store ms", "checkout ms");
+            for (int level : levels) {
+                run(work, sample, level, raw);
+            }
+        } finally {
+            Bench.deleteAll(work);
+        }
+    }
+
+    /** Stores SAMPLE, whose files are in WORK and total RAW bytes, in a
+     *  fresh store at LEVEL and checks every blob out again, printing the
+     *  store size and the times taken. */
+    private static void run(File work, List<Blob> sample, int level,
+                            long raw) {
+        File dir = Bench.tempDir("gitlet-blobs");
+        File out = Utils.join(dir, "checkout");
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            long start = System.nanoTime();
+            for (Blob blob : sample) {
+                blob.store(store, level);
+            }
+            long stored = System.nanoTime();
+            long bytes = Bench.diskUsage(dir);
+            for (Blob blob : sample) {
+                new Blob(blob.getSha1(), blob.getFilename())
+                    .writeTo(out, store);
+            }
+            long checkedOut = System.nanoTime();
+            System.out.printf("%-8d %12d %8.3f %12.1f %12.1f%n", level,
+                              bytes, (double) bytes / raw,
+                              (stored - start) / 1e6,
+                              (checkedOut - stored) / 1e6);
+        } finally {
+            Bench.deleteAll(dir);
+        }
+    }
+
+    /** Writes the sample files into WORK, drawing contents from R, and
+     *  returns unstored blobs for them. */
+    private static List<Blob> sample(Random r, File work) {
+        List<Blob> result = new ArrayList<>();
+        for (int i = 0; i < TEXT_FILES; i += 1) {
+            StringBuilder text = new StringBuilder();
+            int lines = 20 + r.nextInt(400);
+            for (int k = 0; k < lines; k += 1) {
+                int words = 1 + r.nextInt(12);
+                for (int w = 0; w < words; w += 1) {
+                    text.append(WORDS[r.nextInt(WORDS.length)]).append(' ');
+                }
+                text.append('\n');
+            }
+            result.add(write(work, "text" + i + ".java",
+                             text.toString().getBytes()));
+        }
+        for (int i = 0; i < BINARY_FILES; i += 1) {
+            byte[] data = new byte[BINARY_SIZE];
+            r.nextBytes(data);
+            result.add(write(work, "binary" + i + ".bin", data));
+        }
+        return result;
+    }
+
+    /** Writes DATA to NAME in WORK and returns an unstored blob for it. */
+    private static Blob write(File work, String name, byte[] data) {
+        File file = Utils.join(work, name);
+        Utils.writeContents(file, data);
+        return new Blob(file, name);
+    }
+}
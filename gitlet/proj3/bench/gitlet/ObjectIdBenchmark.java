@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/** Compares hex String ids with ObjectIds in the file map of a large
+ *  commit: the heap the map retains, the time to compare the blob ids of
+ *  two versions of it file by file, as status and checkout do, and the
+ *  time to convert an id to and from hex.  The "string" hex time is that
+ *  of the Formatter loop Utils.sha1 used to build its result with.
+ *  Run with a fixed heap (e.g. -Xms1g -Xmx1g) for steady heap figures.
+ *  Usage: java gitlet.ObjectIdBenchmark [FILES]
+ *  @author Joshua Park
+ */
+public class ObjectIdBenchmark {
+
+    /** Default number of files in the commit. */
+    private static final int DEFAULT_FILES = 100000;
+
+    /** Files per directory in the sample paths. */
+    private static final int FILES_PER_DIR = 100;
+
+    /** Runs the benchmark on a commit of ARGS[0] files. */
+    public static void main(String... args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILES;
+        Random r = Bench.random();
+        List<String> paths = new ArrayList<>();
+        List<String> hex = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            paths.add("dir" + i / FILES_PER_DIR + "/file" + i + ".txt");
+            hex.add(Bench.randomId(r));
+        }
+        long base = usedHeap();
+        HashMap<String, String> strings = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            strings.put(paths.get(i), decodeHex(hex.get(i)));
+        }
+        long stringHeap = usedHeap() - base;
+        HashMap<String, String> stringCopy = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            stringCopy.put(paths.get(i), decodeHex(hex.get(i)));
+        }
+        base = usedHeap();
+        HashMap<String, ObjectId> ids = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            ids.put(paths.get(i), ObjectId.fromHex(hex.get(i)));
+        }
+        long idHeap = usedHeap() - base;
+        HashMap<String, ObjectId> idCopy = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            idCopy.put(paths.get(i), ObjectId.fromHex(hex.get(i)));
+        }
+
+        ObjectId id = ids.get(paths.get(0));
+        String text = hex.get(0);
+        byte[] raw = id.toRaw();
+        System.out.printf("%d files%n", n);
+        System.out.printf("%-8s %12s %10s %12s %10s %10s%n", "ids",
+                          "map bytes", "per file", "compare ms", "to hex ns",
+                          "parse ns");
+        System.out.printf("%-8s %12d %10.1f %12.2f %10.0f %10.0f%n",
+                          "string", stringHeap, (double) stringHeap / n,
+                          Bench.nanosPerOp(() -> same(strings, stringCopy),
+                                           5) / 1e6,
+                          Bench.nanosPerOp(() -> formatHex(raw), 1000),
+                          Bench.nanosPerOp(() -> Utils.fromHex(text), 1000));
+        System.out.printf("%-8s %12d %10.1f %12.2f %10.0f %10.0f%n",
+                          "objectid", idHeap, (double) idHeap / n,
+                          Bench.nanosPerOp(() -> same(ids, idCopy), 5) / 1e6,
+                          Bench.nanosPerOp(id::toString, 1000),
+                          Bench.nanosPerOp(() -> ObjectId.fromHex(text),
+                                           1000));
+        if (strings.size() + stringCopy.size() + ids.size() + idCopy.size()
+                != 4 * n) {
+            throw new IllegalStateException("maps lost entries");
+        }
+    }
+
+    /** Returns the number of files of A whose id in B is the same. */
+    private static <T> int same(HashMap<String, T> a, HashMap<String, T> b) {
+        int result = 0;
+        for (HashMap.Entry<String, T> e : a.entrySet()) {
+            if (e.getValue().equals(b.get(e.getKey()))) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns a new String equal to HEX, made as Codec used to decode
+     *  ids, so that it shares no storage with HEX. */
+    private static String decodeHex(String hex) {
+        return Utils.toHex(Utils.fromHex(hex));
+    }
+
+    /** Returns RAW in hex as Utils.sha1 used to format it. */
+    private static String formatHex(byte[] raw) {
+        Formatter result = new Formatter();
+        for (byte b : raw) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes of heap in use after collecting garbage. */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 4; i += 1) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
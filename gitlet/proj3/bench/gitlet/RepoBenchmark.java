@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/** Measures the gitlet commands on a repository built by RepoGenerator,
+ *  in the manner of a JMH throughput benchmark: each operation is run
+ *  unmeasured for a warm-up period and then measured for at least
+ *  Bench.MIN_NANOS, and its throughput, mean time and allocation rate
+ *  are reported.  Commands run in one warm JVM through
+ *  Daemon.runInProcess, as the daemon runs them, so the times leave out
+ *  JVM start-up.  Work done to set up each operation, such as writing
+ *  the file that add stages, is not measured.  Allocation is counted on
+ *  the benchmark thread only, so it leaves out checkout's writers.
+ *
+ *  The operations are status, log, global-log, find, the merge base of
+ *  master and b1, checkout of b1 and back, reset to the parent of
+ *  master's head and back, add of a file whose contents alternate, and
+ *  commit of a one-file change.  Commit runs last, since it lengthens
+ *  the history.  The repository is built in a temporary directory by a
+ *  child JVM running there, since gitlet works in the current directory.
+ *  Usage: java gitlet.RepoBenchmark [FILES [SIZE [COMMITS [BRANCHES
+ *         [MERGES]]]]]
+ *  @author Joshua Park
+ */
+public class RepoBenchmark {
+
+    /** First argument of the child JVM. */
+    private static final String CHILD = "--in-repo";
+
+    /** Default repository shape, as RepoGenerator arguments. */
+    private static final String[] DEFAULT_SHAPE = {
+        "2000", "1024", "200", "3", "0.1"
+    };
+
+    /** Bytes per megabyte. */
+    private static final double MB = 1e6;
+
+    /** Allocation counter of the benchmark thread. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+
+    /** Runs the benchmarks on a repository with the shape in ARGS. */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            measure(shape(args, 1));
+            return;
+        }
+        File repo = Bench.tempDir("gitlet-repo");
+        try {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + "/bin/java");
+            command.add("-cp");
+            command.add(absoluteClassPath());
+            command.add(RepoBenchmark.class.getName());
+            command.add(CHILD);
+            command.addAll(List.of(shape(args, 0)));
+            Process p = new ProcessBuilder(command).directory(repo)
+                .inheritIO().start();
+            if (p.waitFor() != 0) {
+                throw new IllegalStateException("benchmark failed");
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            Bench.deleteAll(repo);
+        }
+    }
+
+    /** Returns the repository shape given by ARGS[FROM ..], with the
+     *  defaults for what is missing. */
+    private static String[] shape(String[] args, int from) {
+        String[] result = DEFAULT_SHAPE.clone();
+        for (int i = from; i < args.length && i - from < result.length;
+             i += 1) {
+            result[i - from] = args[i];
+        }
+        return result;
+    }
+
+    /** Returns this JVM's class path with every entry made absolute, so
+     *  that it serves a JVM started in another directory. */
+    private static String absoluteClassPath() {
+        List<String> result = new ArrayList<>();
+        for (String entry
+                 : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                result.add(new File(entry).getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, result);
+    }
+
+    /** Builds a repository of shape SHAPE in the current directory and
+     *  measures each operation on it. */
+    private static void measure(String[] shape) {
+        int files = Integer.parseInt(shape[0]);
+        int size = Integer.parseInt(shape[1]);
+        int commits = Integer.parseInt(shape[2]);
+        int branches = Integer.parseInt(shape[3]);
+        double merges = Double.parseDouble(shape[4]);
+        long start = System.nanoTime();
+        new RepoGenerator(files, size, commits, branches, merges,
+                          Bench.RANDOM_SEED).generate();
+        System.out.println(RepoGenerator.describe(files, size, commits,
+                                                  branches, merges));
+        System.out.printf("generated in %.1f s%n",
+                          (System.nanoTime() - start) / 1e9);
+        System.out.printf("%-12s %12s %10s %12s %12s%n", "benchmark",
+                          "ops/s", "ms/op", "alloc MB/s", "alloc KB/op");
+
+        run("status", i -> { }, i -> RepoGenerator.run("status"));
+        run("log", i -> { }, i -> RepoGenerator.run("log"));
+        run("global-log", i -> { }, i -> RepoGenerator.run("global-log"));
+        run("find", i -> { },
+            i -> RepoGenerator.run("find", "initial files"));
+        String master = head(RepoGenerator.branch(0));
+        if (branches > 0) {
+            String other = head(RepoGenerator.branch(1));
+            run("merge-base", i -> { },
+                i -> CommitGraph.GRAPH.mergeBase(master, other));
+            run("checkout", i -> { },
+                i -> RepoGenerator.gitlet("checkout",
+                                          RepoGenerator.branch(1 - i % 2)));
+        }
+        String parent = CommitGraph.GRAPH.parent1(master);
+        if (parent != null) {
+            run("reset", i -> { },
+                i -> RepoGenerator.gitlet("reset", i % 2 == 0 ? parent
+                                          : master));
+        }
+        String path = RepoGenerator.path(0);
+        File file = new File(path);
+        String original = Utils.readContentsAsString(file);
+        run("add",
+            i -> Utils.writeContents(file, original
+                                     + (i % 2 == 0 ? "changed\n" : "")),
+            i -> RepoGenerator.gitlet("add", path));
+        run("commit",
+            i -> {
+                Utils.writeContents(file, original + i + "\n");
+                RepoGenerator.gitlet("add", path);
+            },
+            i -> RepoGenerator.gitlet("commit", "benchmark commit " + i));
+    }
+
+    /** Returns the id of the head commit of branch NAME. */
+    private static String head(String name) {
+        return Branch.decode(Utils.readContents(Branch.file(name)))
+            .getSha1();
+    }
+
+    /** Runs OP, after SETUP, repeatedly with the iteration number: for
+     *  Bench.MIN_NANOS unmeasured, then until OP has taken at least
+     *  Bench.MIN_NANOS, and prints OP's throughput, mean time and
+     *  allocation as benchmark NAME.  Ends after an even number of
+     *  iterations, so that operations that alternate end where they
+     *  began. */
+    private static void run(String name, IntConsumer setup, IntConsumer op) {
+        int i = 0;
+        long warmStart = System.nanoTime();
+        while (i % 2 != 0
+               || System.nanoTime() - warmStart < Bench.MIN_NANOS) {
+            setup.accept(i);
+            op.accept(i);
+            i += 1;
+        }
+        long nanos = 0;
+        long bytes = 0;
+        long ops = 0;
+        while (ops % 2 != 0 || nanos < Bench.MIN_NANOS) {
+            setup.accept(i);
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            op.accept(i);
+            nanos += System.nanoTime() - start;
+            bytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            ops += 1;
+            i += 1;
+        }
+        double seconds = nanos / 1e9;
+        System.out.printf("%-12s %12.1f %10.3f %12.1f %12.1f%n", name,
+                          ops / seconds, nanos / 1e6 / ops,
+                          bytes / MB / seconds, bytes / 1024.0 / ops);
+    }
+}
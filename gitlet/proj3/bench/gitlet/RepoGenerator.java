@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Builds a synthetic gitlet repository of a given shape in the current
+ *  directory, running each gitlet command in this JVM.  The shape is the
+ *  number of files, their size, the number of commits after the first,
+ *  the number of branches besides master and the merge density: the
+ *  fraction of commits made on a branch that are followed by a merge of
+ *  that branch into master.  Files lie a hundred to a directory.  Each
+ *  commit rewrites a line in each of a few files; each branch, master
+ *  included, only changes its own share of the files, so merges never
+ *  conflict, and the files of a branch's share are never changed behind
+ *  its back.  The same shape and seed always give the same history,
+ *  apart from commit times.
+ *  Usage: java gitlet.RepoGenerator [FILES [SIZE [COMMITS [BRANCHES
+ *         [MERGES]]]]], run in an empty directory.
+ *  @author Joshua Park
+ */
+public class RepoGenerator {
+
+    /** Files per directory. */
+    static final int FILES_PER_DIR = 100;
+
+    /** Most files changed by one commit. */
+    static final int MAX_CHANGED_FILES = 4;
+
+    /** Bytes per line of the generated files, newline included. */
+    static final int LINE_BYTES = 32;
+
+    /** Number of files. */
+    private final int _files;
+
+    /** Size of each file in bytes, rounded up to whole lines. */
+    private final int _size;
+
+    /** Number of commits after the initial one. */
+    private final int _commits;
+
+    /** Number of branches besides master. */
+    private final int _branches;
+
+    /** Fraction of branch commits followed by a merge into master. */
+    private final double _merges;
+
+    /** Source of file contents and choices. */
+    private final Random _random;
+
+    /** Contents of each file, by line, as of the head of the branch
+     *  whose share it is in. */
+    private final String[][] _lines;
+
+    /** Branch checked out, 0 for master. */
+    private int _current;
+
+    /** A generator of a repository of FILES files of SIZE bytes with
+     *  COMMITS commits spread over BRANCHES branches besides master,
+     *  merged into master with density MERGES, drawing from a Random
+     *  seeded with SEED. */
+    RepoGenerator(int files, int size, int commits, int branches,
+                  double merges, long seed) {
+        if (files < branches + 1 || size < 1 || commits < 0
+                || branches < 0 || merges < 0 || merges > 1) {
+            throw new IllegalArgumentException("bad repository shape");
+        }
+        _files = files;
+        _size = size;
+        _commits = commits;
+        _branches = branches;
+        _merges = merges;
+        _random = new Random(seed);
+        _lines = new String[files][];
+    }
+
+    /** Generates a repository in the current directory with the shape in
+     *  ARGS. */
+    public static void main(String... args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int commits = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int branches = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        double merges = args.length > 4 ? Double.parseDouble(args[4]) : 0.1;
+        new RepoGenerator(files, size, commits, branches, merges,
+                          Bench.RANDOM_SEED).generate();
+        System.out.println(describe(files, size, commits, branches, merges));
+    }
+
+    /** Returns a description of the repository shape FILES, SIZE,
+     *  COMMITS, BRANCHES and MERGES. */
+    static String describe(int files, int size, int commits, int branches,
+                           double merges) {
+        return String.format("%d files of %d bytes, %d commits, %d "
+                             + "branches, merge density %.2f", files, size,
+                             commits, branches, merges);
+    }
+
+    /** Returns the path of file K. */
+    static String path(int k) {
+        return "d" + k / FILES_PER_DIR + "/f" + k + ".txt";
+    }
+
+    /** Returns the name of branch B, 0 being master. */
+    static String branch(int b) {
+        return b == 0 ? "master" : "b" + b;
+    }
+
+    /** Builds the repository in the current directory, leaving master
+     *  checked out. */
+    void generate() {
+        gitlet("init");
+        List<String> add = new ArrayList<>();
+        add.add("add");
+        for (int k = 0; k < _files; k += 1) {
+            int n = (_size + LINE_BYTES - 1) / LINE_BYTES;
+            _lines[k] = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                _lines[k][i] = line();
+            }
+            write(k);
+            add.add(path(k));
+        }
+        gitlet(add.toArray(new String[0]));
+        gitlet("commit", "initial files");
+        for (int b = 1; b <= _branches; b += 1) {
+            gitlet("branch", branch(b));
+        }
+        for (int c = 1; c <= _commits; c += 1) {
+            int b = _random.nextInt(_branches + 1);
+            checkout(b);
+            add = new ArrayList<>();
+            add.add("add");
+            int changed = 1 + _random.nextInt(MAX_CHANGED_FILES);
+            for (int i = 0; i < changed; i += 1) {
+                int k = pick(b);
+                String[] lines = _lines[k];
+                lines[_random.nextInt(lines.length)] = line();
+                write(k);
+                add.add(path(k));
+            }
+            gitlet(add.toArray(new String[0]));
+            gitlet("commit", "commit " + c + " on " + branch(b));
+            if (b != 0 && _random.nextDouble() < _merges) {
+                checkout(0);
+                gitlet("merge", branch(b));
+            }
+        }
+        checkout(0);
+    }
+
+    /** Returns a file in the share of branch B. */
+    private int pick(int b) {
+        int shares = _branches + 1;
+        int n = (_files - b + shares - 1) / shares;
+        return b + shares * _random.nextInt(n);
+    }
+
+    /** Returns a new random line. */
+    private String line() {
+        StringBuilder result = new StringBuilder(LINE_BYTES);
+        while (result.length() < LINE_BYTES - 1) {
+            result.append((char) ('a' + _random.nextInt(26)));
+        }
+        return result.append('\n').toString();
+    }
+
+    /** Writes the current contents of file K to the working tree. */
+    private void write(int k) {
+        File file = new File(path(k));
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, String.join("", _lines[k]));
+    }
+
+    /** Checks out branch B, if it is not checked out. */
+    private void checkout(int b) {
+        if (b != _current) {
+            gitlet("checkout", branch(b));
+            _current = b;
+        }
+    }
+
+    /** Runs gitlet with arguments ARGS in this JVM.  Fails if it prints
+     *  anything, other than a merge's report. */
+    static void gitlet(String... args) {
+        String output = run(args);
+        if (!output.isEmpty() && !args[0].equals("merge")) {
+            throw new IllegalStateException(String.join(" ", args) + ": "
+                                            + output);
+        }
+    }
+
+    /** Runs gitlet with arguments ARGS in this JVM and returns what it
+     *  printed.  Fails if it exits with a non-zero status. */
+    static String run(String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = Daemon.runInProcess(args, out, err);
+        if (status != 0) {
+            throw new IllegalStateException(String.join(" ", args) + ": "
+                                            + out + err);
+        }
+        return out.toString() + err.toString();
+    }
+}
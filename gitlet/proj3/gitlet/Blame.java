@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The blame command: for each line of a file in the head commit, the
+ * commit that last changed it, following first parents as log does.
+ * The changed-path filters rule out nearly every commit that did not
+ * touch the file without reading it.  At each commit that did, its
+ * version is diffed against its first parent's: the lines it added are
+ * its own, and the others are followed into the parent's version, back
+ * to the next older change.  The walk stops once every line has a
+ * commit; a commit whose first parent lacks the file owns all the lines
+ * still left.
+ * @author Joshua Park
+ */
+class Blame {
+
+    /** Length of the abbreviated commit ids printed. */
+    static final int ABBREV = 8;
+
+    /** Ids of the distinct lines seen so far. */
+    private final HashMap<String, Integer> _lineIds = new HashMap<>();
+
+    /**
+     * Print each line of PATH in the head commit of DATA, preceded by
+     * the abbreviated id and date of the commit that last changed it and
+     * its line number.
+     * @param data repository state
+     * @param path file path, with '/' between components
+     */
+    static void run(Data data, String path) {
+        Commit head = data.getHeadCommit();
+        ObjectId blob = head.getBlobId(path);
+        if (blob == null) {
+            System.out.println("File does not exist in that commit.");
+            Main.exit(0);
+        }
+        String[] lines = lines(blob);
+        String[] owners = new Blame().blame(head.getSha1(), path, lines);
+        String format = "%s (%s %" + Integer.toString(lines.length).length()
+                + "d) %s%n";
+        HashMap<String, String> dates = new HashMap<>();
+        for (int i = 0; i < lines.length; i += 1) {
+            String date = dates.computeIfAbsent(owners[i],
+                    id -> Commit.read(id).getTimeStamp());
+            System.out.printf(format, owners[i].substring(0, ABBREV), date,
+                    i + 1, lines[i]);
+        }
+    }
+
+    /**
+     * Return the id of the commit that last changed each of LINES, the
+     * lines of PATH in commit ID.
+     * @param id full hex id
+     * @param path file path
+     * @param lines lines of PATH in ID
+     * @return commit ids, one per line
+     */
+    private String[] blame(String id, String path, String[] lines) {
+        String[] result = new String[lines.length];
+        int[] origin = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            origin[i] = i;
+        }
+        String[] current = lines;
+        int left = lines.length;
+        while (left > 0) {
+            while (!ChangedPaths.FILTERS.changed(id, path)) {
+                id = CommitGraph.GRAPH.parent1(id);
+            }
+            String parent = CommitGraph.GRAPH.parent1(id);
+            ObjectId blob = parent == null ? null
+                    : Commit.read(parent).getBlobId(path);
+            String[] before = blob == null ? new String[0] : lines(blob);
+            int[] older = new int[before.length];
+            Arrays.fill(older, -1);
+            int i = 0, j = 0;
+            for (Diff.Hunk h : Diff.diff(ids(before), ids(current))) {
+                for (; j < h.getBStart(); i += 1, j += 1) {
+                    older[i] = origin[j];
+                }
+                for (; j < h.getBEnd(); j += 1) {
+                    if (origin[j] >= 0) {
+                        result[origin[j]] = id;
+                        left -= 1;
+                    }
+                }
+                i = h.getAEnd();
+            }
+            for (; j < current.length; i += 1, j += 1) {
+                older[i] = origin[j];
+            }
+            origin = older;
+            current = before;
+            id = parent;
+        }
+        return result;
+    }
+
+    /**
+     * Return the ids of LINES, interning lines not seen before.
+     * @param lines lines
+     * @return line ids
+     */
+    private int[] ids(String[] lines) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            result[i] = _lineIds.computeIfAbsent(lines[i],
+                    line -> _lineIds.size());
+        }
+        return result;
+    }
+
+    /**
+     * Return the lines of blob BLOB, without their newlines.  The last
+     * line may lack one.
+     * @param blob blob id
+     * @return lines
+     */
+    private static String[] lines(ObjectId blob) {
+        String text = new String(Blob.contents(ObjectStore.BLOBS,
+                blob.toString()), StandardCharsets.UTF_8);
+        String[] result = text.split("\n", -1);
+        return text.isEmpty() || text.endsWith("\n")
+                ? Arrays.copyOf(result, result.length - 1) : result;
+    }
+}
@@ -1,17 +1,100 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
- * The blob class, implements serializable.
+ * The blob class: a handle on the contents of one version of a file.
+ * Contents are not held in memory as a whole, except for delta blobs,
+ * which repack limits in size.  A new blob is hashed by streaming its
+ * working file through a fixed-size buffer.  It is stored by streaming
+ * the file once more into a temporary file, hashing the bytes as they
+ * are copied, and installing that file under the id they hash to, so a
+ * file that changes meanwhile is never stored under another id.  It is
+ * checked out by channel transfer.
+ *
+ * A stored blob is a format byte followed by the file's raw bytes
+ * (RAW), by its size and a zlib stream (DEFLATE), by a delta against
+ * another blob (DELTA), or by the list of its content-defined chunks
+ * (CHUNKED), which are stored in the store's chunk store.  Blobs
+ * written by older versions of gitlet are serialized Blob objects whose
+ * contents are in _contents; those are still readable.
  * @author Joshua Park
  */
 public class Blob implements Serializable {
 
+    /** Serial version of the legacy serialized form. */
+    private static final long serialVersionUID = -6270441350416401257L;
+
+    /** Format byte of a blob stored as raw bytes. */
+    static final byte RAW = 1;
+
+    /** First byte of a Java-serialized (legacy) blob. */
+    static final byte LEGACY = (byte) 0xac;
+
+    /** Format byte of a blob stored deflated: it is followed by the
+     *  8-byte uncompressed size and a zlib stream. */
+    static final byte DEFLATE = 2;
+
+    /** Format byte of a blob stored as a delta against another blob: it
+     *  is followed by a Codec DELTA record.  Deltas are made by repack. */
+    static final byte DELTA = 3;
+
+    /** Format byte of a blob stored in chunks: it is followed by a Codec
+     *  CHUNKS record.  Files of at least core.chunking bytes are stored
+     *  this way. */
+    static final byte CHUNKED = 4;
+
+    /** Most bytes of contents kept in CACHE. */
+    static final long CACHE_BYTES = 32 << 20;
+
+    /** Contents of recently read delta blobs and their bases, by id,
+     *  least recently used first. */
+    private static final LinkedHashMap<String, byte[]> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total length of the contents in CACHE. */
+    private static long _cacheSize;
+
+    /** Length of the header of a DEFLATE blob. */
+    static final int DEFLATE_HEADER = 9;
+
+    /** Size of the buffer used for hashing and copying. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Bytes compressed before deciding whether compression pays. */
+    static final long SAMPLE_SIZE = 4 * BUFFER_SIZE;
+
+    /** Largest compressed/uncompressed ratio of the sample at which
+     *  compression is kept. */
+    static final double MIN_SAVING = 0.98;
+
     /**
-     * SHA1 code for the commit.
+     * Id of the blob.  Legacy serialized blobs hold it as a String; it
+     * is transient so that reading one skips it.
      */
-    private String _sha1;
+    private transient ObjectId _sha1;
 
     /**
      * Filename associated with this blob.
@@ -19,26 +102,55 @@ public class Blob implements Serializable {
     private String _filename;
 
     /**
-     * Actual string contents of the file.
+     * Contents of a legacy serialized blob; null for stored blobs.
      */
     private String _contents;
 
     /**
-     * the blob constructor.
-     * @param content input string
+     * Working file this blob was hashed from, if it is not stored yet.
+     */
+    private transient File _source;
+
+    /**
+     * A blob for the current contents of FILE, tracked as FILENAME.
+     * Its id is the SHA-1 of the contents followed by the filename.
+     * @param file working file
+     * @param filename input filename
+     */
+    Blob(File file, String filename) {
+        _sha1 = hash(file, filename);
+        _filename = filename;
+        _source = file;
+    }
+
+    /**
+     * A blob for the contents of FILE, tracked as FILENAME, whose id SHA1
+     * is already known, as from the stat cache.
+     * @param file working file
+     * @param filename input filename
+     * @param sha1 blob id
+     */
+    Blob(File file, String filename, ObjectId sha1) {
+        _sha1 = sha1;
+        _filename = filename;
+        _source = file;
+    }
+
+    /**
+     * A handle on the stored blob SHA1, tracked as FILENAME.
+     * @param sha1 blob id
      * @param filename input filename
      */
-    Blob(String content, String filename) {
-        _sha1 = Utils.sha1(content, filename);
+    Blob(ObjectId sha1, String filename) {
+        _sha1 = sha1;
         _filename = filename;
-        _contents = content;
     }
 
     /**
      * sha getter.
      * @return _sha1
      */
-    public String getSha1() {
+    public ObjectId getSha1() {
         return _sha1;
     }
 
@@ -51,18 +163,467 @@ public class Blob implements Serializable {
     }
 
     /**
-     * get Contents.
+     * Return the whole contents of this blob.  Only for blobs known to be
+     * small; checkout uses writeTo.
      * @return contents
      */
+    public byte[] getBytes() {
+        if (_source != null) {
+            return Utils.readContents(_source);
+        }
+        try (InputStream in = open(ObjectStore.BLOBS)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * get Contents.
+     * @return contents, decoded as UTF-8
+     */
     public String getContents() {
-        return _contents;
+        return new String(getBytes(), StandardCharsets.UTF_8);
     }
 
     /**
      * Created blob may not be used immediately.
      * Caller will serialize if it decides the blob should stay.
+     * The working file is compressed at the configured level, or copied
+     * raw if compression is off or does not help.  Callers read the id
+     * afterwards: it is that of the bytes stored.
      */
     public void callerSerialize() {
-        Utils.writeObject(Utils.join(Paths.BLOBS, _sha1), this);
+        int level = Config.getInt(Config.COMPRESSION,
+                Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            throw Utils.error("Bad value for %s in config: %d",
+                    Config.COMPRESSION, level);
+        }
+        int chunking = Config.getInt(Config.CHUNKING, 0);
+        if (chunking > 0 && _source != null
+                && _source.length() >= chunking) {
+            storeChunked(ObjectStore.BLOBS);
+        } else {
+            store(ObjectStore.BLOBS, level);
+        }
+    }
+
+    /**
+     * Store the working file of this blob in STORE, deflated at LEVEL
+     * (0 for no compression) unless that does not make it smaller.  The
+     * id of this blob becomes that of the bytes stored.
+     * @param store blob store
+     * @param level deflate level
+     */
+    void store(ObjectStore store, int level) {
+        if (_source == null || store.contains(_sha1.toString())) {
+            return;
+        }
+        File tmp = store.tempFile();
+        MessageDigest md = digest();
+        try (Trace.Span span = Trace.begin(Trace.WRITE)) {
+            if (level == 0 || _source.length() <= DEFLATE_HEADER
+                    || !deflate(_source, tmp, level, md)) {
+                md.reset();
+                copy(_source, tmp, md);
+            }
+        }
+        _sha1 = finish(md, _filename);
+        store.install(_sha1.toString(), tmp);
+    }
+
+    /**
+     * Store the working file of this blob in STORE in content-defined
+     * chunks, writing only the chunks that STORE does not have yet.  The
+     * id of this blob becomes that of the bytes chunked.
+     * @param store blob store
+     */
+    void storeChunked(ObjectStore store) {
+        if (_source == null || store.contains(_sha1.toString())) {
+            return;
+        }
+        MessageDigest md = digest();
+        byte[] list = Chunks.store(_source, store.chunks(), md);
+        byte[] stored = new byte[list.length + 1];
+        stored[0] = CHUNKED;
+        System.arraycopy(list, 0, stored, 1, list.length);
+        _sha1 = finish(md, _filename);
+        store.write(_sha1.toString(), stored);
+    }
+
+    /**
+     * Return the chunk list of chunked blob ID in STORE.
+     * @param store blob store
+     * @param id hex blob id
+     * @return chunk list
+     */
+    static Chunks chunks(ObjectStore store, String id) {
+        byte[] stored = store.read(id);
+        return new Chunks(Arrays.copyOfRange(stored, 1, stored.length));
+    }
+
+    /**
+     * Write the contents of this blob to FILE, creating or overwriting it.
+     * Raw and chunked blobs are copied with FileChannel.transferTo;
+     * compressed blobs are inflated as they are copied.
+     * @param file destination
+     */
+    public void writeTo(File file) {
+        writeTo(file, ObjectStore.BLOBS);
+    }
+
+    /**
+     * Write the contents of this blob, as stored in STORE, to FILE.
+     * @param file destination
+     * @param store blob store
+     */
+    void writeTo(File file, ObjectStore store) {
+        ObjectStore.Location loc = store.locate(_sha1.toString());
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (format(loc) == RAW) {
+                try (FileChannel in = FileChannel.open(
+                        loc.getFile().toPath(), StandardOpenOption.READ)) {
+                    long pos = loc.getOffset() + 1;
+                    long end = loc.getOffset() + loc.getLength();
+                    while (pos < end) {
+                        pos += in.transferTo(pos, end - pos, out);
+                    }
+                }
+                return;
+            }
+            if (format(loc) == CHUNKED) {
+                chunks(store, _sha1.toString()).writeTo(out, store.chunks());
+                return;
+            }
+            try (InputStream in = open(store)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(buf, 0, n);
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return a stream of the contents of this blob as stored in STORE,
+     * whatever its format.
+     * @param store blob store
+     * @return contents stream, which the caller must close
+     * @throws IOException on failure
+     */
+    InputStream open(ObjectStore store) throws IOException {
+        ObjectStore.Location loc = store.locate(_sha1.toString());
+        switch (format(loc)) {
+        case RAW:
+            return new Region(loc, 1);
+        case DEFLATE:
+            return new InflaterInputStream(new Region(loc, DEFLATE_HEADER),
+                    new Inflater(), BUFFER_SIZE);
+        case DELTA:
+            return new ByteArrayInputStream(contents(store, _sha1.toString()));
+        case CHUNKED:
+            return chunks(store, _sha1.toString()).open(store.chunks());
+        case LEGACY:
+            Blob legacy = Utils.deserialize(store.read(_sha1.toString()),
+                    Blob.class);
+            return new ByteArrayInputStream(
+                    legacy._contents.getBytes(StandardCharsets.UTF_8));
+        default:
+            throw new IllegalArgumentException("unknown format of blob "
+                    + _sha1);
+        }
+    }
+
+    /**
+     * Return the contents of blob ID in STORE, rebuilding it from its
+     * delta chain if need be.  Results are cached, so walking a chain
+     * from the newest version back, as repack does, applies each delta
+     * once.
+     * @param store blob store
+     * @param id hex blob id
+     * @return contents
+     */
+    static byte[] contents(ObjectStore store, String id) {
+        synchronized (CACHE) {
+            byte[] cached = CACHE.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] result;
+        if (format(store, id) == DELTA) {
+            byte[] stored = store.read(id);
+            byte[] delta = Arrays.copyOfRange(stored, 1, stored.length);
+            result = Delta.apply(contents(store, Delta.baseId(delta)),
+                    delta);
+        } else {
+            try (InputStream in = new Blob(ObjectId.fromHex(id), null)
+                    .open(store)) {
+                result = in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (result.length <= CACHE_BYTES / 4) {
+            synchronized (CACHE) {
+                if (CACHE.put(id, result) == null) {
+                    _cacheSize += result.length;
+                }
+                Iterator<byte[]> old = CACHE.values().iterator();
+                while (_cacheSize > CACHE_BYTES) {
+                    _cacheSize -= old.next().length;
+                    old.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the uncompressed length of blob ID in STORE, reading only
+     * its header where the format allows.
+     * @param store blob store
+     * @param id hex blob id
+     * @return length in bytes
+     */
+    static long size(ObjectStore store, String id) {
+        ObjectStore.Location loc = store.locate(id);
+        try {
+            switch (format(loc)) {
+            case RAW:
+                return loc.getLength() - 1;
+            case DEFLATE:
+                try (FileChannel in = FileChannel.open(
+                        loc.getFile().toPath(), StandardOpenOption.READ)) {
+                    ByteBuffer size = ByteBuffer.allocate(Long.BYTES);
+                    in.read(size, loc.getOffset() + 1);
+                    return size.getLong(0);
+                }
+            case DELTA:
+                byte[] stored = store.read(id);
+                Codec.Reader in = new Codec.Reader(
+                        Arrays.copyOfRange(stored, 1, stored.length),
+                        Codec.DELTA);
+                in.id();
+                return in.varint();
+            case CHUNKED:
+                return chunks(store, id).size();
+            default:
+                return contents(store, id).length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the format byte of blob ID in STORE.
+     * @param store blob store
+     * @param id hex blob id
+     * @return format byte
+     */
+    static byte format(ObjectStore store, String id) {
+        try {
+            return format(store.locate(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the format byte of the blob stored at LOC.
+     * @param loc location of a stored blob
+     * @return format byte
+     * @throws IOException on failure
+     */
+    private static byte format(ObjectStore.Location loc) throws IOException {
+        if (loc.getLength() == 0) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(loc.getFile().toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer tag = ByteBuffer.allocate(1);
+            in.read(tag, loc.getOffset());
+            return tag.get(0);
+        }
+    }
+
+    /**
+     * Write the DEFLATE form of SOURCE to TARGET, compressing at LEVEL,
+     * and add the bytes compressed to MD.  Gives up early if the first
+     * part of SOURCE does not shrink.  The size in the header is that of
+     * the bytes compressed, which is patched in at the end.
+     * @param source file to compress
+     * @param target file to write
+     * @param level deflate level
+     * @param md digest of the contents
+     * @return true if the result is smaller than the RAW form
+     */
+    private static boolean deflate(File source, File target, int level,
+                                   MessageDigest md) {
+        Deflater deflater = new Deflater(level);
+        try (InputStream in = Files.newInputStream(source.toPath());
+             FileChannel channel = FileChannel.open(target.toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(
+                        channel), BUFFER_SIZE));
+            out.write(DEFLATE);
+            out.writeLong(0);
+            DeflaterOutputStream zout =
+                    new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                zout.write(buf, 0, n);
+                if (deflater.getBytesRead() >= SAMPLE_SIZE
+                        && deflater.getBytesWritten()
+                           > deflater.getBytesRead() * MIN_SAVING) {
+                    return false;
+                }
+            }
+            zout.finish();
+            out.flush();
+            long size = deflater.getBytesRead();
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            header.putLong(0, size);
+            while (header.hasRemaining()) {
+                channel.write(header, 1 + header.position());
+            }
+            return DEFLATE_HEADER + deflater.getBytesWritten() < 1 + size;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write the RAW form of SOURCE to TARGET, adding the bytes copied to
+     * MD.
+     * @param source file to copy
+     * @param target file to write
+     * @param md digest of the contents
+     */
+    private static void copy(File source, File target, MessageDigest md) {
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = Files.newOutputStream(target.toPath())) {
+            out.write(RAW);
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * An input stream over the contents of a stored blob after its
+     * header: bytes SKIP .. length of an object location.
+     */
+    private static class Region extends InputStream {
+        /** Channel of the file holding the blob. */
+        private final FileChannel _in;
+        /** Next position to read. */
+        private long _pos;
+        /** Position after the last byte. */
+        private final long _end;
+
+        /**
+         * A stream of LOC, skipping its first SKIP bytes.
+         * @param loc object location
+         * @param skip header length
+         * @throws IOException on failure
+         */
+        Region(ObjectStore.Location loc, int skip) throws IOException {
+            _in = FileChannel.open(loc.getFile().toPath(),
+                    StandardOpenOption.READ);
+            _pos = loc.getOffset() + skip;
+            _end = loc.getOffset() + loc.getLength();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (_pos >= _end) {
+                return -1;
+            }
+            len = (int) Math.min(len, _end - _pos);
+            int n = _in.read(ByteBuffer.wrap(buf, off, len), _pos);
+            if (n > 0) {
+                _pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
+
+    /**
+     * Return the SHA-1 of the contents of FILE followed by FILENAME,
+     * reading FILE through a fixed-size buffer.
+     * @param file file to hash
+     * @param filename tracked name
+     * @return blob id
+     */
+    static ObjectId hash(File file, String filename) {
+        try (Trace.Span span = Trace.begin(Trace.HASH);
+             InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = digest();
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                Trace.count(Trace.BYTES_READ, n);
+            }
+            return finish(md, filename);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return a new SHA-1 digest.
+     * @return digest
+     */
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Return the blob id of the contents added to MD, tracked as
+     * FILENAME.
+     * @param md digest of the contents
+     * @param filename tracked name
+     * @return blob id
+     */
+    private static ObjectId finish(MessageDigest md, String filename) {
+        Trace.count(Trace.SHA1, 1);
+        md.update(filename.getBytes(StandardCharsets.UTF_8));
+        return ObjectId.fromRaw(md.digest());
     }
 }
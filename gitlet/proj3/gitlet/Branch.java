@@ -1,6 +1,8 @@
 package gitlet;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Branch object.
@@ -8,6 +10,9 @@ import java.io.Serializable;
  */
 class Branch implements Serializable {
 
+    /** Serial version of the legacy serialized form. */
+    private static final long serialVersionUID = 3632085772632047409L;
+
     /**
      * Name of the branch.
      */
@@ -30,10 +35,71 @@ class Branch implements Serializable {
     }
 
     /**
-     * Serialize the branch.
+     * A decoded branch, not written back.
+     */
+    private Branch() {
+    }
+
+    /**
+     * Serialize the branch, replacing its file in a Journal transaction.
+     */
+    void serialize() {
+        Journal journal = new Journal();
+        journal.write(file(realName), encode());
+        journal.commit();
+    }
+
+    /**
+     * Return the file of the branch named NAME.  Remote-tracking branches
+     * are named REMOTE/BRANCH, so their files are in subdirectories.
+     * @param name branch name
+     * @return branch file
+     */
+    static File file(String name) {
+        return Utils.join(Paths.BRANCHES, name);
+    }
+
+    /**
+     * Return the names of all branches.
+     * @return sorted names
      */
-    private void serialize() {
-        Utils.writeObject(Utils.join(Paths.BRANCHES, this.realName), this);
+    static List<String> names() {
+        return Utils.plainFilesUnder(Paths.BRANCHES);
+    }
+
+    /**
+     * Return the binary encoding of this branch.
+     * @return encoded bytes
+     */
+    byte[] encode() {
+        return encode(realName, _sha1);
+    }
+
+    /**
+     * Return the binary encoding of a branch named NAME at commit SHA1.
+     * @param name branch name
+     * @param sha1 commit id
+     * @return encoded bytes
+     */
+    static byte[] encode(String name, String sha1) {
+        return new Codec.Writer(Codec.BRANCH).string(name).id(sha1)
+                .toByteArray();
+    }
+
+    /**
+     * Return the branch stored as BYTES, in binary or legacy form.
+     * @param bytes stored bytes
+     * @return branch
+     */
+    static Branch decode(byte[] bytes) {
+        if (Codec.isLegacy(bytes)) {
+            return Utils.deserialize(bytes, Branch.class);
+        }
+        Codec.Reader in = new Codec.Reader(bytes, Codec.BRANCH);
+        Branch branch = new Branch();
+        branch.realName = in.string();
+        branch._sha1 = in.id();
+        return branch;
     }
 
     /**
@@ -53,11 +119,10 @@ class Branch implements Serializable {
     }
 
     /**
-     * sha1 setter.
+     * sha1 setter.  The change is written by serialize().
      * @param sha1 return
      */
     public void setSha1(String sha1) {
         this._sha1 = sha1;
-        this.serialize();
     }
 }
@@ -0,0 +1,407 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bloom filters of the paths each commit changed, after the changed-path
+ * filters of git's commit-graph.  A commit's filter holds every file
+ * whose blob differs from that in its first parent, and every directory
+ * above such a file, so that log -- PATH and blame can skip, without
+ * reading it, nearly every commit that did not touch PATH.  A filter
+ * never misses a changed path; a match is confirmed against the trees.
+ *
+ * As in git, a filter has BITS_PER_PATH bits per path, rounded up to
+ * whole bytes, and a path sets HASHES bits, chosen by double hashing
+ * with two murmur3 hashes of its UTF-8 bytes.  A commit that changed
+ * more than MAX_PATHS paths gets an empty filter, which matches every
+ * path.
+ *
+ * Layout: magic, version, then for each commit its 20-byte id, the
+ * length of its filter and the filter.  A filter is appended as each
+ * commit is made.  Commits of the commit graph with no filter, such as
+ * fetched ones or those made before filters existed, get theirs when
+ * the filters are next queried; filters of commits no longer in the
+ * graph are dropped then.  A partial record at the end is ignored.
+ * @author Joshua Park
+ */
+class ChangedPaths {
+
+    /** Magic number at the start of the file ("GCBF"). */
+    static final int MAGIC = 0x47434246;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Size of the header. */
+    static final int HEADER = 8;
+
+    /** Size of a record before its filter. */
+    static final int RECORD_HEADER = CommitIndex.ID_BYTES + 4;
+
+    /** Bits of filter per changed path. */
+    static final int BITS_PER_PATH = 10;
+
+    /** Bits set by each path. */
+    static final int HASHES = 7;
+
+    /** Most paths a commit may change and still have a filter. */
+    static final int MAX_PATHS = 512;
+
+    /** Seed of the first hash. */
+    private static final int SEED1 = 0x293ae76f;
+
+    /** Seed of the second hash. */
+    private static final int SEED2 = 0x7e646e2c;
+
+    /** The filters of this repository's commits. */
+    static final ChangedPaths FILTERS =
+            new ChangedPaths(Paths.CHANGED_PATHS, CommitGraph.GRAPH);
+
+    /** The filter file. */
+    private final File _file;
+
+    /** Graph of the commits that should have filters. */
+    private final CommitGraph _graph;
+
+    /** Filters by commit id, or null before the file is read. */
+    private HashMap<String, byte[]> _filters;
+
+    /** Length of the valid records of the file. */
+    private long _end;
+
+    /** Number of records in the file for commits not in the graph. */
+    private int _stale;
+
+    /**
+     * Filters kept in FILE of the commits in GRAPH.
+     * @param file filter file
+     * @param graph commit graph
+     */
+    ChangedPaths(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+    }
+
+    /**
+     * Append the filter of COMMIT, which must be stored, if it has none.
+     * @param commit a commit
+     */
+    void add(Commit commit) {
+        load();
+        if (_filters.containsKey(commit.getSha1())) {
+            return;
+        }
+        ByteBuffer record = append(commit, ByteBuffer.allocate(64));
+        record.flip();
+        write(record);
+    }
+
+    /**
+     * Return whether commit ID may have changed PATH, a file or
+     * directory, from its first parent.  False is certain; true may be
+     * a false positive.
+     * @param id full hex id
+     * @param path path, with '/' between components
+     * @return false if ID certainly left PATH alone
+     */
+    boolean mayHaveChanged(String id, String path) {
+        sync();
+        byte[] filter = _filters.get(id);
+        return filter == null || contains(filter, path);
+    }
+
+    /**
+     * Return whether commit ID changed PATH, a file or directory, from
+     * its first parent.  Only commits that the filters do not rule out
+     * are read.
+     * @param id full hex id
+     * @param path path, with '/' between components
+     * @return true if PATH differs
+     */
+    boolean changed(String id, String path) {
+        if (!mayHaveChanged(id, path)) {
+            return false;
+        }
+        Commit commit = Commit.read(id);
+        String parent = commit.getParent1();
+        return Tree.changed(parent == null ? null
+                : Commit.read(parent).getTree(), commit.getTree(), path);
+    }
+
+    /**
+     * Forget the in-memory filters, so that they are read again on next
+     * use.
+     */
+    void invalidate() {
+        _filters = null;
+    }
+
+    /**
+     * Read the filter file, if it has not been read.  Records of commits
+     * not in the graph are counted in _stale and not kept.
+     */
+    private void load() {
+        if (_filters != null) {
+            return;
+        }
+        _filters = new HashMap<>();
+        _end = HEADER;
+        _stale = 0;
+        if (!_file.isFile()) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(_file));
+        if (in.limit() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION) {
+            throw new IllegalArgumentException("corrupt changed-path "
+                    + "filters");
+        }
+        byte[] raw = new byte[CommitIndex.ID_BYTES];
+        while (in.remaining() >= RECORD_HEADER) {
+            in.get(raw);
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                break;
+            }
+            byte[] filter = new byte[length];
+            in.get(filter);
+            String id = Utils.toHex(raw);
+            if (_graph.position(id) == CommitGraph.NONE) {
+                _stale += 1;
+            } else {
+                _filters.put(id, filter);
+            }
+            _end = in.position();
+        }
+    }
+
+    /**
+     * Give every commit of the graph a filter: rewrite the file if it
+     * holds stale records, and otherwise append the missing filters in
+     * one write.
+     */
+    private void sync() {
+        load();
+        int n = _graph.size();
+        if (_stale == 0 && _filters.size() == n) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate(1 << 16);
+        for (int k = 0; k < n; k += 1) {
+            String id = _graph.idAt(k);
+            if (!_filters.containsKey(id)) {
+                records = append(Commit.read(id), records);
+            }
+        }
+        records.flip();
+        if (_stale == 0) {
+            write(records);
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER);
+        out.putInt(MAGIC).putInt(VERSION);
+        for (Map.Entry<String, byte[]> e : _filters.entrySet()) {
+            out = put(e.getKey(), e.getValue(), out);
+        }
+        out.flip();
+        try {
+            File tmp = File.createTempFile("tmp-", null,
+                    _file.getParentFile());
+            Utils.writeContents(tmp, Arrays.copyOf(out.array(),
+                    out.limit()));
+            Utils.rename(tmp, _file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _end = out.limit();
+        _stale = 0;
+    }
+
+    /**
+     * Compute the filter of COMMIT, add it to the in-memory filters and
+     * put its record in OUT.
+     * @param commit a stored commit
+     * @param out buffer receiving the record
+     * @return OUT, or a larger copy of it
+     */
+    private ByteBuffer append(Commit commit, ByteBuffer out) {
+        byte[] filter = filter(changedPaths(commit));
+        _filters.put(commit.getSha1(), filter);
+        return put(commit.getSha1(), filter, out);
+    }
+
+    /**
+     * Put the record of commit ID with filter FILTER in OUT.
+     * @param id hex id
+     * @param filter filter bytes
+     * @param out buffer receiving the record
+     * @return OUT, or a larger copy of it
+     */
+    private static ByteBuffer put(String id, byte[] filter, ByteBuffer out) {
+        int need = RECORD_HEADER + filter.length;
+        if (out.remaining() < need) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(
+                    2 * out.capacity(), out.position() + need));
+            out.flip();
+            out = bigger.put(out);
+        }
+        return out.put(Utils.fromHex(id)).putInt(filter.length).put(filter);
+    }
+
+    /**
+     * Write RECORDS at the end of the valid records of the file, over
+     * any partial record, creating the file if it does not exist.
+     * @param records records to append, ready to be read
+     */
+    private void write(ByteBuffer records) {
+        boolean fresh = !_file.isFile();
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (fresh) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    out.write(header, HEADER - header.remaining());
+                }
+            }
+            while (records.hasRemaining()) {
+                _end += out.write(records, _end);
+            }
+            out.truncate(_end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the paths COMMIT changed from its first parent: each file
+     * it added, removed or modified, and each directory above one.
+     * @param commit a stored commit
+     * @return changed paths
+     */
+    static Set<String> changedPaths(Commit commit) {
+        String parent = commit.getParent1();
+        HashMap<String, ObjectId> files = new HashMap<>();
+        Tree.diff(parent == null ? null : Commit.read(parent).getTree(),
+                commit.getTree(), files);
+        Set<String> result = new HashSet<>();
+        for (String path : files.keySet()) {
+            for (String p = path; result.add(p);) {
+                int slash = p.lastIndexOf('/');
+                if (slash < 0) {
+                    break;
+                }
+                p = p.substring(0, slash);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the filter of PATHS: empty if there are more than MAX_PATHS
+     * of them.
+     * @param paths changed paths
+     * @return filter bytes
+     */
+    static byte[] filter(Set<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return new byte[0];
+        }
+        byte[] result = new byte[Math.max(1,
+                (paths.size() * BITS_PER_PATH + 7) / 8)];
+        for (String path : paths) {
+            int[] bits = bits(path, 8 * result.length);
+            for (int b : bits) {
+                result[b >>> 3] |= (byte) (1 << (b & 7));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return whether FILTER may hold PATH.
+     * @param filter filter bytes
+     * @param path path
+     * @return false if FILTER certainly does not hold PATH
+     */
+    static boolean contains(byte[] filter, String path) {
+        if (filter.length == 0) {
+            return true;
+        }
+        for (int b : bits(path, 8 * filter.length)) {
+            if ((filter[b >>> 3] & (1 << (b & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the HASHES bits that PATH sets in a filter of SIZE bits.
+     * @param path path
+     * @param size filter bits
+     * @return bit positions
+     */
+    private static int[] bits(String path, int size) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int h1 = murmur3(bytes, SEED1);
+        int h2 = murmur3(bytes, SEED2);
+        int[] result = new int[HASHES];
+        for (int i = 0; i < HASHES; i += 1) {
+            result[i] = Integer.remainderUnsigned(h1 + i * h2, size);
+        }
+        return result;
+    }
+
+    /**
+     * Return the 32-bit murmur3 hash of BYTES with seed SEED.
+     * @param bytes data
+     * @param seed seed
+     * @return hash
+     */
+    static int murmur3(byte[] bytes, int seed) {
+        int h = seed;
+        int n = bytes.length & ~3;
+        for (int i = 0; i < n; i += 4) {
+            int k = (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8
+                    | (bytes[i + 2] & 0xff) << 16 | bytes[i + 3] << 24;
+            h ^= mix(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        for (int i = bytes.length - 1; i >= n; i -= 1) {
+            k = k << 8 | (bytes[i] & 0xff);
+        }
+        if (bytes.length > n) {
+            h ^= mix(k);
+        }
+        h ^= bytes.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Return the murmur3 mix of block K.
+     * @param k block
+     * @return mixed block
+     */
+    private static int mix(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+}
@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The chunk list of a blob stored in content-defined chunks.  A large
+ * file is cut into chunks where a rolling hash of its bytes matches a
+ * mask, as in FastCDC, so an edit moves only the cuts near it and files
+ * that share most of their bytes share most of their chunks.  Each chunk
+ * is stored once, raw, in the chunk store of the blob store, named by
+ * the SHA-1 of its bytes; the blob itself holds only this list.
+ *
+ * The hash is a gear hash: shifted left one bit per byte, plus a fixed
+ * random value for the byte, so it depends on the last 64 bytes.  No cut
+ * falls in the first MIN_SIZE bytes of a chunk.  Up to AVG_SIZE a cut
+ * needs the top 18 bits of the hash to be zero, after it only the top
+ * 14, and a chunk always ends at MAX_SIZE, which keeps chunk sizes close
+ * to AVG_SIZE.
+ *
+ * Encoding: a Codec record of type CHUNKS holding the blob's length and
+ * its chunk count, then each chunk's id and length.
+ * @author Joshua Park
+ */
+class Chunks {
+
+    /** Shortest chunk, except the last of a blob. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** Chunk length at which cuts become more likely. */
+    static final int AVG_SIZE = 64 << 10;
+
+    /** Longest chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Mask of the hash bits that must be zero for a cut before
+     *  AVG_SIZE. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+
+    /** Mask of the hash bits that must be zero for a cut after
+     *  AVG_SIZE. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** Random value added to the hash for each byte value.  The seed is
+     *  fixed, since changing the table would move every cut. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Ids of the chunks, in order. */
+    private final String[] _ids;
+
+    /** Length of the blob. */
+    private final long _size;
+
+    /**
+     * The chunk list encoded in BYTES.
+     * @param bytes encoded chunk list
+     */
+    Chunks(byte[] bytes) {
+        Codec.Reader in = new Codec.Reader(bytes, Codec.CHUNKS);
+        _size = in.varint();
+        int n = in.length();
+        _ids = new String[n];
+        for (int k = 0; k < n; k += 1) {
+            _ids[k] = in.id();
+            in.varint();
+        }
+    }
+
+    /**
+     * Cut the contents of SOURCE into chunks, store those that CHUNKS
+     * lacks, and return the encoded chunk list.  SOURCE is read once,
+     * through a buffer of 2 * MAX_SIZE bytes, and every byte chunked is
+     * added to MD.
+     * @param source file to store
+     * @param chunks chunk store
+     * @param md digest of the contents
+     * @return encoded chunk list
+     */
+    static byte[] store(File source, ObjectStore chunks,
+                        MessageDigest md) {
+        chunks.getDir().mkdirs();
+        List<String> ids = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        long size = 0;
+        byte[] buf = new byte[2 * MAX_SIZE];
+        int start = 0, end = 0;
+        boolean eof = false;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            while (true) {
+                if (!eof && end - start < MAX_SIZE) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    while (!eof && end < buf.length) {
+                        int n = in.read(buf, end, buf.length - end);
+                        if (n < 0) {
+                            eof = true;
+                        } else {
+                            end += n;
+                        }
+                    }
+                }
+                if (start == end) {
+                    break;
+                }
+                int n = cut(buf, start, end - start);
+                byte[] chunk = Arrays.copyOfRange(buf, start, start + n);
+                md.update(chunk);
+                String id = Utils.sha1(chunk);
+                chunks.write(id, chunk);
+                ids.add(id);
+                lengths.add(n);
+                size += n;
+                start += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Codec.Writer out = new Codec.Writer(Codec.CHUNKS).varint(size)
+                .varint(ids.size());
+        for (int k = 0; k < ids.size(); k += 1) {
+            out.id(ids.get(k)).varint(lengths.get(k));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the length of the first chunk of the LEN bytes at OFF in
+     * BUF, which hold the rest of the file or at least MAX_SIZE bytes.
+     * @param buf bytes
+     * @param off start of the chunk
+     * @param len bytes available
+     * @return chunk length
+     */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int end = Math.min(len, MAX_SIZE);
+        int normal = Math.min(end, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * size getter.
+     * @return length of the blob
+     */
+    long size() {
+        return _size;
+    }
+
+    /**
+     * number of chunks.
+     * @return count
+     */
+    int count() {
+        return _ids.length;
+    }
+
+    /**
+     * Return the id of chunk K.
+     * @param k chunk number
+     * @return hex id
+     */
+    String idAt(int k) {
+        return _ids[k];
+    }
+
+    /**
+     * Write the blob to OUT, copying each chunk from CHUNKS by channel
+     * transfer.
+     * @param out destination
+     * @param chunks chunk store
+     * @throws IOException on failure
+     */
+    void writeTo(FileChannel out, ObjectStore chunks) throws IOException {
+        for (String id : _ids) {
+            ObjectStore.Location loc = chunks.locate(id);
+            try (FileChannel in = FileChannel.open(loc.getFile().toPath(),
+                    StandardOpenOption.READ)) {
+                long pos = loc.getOffset();
+                long end = pos + loc.getLength();
+                while (pos < end) {
+                    pos += in.transferTo(pos, end - pos, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a stream of the blob, reading one chunk at a time from
+     * CHUNKS.
+     * @param chunks chunk store
+     * @return contents stream
+     */
+    InputStream open(ObjectStore chunks) {
+        return new Stream(chunks);
+    }
+
+    /**
+     * An input stream over the chunks of a blob, holding one chunk in
+     * memory at a time.
+     */
+    private class Stream extends InputStream {
+        /** Chunk store. */
+        private final ObjectStore _chunks;
+        /** Number of the next chunk to read. */
+        private int _next;
+        /** Current chunk. */
+        private byte[] _chunk = new byte[0];
+        /** Position of the next byte in _chunk. */
+        private int _pos;
+
+        /**
+         * A stream of the blob's chunks in CHUNKS.
+         * @param chunks chunk store
+         */
+        Stream(ObjectStore chunks) {
+            _chunks = chunks;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            while (_pos == _chunk.length) {
+                if (_next == _ids.length) {
+                    return -1;
+                }
+                _chunk = _chunks.read(_ids[_next]);
+                _next += 1;
+                _pos = 0;
+            }
+            int n = Math.min(len, _chunk.length - _pos);
+            System.arraycopy(_chunk, _pos, buf, off, n);
+            _pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The compact binary encoding of persisted gitlet objects.  Every record
+ * starts with a four-byte header: the magic bytes "gl", the format
+ * version and a type byte.  Lengths and counts are unsigned LEB128
+ * varints, times are zig-zag varints of epoch milliseconds, strings are
+ * a length followed by UTF-8 bytes, and SHA-1 ids are 20 raw bytes.
+ *
+ * Files written by older versions of gitlet hold Java-serialized objects,
+ * which start with the byte 0xac; isLegacy identifies them so callers can
+ * fall back to Utils.deserialize.
+ * @author Joshua Park
+ */
+class Codec {
+
+    /** First magic byte. */
+    static final byte MAGIC0 = 'g';
+
+    /** Second magic byte. */
+    static final byte MAGIC1 = 'l';
+
+    /** Current encoding version. */
+    static final byte VERSION = 1;
+
+    /** Type byte of a commit. */
+    static final byte COMMIT = 1;
+
+    /** Type byte of a branch. */
+    static final byte BRANCH = 2;
+
+    /** Type byte of the head pointer. */
+    static final byte HEAD = 3;
+
+    /** Type byte of the addition stage. */
+    static final byte ADD_STAGE = 4;
+
+    /** Type byte of the removal stage. */
+    static final byte REMOVE_STAGE = 5;
+
+    /** Type byte of a blob delta. */
+    static final byte DELTA = 6;
+
+    /** Type byte of a tree. */
+    static final byte TREE = 7;
+
+    /** Type byte of a commit whose files are given by a tree. */
+    static final byte TREE_COMMIT = 8;
+
+    /** Type byte of a journal transaction. */
+    static final byte JOURNAL = 9;
+
+    /** Type byte of the chunk list of a chunked blob. */
+    static final byte CHUNKS = 10;
+
+    /** First byte of a Java object serialization stream. */
+    static final byte LEGACY = (byte) 0xac;
+
+    /** Length of a raw SHA-1 id. */
+    static final int ID_BYTES = 20;
+
+    /**
+     * Return whether BYTES hold a Java-serialized object.
+     * @param bytes stored bytes
+     * @return true if legacy
+     */
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == LEGACY;
+    }
+
+    /**
+     * Return the type byte of the record BYTES, or 0 if it is not a
+     * record.
+     * @param bytes stored bytes
+     * @return type byte
+     */
+    static byte type(byte[] bytes) {
+        return bytes.length >= 4 && bytes[0] == MAGIC0 && bytes[1] == MAGIC1
+                ? bytes[3] : 0;
+    }
+
+    /** Encodes one record. */
+    static class Writer {
+        /** Output buffer. */
+        private byte[] _buf = new byte[64];
+        /** Number of bytes written to _buf. */
+        private int _len;
+
+        /**
+         * A writer for a record of type TYPE.
+         * @param type type byte
+         */
+        Writer(byte type) {
+            write(MAGIC0);
+            write(MAGIC1);
+            write(VERSION);
+            write(type);
+        }
+
+        /**
+         * Write the unsigned varint V.
+         * @param v non-negative value
+         * @return this
+         */
+        Writer varint(long v) {
+            while ((v & ~0x7fL) != 0) {
+                write((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+            return this;
+        }
+
+        /**
+         * Write the signed value V as a zig-zag varint.
+         * @param v value
+         * @return this
+         */
+        Writer svarint(long v) {
+            return varint((v << 1) ^ (v >> 63));
+        }
+
+        /**
+         * Write the string S.
+         * @param s string
+         * @return this
+         */
+        Writer string(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            write(bytes);
+            return this;
+        }
+
+        /**
+         * Write the hex SHA-1 ID as 20 raw bytes.
+         * @param id hex id
+         * @return this
+         */
+        Writer id(String id) {
+            byte[] raw = Utils.fromHex(id);
+            if (raw.length != ID_BYTES) {
+                throw new IllegalArgumentException("bad id " + id);
+            }
+            write(raw);
+            return this;
+        }
+
+        /**
+         * Write ID as 20 raw bytes.
+         * @param id object id
+         * @return this
+         */
+        Writer id(ObjectId id) {
+            ensure(ID_BYTES);
+            id.copyTo(_buf, _len);
+            _len += ID_BYTES;
+            return this;
+        }
+
+        /**
+         * Write a presence byte, then ID if it is not null.
+         * @param id hex id or null
+         * @return this
+         */
+        Writer optionalId(String id) {
+            write(id == null ? 0 : 1);
+            return id == null ? this : id(id);
+        }
+
+        /**
+         * Write the N bytes of BYTES starting at OFF, with no length.
+         * @param bytes source
+         * @param off start in BYTES
+         * @param n byte count
+         * @return this
+         */
+        Writer bytes(byte[] bytes, int off, int n) {
+            ensure(n);
+            System.arraycopy(bytes, off, _buf, _len, n);
+            _len += n;
+            return this;
+        }
+
+        /**
+         * encoded bytes.
+         * @return the record
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buf, _len);
+        }
+
+        /**
+         * Append the byte B.
+         * @param b byte value
+         */
+        private void write(int b) {
+            ensure(1);
+            _buf[_len++] = (byte) b;
+        }
+
+        /**
+         * Append BYTES.
+         * @param bytes bytes
+         */
+        private void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _buf, _len, bytes.length);
+            _len += bytes.length;
+        }
+
+        /**
+         * Make room for N more bytes.
+         * @param n byte count
+         */
+        private void ensure(int n) {
+            if (_len + n > _buf.length) {
+                _buf = Arrays.copyOf(_buf, Math.max(2 * _buf.length,
+                        _len + n));
+            }
+        }
+    }
+
+    /** Decodes one record. */
+    static class Reader {
+        /** Bytes of the record. */
+        private final byte[] _bytes;
+        /** Read position. */
+        private int _pos;
+
+        /**
+         * A reader of BYTES, which must hold a record of type TYPE.
+         * Throws IllegalArgumentException otherwise.
+         * @param bytes record
+         * @param type expected type byte
+         */
+        Reader(byte[] bytes, byte type) {
+            _bytes = bytes;
+            if (bytes.length < 4 || bytes[0] != MAGIC0
+                    || bytes[1] != MAGIC1) {
+                throw new IllegalArgumentException("not a gitlet record");
+            }
+            if (bytes[2] != VERSION) {
+                throw new IllegalArgumentException(
+                        "unsupported record version " + bytes[2]);
+            }
+            if (bytes[3] != type) {
+                throw new IllegalArgumentException("expected record type "
+                        + type + ", found " + bytes[3]);
+            }
+            _pos = 4;
+        }
+
+        /**
+         * Read an unsigned varint.
+         * @return value
+         */
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = next();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        /**
+         * Read a zig-zag varint.
+         * @return value
+         */
+        long svarint() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        /**
+         * Read a count or length that must fit in the record.
+         * @return value
+         */
+        int length() {
+            long n = varint();
+            if (n < 0 || n > _bytes.length) {
+                throw new IllegalArgumentException("bad length " + n);
+            }
+            return (int) n;
+        }
+
+        /**
+         * Read a string.
+         * @return string
+         */
+        String string() {
+            int n = length();
+            check(n);
+            String result = new String(_bytes, _pos, n,
+                    StandardCharsets.UTF_8);
+            _pos += n;
+            return result;
+        }
+
+        /**
+         * Read a raw SHA-1 id.
+         * @return hex id
+         */
+        String id() {
+            check(ID_BYTES);
+            String result = Utils.toHex(Arrays.copyOfRange(_bytes, _pos,
+                    _pos + ID_BYTES));
+            _pos += ID_BYTES;
+            return result;
+        }
+
+        /**
+         * Read a raw SHA-1 id without converting it to hex.
+         * @return object id
+         */
+        ObjectId objectId() {
+            check(ID_BYTES);
+            ObjectId result = ObjectId.fromRaw(_bytes, _pos);
+            _pos += ID_BYTES;
+            return result;
+        }
+
+        /**
+         * Read an id preceded by a presence byte.
+         * @return hex id or null
+         */
+        String optionalId() {
+            return next() == 0 ? null : id();
+        }
+
+        /**
+         * Read N raw bytes into DEST starting at POS.
+         * @param dest destination
+         * @param pos start in DEST
+         * @param n byte count
+         */
+        void bytes(byte[] dest, int pos, int n) {
+            check(n);
+            System.arraycopy(_bytes, _pos, dest, pos, n);
+            _pos += n;
+        }
+
+        /**
+         * Return whether the whole record has been read.
+         * @return true at the end
+         */
+        boolean atEnd() {
+            return _pos == _bytes.length;
+        }
+
+        /**
+         * Read one byte.
+         * @return the byte
+         */
+        private byte next() {
+            check(1);
+            return _bytes[_pos++];
+        }
+
+        /**
+         * Throw IllegalArgumentException unless N more bytes remain.
+         * @param n byte count
+         */
+        private void check(int n) {
+            if (_pos + n > _bytes.length) {
+                throw new IllegalArgumentException("truncated record");
+            }
+        }
+    }
+}
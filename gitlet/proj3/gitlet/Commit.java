@@ -1,14 +1,52 @@
 package gitlet;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * The commit class, works on all the commit.
+ * Commits are stored in the binary form produced by encode(); commits
+ * written by older versions of gitlet are Java-serialized and are still
+ * read by decode().
  * @author joshpark
  */
 public class Commit implements Serializable {
+    /**
+     * Serial version of the legacy serialized form.
+     */
+    private static final long serialVersionUID = 8983428673322242482L;
+    /**
+     * The format for the string form of the date.
+     */
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z");
+    /**
+     * Most commits kept in CACHE.
+     */
+    static final int CACHE_COMMITS = 1 << 12;
+    /**
+     * Value of _zone when the time zone of a commit is not known.
+     */
+    static final int NO_ZONE = Integer.MIN_VALUE;
+    /**
+     * Recently read commits by id, least recently used first.  Commits
+     * are immutable once written, so a cached one is never stale.
+     */
+    private static final LinkedHashMap<String, Commit> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Commit> eldest) {
+                    return size() > CACHE_COMMITS;
+                }
+            };
     /**
      * Parent node's sha1.
      */
@@ -22,60 +60,235 @@ public class Commit implements Serializable {
      */
     private String _commitMessage;
     /**
-     * Time stamp.
+     * Commit time in milliseconds since the epoch.
+     */
+    private long _time;
+    /**
+     * Offset from UTC, in minutes, of the time zone the commit was made
+     * in, or NO_ZONE if it is not recorded.
+     */
+    private int _zone = NO_ZONE;
+    /**
+     * Time stamp: the formatted commit time, computed on demand.  Legacy
+     * serialized commits carry it instead of _time.
      */
     private String _timeStamp;
     /**
-     * Mappings of filename to blobIds.
+     * Mappings of filename to blobIds, for a commit that lists its files
+     * directly.  Null for a commit with a tree, whose files are read
+     * from the tree as they are needed.
      */
-    private HashMap<String, String> _state;
+    private HashMap<String, ObjectId> _state;
     /**
-     * SHA1 code for the commit.
+     * Id of the tree of this commit's files, or null for commits that
+     * list their files in _state.
      */
-    private String _sha1;
+    private String _tree;
     /**
-     * The format for the string form of the date.
+     * SHA1 code for the commit.
      */
-    private SimpleDateFormat _format =
-            new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z");
+    private String _sha1;
 
 
     /**
      * Initial commit constructor.
      **/
     Commit() {
-        _parent1 = null;
-        _parent2 = null;
-        _commitMessage = "initial commit";
-        _timeStamp = _format.format(new Date(0));
-        _state = new HashMap<>();
-        _sha1 = Utils.sha1(_state.toString(), _commitMessage, _timeStamp);
+        this(null, null, "initial commit", 0, NO_ZONE, Tree.EMPTY);
         serialize();
     }
 
     /**
      * Initial commit constructor.
-     * @param state state
+     * @param tree tree id
      * @param parent2 parent2
      * @param commitMessage commitMessage
      * @param parent1 parent1
      **/
     Commit(String parent1, String parent2, String commitMessage,
-           HashMap<String, String> state) {
+           String tree) {
+        this(parent1, parent2, commitMessage, System.currentTimeMillis(),
+                ZoneId.systemDefault().getRules().getOffset(Instant.now())
+                        .getTotalSeconds() / 60, tree);
+        serialize();
+    }
+
+    /**
+     * A commit of tree TREE made at TIME in time zone ZONE that is not
+     * stored.  Its id covers the tree and parent ids, the message, the
+     * time in milliseconds and the zone, if known.
+     * @param parent1 parent1
+     * @param parent2 parent2
+     * @param commitMessage commitMessage
+     * @param time milliseconds since the epoch
+     * @param zone offset from UTC in minutes, or NO_ZONE
+     * @param tree tree id
+     */
+    Commit(String parent1, String parent2, String commitMessage, long time,
+           int zone, String tree) {
         _parent1 = parent1;
         _parent2 = parent2;
         _commitMessage = commitMessage;
-        _timeStamp = _format.format(new Date());
+        _time = time;
+        _zone = zone;
+        _tree = tree;
+        _sha1 = treeCommitId();
+    }
+
+    /**
+     * A decoded commit.
+     * @param sha1 sha1
+     * @param parent1 parent1
+     * @param parent2 parent2
+     * @param commitMessage commitMessage
+     * @param time milliseconds since the epoch
+     * @param state state
+     */
+    private Commit(String sha1, String parent1, String parent2,
+                   String commitMessage, long time,
+                   HashMap<String, ObjectId> state) {
+        _sha1 = sha1;
+        _parent1 = parent1;
+        _parent2 = parent2;
+        _commitMessage = commitMessage;
+        _time = time;
         _state = state;
-        _sha1 = Utils.sha1(_state.toString(), _commitMessage, _timeStamp);
-        serialize();
     }
 
     /**
-     * Serialize the commit.
+     * Serialize the commit and record it in the commit index, the
+     * commit graph, its changed-path filters and the commit log.
      */
     private void serialize() {
-        Utils.writeObject(Utils.join(Paths.COMMITS, this._sha1), this);
+        ObjectStore.COMMITS.write(_sha1, encode());
+        CommitIndex.INDEX.add(_sha1);
+        CommitGraph.GRAPH.add(this);
+        ChangedPaths.FILTERS.add(this);
+        CommitLog.LOG.add(this);
+    }
+
+    /**
+     * Return the binary encoding of this commit: its id, parents,
+     * message, time, and tree id or state.  A commit with a tree ends
+     * with its time zone, if known; commits written before zones were
+     * recorded end at the tree id.
+     * @return encoded bytes
+     */
+    byte[] encode() {
+        if (_tree != null) {
+            Codec.Writer out = new Codec.Writer(Codec.TREE_COMMIT).id(_sha1)
+                    .optionalId(_parent1).optionalId(_parent2)
+                    .string(_commitMessage).svarint(_time).id(_tree);
+            if (_zone != NO_ZONE) {
+                out.svarint(_zone);
+            }
+            return out.toByteArray();
+        }
+        Codec.Writer out = new Codec.Writer(Codec.COMMIT);
+        out.id(_sha1).optionalId(_parent1).optionalId(_parent2)
+                .string(_commitMessage).svarint(_time)
+                .varint(_state.size());
+        for (Map.Entry<String, ObjectId> e : _state.entrySet()) {
+            out.string(e.getKey()).id(e.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the commit stored as BYTES, in binary or legacy form.
+     * @param bytes stored bytes
+     * @return the commit
+     */
+    static Commit decode(byte[] bytes) {
+        try (Trace.Span span = Trace.begin(Trace.DECODE)) {
+            return decodeRecord(bytes);
+        }
+    }
+
+    /**
+     * Return the commit stored as BYTES, as decode does, untimed.
+     * @param bytes stored bytes
+     * @return the commit
+     */
+    private static Commit decodeRecord(byte[] bytes) {
+        if (Codec.isLegacy(bytes)) {
+            Commit legacy = Utils.deserialize(bytes, Commit.class);
+            ZonedDateTime time = ZonedDateTime.parse(legacy._timeStamp,
+                    FORMAT);
+            legacy._time = time.toInstant().toEpochMilli();
+            legacy._zone = time.getOffset().getTotalSeconds() / 60;
+            legacy._state = legacyState(legacy._state);
+            return legacy;
+        }
+        if (Codec.type(bytes) == Codec.TREE_COMMIT) {
+            Codec.Reader in = new Codec.Reader(bytes, Codec.TREE_COMMIT);
+            Commit result = new Commit(in.id(), in.optionalId(),
+                    in.optionalId(), in.string(), in.svarint(), null);
+            result._tree = in.id();
+            if (!in.atEnd()) {
+                result._zone = (int) in.svarint();
+            }
+            return result;
+        }
+        Codec.Reader in = new Codec.Reader(bytes, Codec.COMMIT);
+        String sha1 = in.id();
+        String parent1 = in.optionalId();
+        String parent2 = in.optionalId();
+        String message = in.string();
+        long time = in.svarint();
+        int n = in.length();
+        HashMap<String, ObjectId> state = new HashMap<>(2 * n);
+        for (int i = 0; i < n; i += 1) {
+            String filename = in.string();
+            state.put(filename, in.objectId());
+        }
+        return new Commit(sha1, parent1, parent2, message, time, state);
+    }
+
+    /**
+     * Return STATE, deserialized from a legacy commit, whose values are
+     * really hex Strings, with ids for values.
+     * @param state filenames to hex blob ids
+     * @return filenames to blob ids
+     */
+    private static HashMap<String, ObjectId> legacyState(
+            HashMap<String, ?> state) {
+        HashMap<String, ObjectId> result = new HashMap<>(2 * state.size());
+        for (Map.Entry<String, ?> e : state.entrySet()) {
+            result.put(e.getKey(), ObjectId.fromHex((String) e.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Read commit ID from the commit store.
+     * @param id full commit id
+     * @return the commit
+     */
+    static Commit read(String id) {
+        synchronized (CACHE) {
+            Commit cached = CACHE.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Commit result = decode(ObjectStore.COMMITS.read(id));
+        synchronized (CACHE) {
+            CACHE.put(id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Read commit ID from STORE, which may belong to another repository.
+     * Only commits of this repository's store are cached.
+     * @param store commit store
+     * @param id full commit id
+     * @return the commit
+     */
+    static Commit read(ObjectStore store, String id) {
+        return store == ObjectStore.COMMITS ? read(id)
+                : decode(store.read(id));
     }
 
     /**
@@ -86,6 +299,32 @@ public class Commit implements Serializable {
         return this._sha1;
     }
 
+    /**
+     * Return the id this commit should have, computed from its contents,
+     * or null if it lists its files directly: the ids of those commits
+     * depend on the order of a HashMap and on the time zone they were
+     * made in, so they cannot be recomputed.
+     * @return hex commit id or null
+     */
+    String computeSha1() {
+        return _tree == null ? null : treeCommitId();
+    }
+
+    /**
+     * Return the id of a commit with a tree, from its contents.
+     * @return hex commit id
+     */
+    private String treeCommitId() {
+        String parent1 = Objects.toString(_parent1, "");
+        String parent2 = Objects.toString(_parent2, "");
+        if (_zone == NO_ZONE) {
+            return Utils.sha1(_tree, parent1, parent2, _commitMessage,
+                    Long.toString(_time));
+        }
+        return Utils.sha1(_tree, parent1, parent2, _commitMessage,
+                Long.toString(_time), Integer.toString(_zone));
+    }
+
     /**
      * get Parent.
      * @return parent
@@ -103,11 +342,43 @@ public class Commit implements Serializable {
     }
 
     /**
-     * get State.
-     * @return get State
+     * get State.  For a commit with a tree, this is a read-only view of
+     * the tree, sharing its unchanged subtrees with other commits; no
+     * map of the commit's files is built.
+     * @return filenames to blob ids
      */
-    public HashMap<String, String> getState() {
-        return _state;
+    public Map<String, ObjectId> getState() {
+        return _state != null ? _state : Tree.state(_tree);
+    }
+
+    /**
+     * get Tree.  The tree of a commit that lists its files directly is
+     * built, and stored, from its state.
+     * @return tree id
+     */
+    public String getTree() {
+        return _tree != null ? _tree : Tree.build(_state);
+    }
+
+    /**
+     * Return the id of this commit's tree, or null if it lists its files
+     * directly.  Unlike getTree, this never builds a tree.
+     * @return tree id or null
+     */
+    String getStoredTree() {
+        return _tree;
+    }
+
+    /**
+     * Return the blob id of FILENAME in this commit, or null if it does
+     * not track that file.
+     * @param filename file path
+     * @return blob id or null
+     */
+    public ObjectId getBlobId(String filename) {
+        HashMap<String, ObjectId> state = _state;
+        return state != null ? state.get(filename)
+                : Tree.lookup(_tree, filename);
     }
 
     /**
@@ -120,19 +391,51 @@ public class Commit implements Serializable {
 
     /**
      * get Time stamp.
-     * @return time stamp
+     * @return time stamp, formatted in the time zone the commit was made
+     *         in, or in the local time zone if that is not recorded
      */
     public String getTimeStamp() {
+        if (_timeStamp == null) {
+            _timeStamp = formatTime(_time, _zone);
+        }
         return _timeStamp;
     }
 
+    /**
+     * Return TIME in the form of a time stamp.
+     * @param time milliseconds since the epoch
+     * @param zone offset from UTC in minutes, or NO_ZONE for the local
+     *             time zone
+     * @return time stamp
+     */
+    static String formatTime(long time, int zone) {
+        ZoneId id = zone == NO_ZONE ? ZoneId.systemDefault()
+                : ZoneOffset.ofTotalSeconds(zone * 60);
+        return FORMAT.format(Instant.ofEpochMilli(time).atZone(id));
+    }
+
+    /**
+     * get Time.
+     * @return commit time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return _time;
+    }
+
+    /**
+     * get Zone.
+     * @return offset from UTC in minutes, or NO_ZONE
+     */
+    int getZone() {
+        return _zone;
+    }
+
     /**
      * get Blob.
      * @param filename input file
-     * @return read object of blob
+     * @return handle on the stored blob; its contents are not read
      */
     public Blob getBlob(String filename) {
-        String sha1 = _state.get(filename);
-        return Utils.readObject(Utils.join(Paths.BLOBS, sha1), Blob.class);
+        return new Blob(getBlobId(filename), filename);
     }
 }
@@ -0,0 +1,479 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A cache of the shape of the commit history, after git's commit-graph
+ * file.  Each commit has a record holding its id, the positions of its
+ * parents, its generation number and its time, so that ancestry queries
+ * never decode a Commit.  The generation of a root is 1 and that of any
+ * other commit is one more than the largest generation of its parents;
+ * so a commit can only be an ancestor of commits of higher generation.
+ *
+ * Layout: magic, version, then one RECORD-byte record per commit, in an
+ * order in which parents come before their children:  20-byte id,
+ * parent1 and parent2 positions (-1 if absent), generation, time.  New
+ * commits are appended; a missing file is rebuilt from the commit store.
+ * @author Joshua Park
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file ("GCGR"). */
+    static final int MAGIC = 0x47434752;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Size of the header. */
+    static final int HEADER = 8;
+
+    /** Size of one record. */
+    static final int RECORD = CommitIndex.ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Parent position of a missing parent. */
+    static final int NONE = -1;
+
+    /** Paint flag: reachable from the first commit. */
+    private static final byte FIRST = 1;
+
+    /** Paint flag: reachable from the second commit. */
+    private static final byte SECOND = 2;
+
+    /** Paint flag: reachable from a common ancestor already found. */
+    private static final byte STALE = 4;
+
+    /** The graph of this repository's commits. */
+    static final CommitGraph GRAPH =
+            new CommitGraph(Paths.COMMIT_GRAPH, CommitIndex.INDEX);
+
+    /** The graph file. */
+    private final File _file;
+
+    /** Index of the commits, used to rebuild a missing file. */
+    private final CommitIndex _index;
+
+    /** Number of commits, or -1 before the file is read. */
+    private int _count = -1;
+
+    /** Ids by position. */
+    private String[] _ids;
+
+    /** First parent positions. */
+    private int[] _parent1;
+
+    /** Second parent positions. */
+    private int[] _parent2;
+
+    /** Generation numbers. */
+    private int[] _generation;
+
+    /** Commit times in milliseconds since the epoch. */
+    private long[] _time;
+
+    /** Positions by id. */
+    private HashMap<String, Integer> _positions;
+
+    /**
+     * A graph kept in FILE of the commits in INDEX.
+     * @param file graph file
+     * @param index commit index
+     */
+    CommitGraph(File file, CommitIndex index) {
+        _file = file;
+        _index = index;
+    }
+
+    /**
+     * number of commits.
+     * @return count
+     */
+    int size() {
+        load();
+        return _count;
+    }
+
+    /**
+     * Return the position of commit ID, or NONE if it is not in the graph.
+     * @param id full hex id
+     * @return position
+     */
+    int position(String id) {
+        load();
+        Integer pos = id == null ? null : _positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /**
+     * Return the id of the commit at POS.
+     * @param pos position
+     * @return hex id
+     */
+    String idAt(int pos) {
+        load();
+        return _ids[pos];
+    }
+
+    /**
+     * Return the first parent of commit ID.
+     * @param id full hex id
+     * @return hex id, or null if ID has no parent or is not in the graph
+     */
+    String parent1(String id) {
+        int pos = position(id);
+        return pos == NONE || _parent1[pos] == NONE ? null
+                : _ids[_parent1[pos]];
+    }
+
+    /**
+     * Return the time of commit ID.
+     * @param id full hex id
+     * @return milliseconds since the epoch, or 0 if ID is not in the
+     *         graph
+     */
+    long time(String id) {
+        int pos = position(id);
+        return pos == NONE ? 0 : _time[pos];
+    }
+
+    /**
+     * Return the generation number of commit ID.
+     * @param id full hex id
+     * @return generation, or 0 if ID is not in the graph
+     */
+    int generation(String id) {
+        int pos = position(id);
+        return pos == NONE ? 0 : _generation[pos];
+    }
+
+    /**
+     * Append COMMIT to the graph, if it is not already there, over any
+     * partial record left at the end.  Its parents must already be in
+     * the graph.
+     * @param commit a stored commit
+     */
+    void add(Commit commit) {
+        addAll(List.of(commit));
+    }
+
+    /**
+     * Append each of COMMITS that is not already in the graph, in one
+     * write.  Each commit's parents must be in the graph or come before
+     * it in COMMITS.
+     * @param commits stored commits
+     */
+    void addAll(List<Commit> commits) {
+        load();
+        long end = HEADER + (long) _count * RECORD;
+        ByteBuffer records = ByteBuffer.allocate(commits.size() * RECORD);
+        for (Commit commit : commits) {
+            if (_positions.containsKey(commit.getSha1())) {
+                continue;
+            }
+            int p1 = position(commit.getParent1());
+            int p2 = position(commit.getParent2());
+            if ((p1 == NONE && commit.getParent1() != null)
+                    || (p2 == NONE && commit.getParent2() != null)) {
+                throw new IllegalArgumentException("parent of "
+                        + commit.getSha1() + " is not in the commit graph");
+            }
+            append(commit.getSha1(), p1, p2, commit.getTime(), records);
+        }
+        records.flip();
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                end += out.write(records, end);
+            }
+            out.truncate(end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the best common ancestor of commits A and B: of the common
+     * ancestors that are not ancestors of other common ancestors, the one
+     * with the highest generation.  Returns null if they have none.
+     * @param a full hex id
+     * @param b full hex id
+     * @return hex id of the merge base, or null
+     */
+    String mergeBase(String a, String b) {
+        List<Integer> bases = paint(position(a), position(b));
+        int best = NONE;
+        for (int c : bases) {
+            if (best == NONE || _generation[c] > _generation[best]) {
+                best = c;
+            }
+        }
+        return best == NONE ? null : _ids[best];
+    }
+
+    /**
+     * Return whether commit A is an ancestor of commit B, or B itself.
+     * @param a full hex id
+     * @param b full hex id
+     * @return true if B descends from A
+     */
+    boolean isAncestor(String a, String b) {
+        int target = position(a);
+        int start = position(b);
+        if (target == NONE || start == NONE) {
+            return false;
+        }
+        boolean[] seen = new boolean[_count];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        seen[start] = true;
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            if (c == target) {
+                return true;
+            }
+            for (int p : new int[] { _parent1[c], _parent2[c] }) {
+                if (p != NONE && !seen[p]
+                        && _generation[p] >= _generation[target]) {
+                    seen[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the common ancestors of A and B that are not ancestors of
+     * other common ancestors, found as git's paint_down_to_common does:
+     * commits are visited highest generation first, painted with the
+     * side(s) they are reachable from, and the walk stops once every
+     * queued commit is below a common ancestor already found.
+     * @param a position
+     * @param b position
+     * @return positions of the merge bases
+     */
+    private List<Integer> paint(int a, int b) {
+        List<Integer> result = new ArrayList<>();
+        if (a == NONE || b == NONE) {
+            return result;
+        }
+        byte[] flags = new byte[_count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+                _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Long.compare(_time[y], _time[x]));
+        flags[a] |= FIRST;
+        flags[b] |= SECOND;
+        queue.add(a);
+        if (a != b) {
+            queue.add(b);
+        }
+        int live = queue.size();
+        while (live > 0) {
+            int c = queue.poll();
+            int f = flags[c];
+            if ((f & STALE) == 0) {
+                live -= 1;
+            }
+            if ((f & (FIRST | SECOND | STALE)) == (FIRST | SECOND)) {
+                result.add(c);
+                f |= STALE;
+            }
+            for (int p : new int[] { _parent1[c], _parent2[c] }) {
+                if (p == NONE || (flags[p] & f) == f) {
+                    continue;
+                }
+                boolean queued = flags[p] != 0;
+                boolean wasLive = queued && (flags[p] & STALE) == 0;
+                flags[p] |= f;
+                boolean isLive = (flags[p] & STALE) == 0;
+                if (!queued) {
+                    queue.add(p);
+                    live += isLive ? 1 : 0;
+                } else if (wasLive && !isLive) {
+                    live -= 1;
+                }
+            }
+        }
+        return removeRedundant(result);
+    }
+
+    /**
+     * Return the members of BASES that are not ancestors of other
+     * members.
+     * @param bases positions of common ancestors
+     * @return the remaining positions
+     */
+    private List<Integer> removeRedundant(List<Integer> bases) {
+        List<Integer> result = new ArrayList<>();
+        for (int c : bases) {
+            boolean redundant = false;
+            for (int d : bases) {
+                if (c != d && _generation[d] > _generation[c]
+                        && isAncestor(_ids[c], _ids[d])) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add a commit with id ID, parent positions P1 and P2 and time TIME
+     * to the in-memory graph, and put its record in RECORD.
+     * @param id hex id
+     * @param p1 first parent position or NONE
+     * @param p2 second parent position or NONE
+     * @param time commit time
+     * @param record buffer receiving the record
+     */
+    private void append(String id, int p1, int p2, long time,
+                        ByteBuffer record) {
+        int generation = 1 + Math.max(p1 == NONE ? 0 : _generation[p1],
+                p2 == NONE ? 0 : _generation[p2]);
+        ensure(_count + 1);
+        _ids[_count] = id;
+        _parent1[_count] = p1;
+        _parent2[_count] = p2;
+        _generation[_count] = generation;
+        _time[_count] = time;
+        _positions.put(id, _count);
+        _count += 1;
+        record.put(Utils.fromHex(id)).putInt(p1).putInt(p2)
+                .putInt(generation).putLong(time);
+    }
+
+    /**
+     * Make room for N commits in the in-memory graph.
+     * @param n commit count
+     */
+    private void ensure(int n) {
+        if (n > _ids.length) {
+            int size = Math.max(n, 2 * _ids.length);
+            _ids = Arrays.copyOf(_ids, size);
+            _parent1 = Arrays.copyOf(_parent1, size);
+            _parent2 = Arrays.copyOf(_parent2, size);
+            _generation = Arrays.copyOf(_generation, size);
+            _time = Arrays.copyOf(_time, size);
+        }
+    }
+
+    /**
+     * Read the graph file, rebuilding it first if it does not exist.
+     * A partial record left by an interrupted append is ignored.
+     */
+    private void load() {
+        if (_count >= 0) {
+            return;
+        }
+        if (!_file.isFile()) {
+            rebuild();
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(_file));
+        if (in.limit() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION) {
+            throw new IllegalArgumentException("corrupt commit graph");
+        }
+        int n = (in.limit() - HEADER) / RECORD;
+        reset(n);
+        byte[] raw = new byte[CommitIndex.ID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            in.get(raw);
+            String id = Utils.toHex(raw);
+            _ids[k] = id;
+            _parent1[k] = in.getInt();
+            _parent2[k] = in.getInt();
+            _generation[k] = in.getInt();
+            _time[k] = in.getLong();
+            _positions.put(id, k);
+        }
+        _count = n;
+    }
+
+    /**
+     * Empty the in-memory graph, with room for N commits.
+     * @param n expected commit count
+     */
+    private void reset(int n) {
+        int size = Math.max(n, 16);
+        _ids = new String[size];
+        _parent1 = new int[size];
+        _parent2 = new int[size];
+        _generation = new int[size];
+        _time = new long[size];
+        _positions = new HashMap<>(2 * size);
+        _count = 0;
+    }
+
+    /**
+     * Forget the in-memory graph, so that it is read again on next use.
+     */
+    void invalidate() {
+        _count = -1;
+    }
+
+    /**
+     * Rebuild the graph file from every commit in the commit index,
+     * ordering parents before children, and replace the file atomically.
+     */
+    void rebuild() {
+        int n = _index.size();
+        HashMap<String, Commit> commits = new HashMap<>(2 * n);
+        for (int k = 0; k < n; k += 1) {
+            Commit c = Commit.read(_index.getStore(), _index.idAt(k));
+            commits.put(c.getSha1(), c);
+        }
+        reset(n);
+        ByteBuffer out = ByteBuffer.allocate(HEADER + n * RECORD);
+        out.putInt(MAGIC).putInt(VERSION);
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        for (Commit start : commits.values()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                Commit c = stack.peek();
+                if (_positions.containsKey(c.getSha1())) {
+                    stack.pop();
+                    continue;
+                }
+                Commit missing = null;
+                for (String p : new String[] { c.getParent1(),
+                                               c.getParent2() }) {
+                    if (p != null && !_positions.containsKey(p)
+                            && commits.containsKey(p)) {
+                        missing = commits.get(p);
+                    }
+                }
+                if (missing != null) {
+                    stack.push(missing);
+                    continue;
+                }
+                stack.pop();
+                append(c.getSha1(), position(c.getParent1()),
+                        position(c.getParent2()), c.getTime(), out);
+            }
+        }
+        try {
+            File tmp = File.createTempFile("tmp-", null,
+                    _file.getParentFile());
+            Utils.writeContents(tmp, Arrays.copyOf(out.array(),
+                    out.position()));
+            Utils.rename(tmp, _file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A persistent, sorted index of every commit id, used to resolve full or
+ * abbreviated commit ids without listing the commit store.  Like git's
+ * .idx files it starts with a 256-entry fan-out table: entry B is the
+ * number of ids whose first byte is at most B, so the ids starting with
+ * a given byte are found without a search and a prefix is then resolved
+ * by bisecting that bucket.
+ *
+ * Layout: magic, version, count, the fan-out table, then COUNT sorted
+ * 20-byte ids.
+ *
+ * New ids are not merged into the sorted file as they come: they are
+ * appended, 20 raw bytes each, to a small unsorted tail file that
+ * lookups scan linearly.  repack and gc merge the tail into the sorted
+ * file, which is then replaced atomically, and so does an insertion
+ * that would grow the tail past MAX_TAIL ids, so a commit writes 20
+ * bytes rather than the whole index.  A partial record at the end of the
+ * tail, and ids of the tail already in the sorted file, as after a crash
+ * during a merge, are ignored.
+ * @author Joshua Park
+ */
+class CommitIndex {
+
+    /** Magic number at the start of the index ("GCIX"). */
+    static final int MAGIC = 0x47434958;
+
+    /** Version of the index format. */
+    static final int VERSION = 1;
+
+    /** Number of fan-out entries. */
+    static final int FANOUT = 256;
+
+    /** Size of the header, including the fan-out table. */
+    static final int HEADER = 12 + 4 * FANOUT;
+
+    /** Length of a raw id in bytes. */
+    static final int ID_BYTES = 20;
+
+    /** Most ids kept in the tail before it is merged. */
+    static final int MAX_TAIL = 1024;
+
+    /** The index of this repository's commits. */
+    static final CommitIndex INDEX = new CommitIndex(Paths.COMMIT_INDEX,
+            Paths.COMMIT_INDEX_TAIL, ObjectStore.COMMITS);
+
+    /** The index file. */
+    private final File _file;
+
+    /** The tail file of ids not yet merged into _file. */
+    private final File _tailFile;
+
+    /** Store of the indexed commits, used to rebuild a missing index. */
+    private final ObjectStore _store;
+
+    /** The index contents, loaded on first use. */
+    private ByteBuffer _map;
+
+    /** The ids of the tail, in order of insertion, loaded on first
+     *  use. */
+    private ArrayList<String> _tail;
+
+    /**
+     * An index kept in FILE and TAIL over the commits in STORE.
+     * @param file index file
+     * @param tail tail file
+     * @param store commit store
+     */
+    CommitIndex(File file, File tail, ObjectStore store) {
+        _file = file;
+        _tailFile = tail;
+        _store = store;
+    }
+
+    /**
+     * number of ids.
+     * @return count
+     */
+    int size() {
+        return map().getInt(8) + tail().size();
+    }
+
+    /**
+     * Return the Kth id: the ids of the sorted file in order, then those
+     * of the tail in order of insertion.
+     * @param k position
+     * @return hex id
+     */
+    String idAt(int k) {
+        int n = map().getInt(8);
+        if (k >= n) {
+            return tail().get(k - n);
+        }
+        byte[] raw = new byte[ID_BYTES];
+        map().get(HEADER + k * ID_BYTES, raw);
+        return Utils.toHex(raw);
+    }
+
+    /**
+     * Add ID to the index, if it is not already there, by appending it
+     * to the tail.
+     * @param id hex commit id
+     */
+    void add(String id) {
+        addAll(List.of(id));
+    }
+
+    /**
+     * Add each of IDS that is not already in the index, appending them
+     * to the tail in one write, or merging the tail and them into the
+     * sorted file if the tail would exceed MAX_TAIL ids.
+     * @param ids hex commit ids
+     */
+    void addAll(Collection<String> ids) {
+        HashSet<String> inTail = new HashSet<>(tail());
+        LinkedHashSet<String> added = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!inTail.contains(id) && !inSorted(map(), id)) {
+                added.add(id);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        if (_tail.size() + added.size() > MAX_TAIL) {
+            merge(added);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(added.size() * ID_BYTES);
+        for (String id : added) {
+            buf.put(Utils.fromHex(id));
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(_tailFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = ch.size() - ch.size() % ID_BYTES;
+            ch.truncate(end);
+            while (buf.hasRemaining()) {
+                end += ch.write(buf, end);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _tail.addAll(added);
+    }
+
+    /**
+     * Merge the tail into the sorted file, if it holds any ids.
+     */
+    void compact() {
+        if (!tail().isEmpty() || _tailFile.exists()) {
+            merge(List.of());
+        }
+    }
+
+    /**
+     * Replace the sorted file with one that also holds the ids of the
+     * tail and IDS, none of which it holds yet, merging them in one
+     * pass, then delete the tail.
+     * @param ids hex commit ids
+     */
+    private void merge(Collection<String> ids) {
+        ByteBuffer old = map();
+        int n = old.getInt(8);
+        TreeSet<String> added = new TreeSet<>(tail());
+        added.addAll(ids);
+        int total = n + added.size();
+        ByteBuffer idx = ByteBuffer.allocate(HEADER + total * ID_BYTES);
+        idx.putInt(MAGIC).putInt(VERSION).putInt(total);
+        int[] fanout = new int[FANOUT];
+        for (String id : added) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int extra = 0;
+        for (int i = 0; i < FANOUT; i += 1) {
+            extra += fanout[i];
+            idx.putInt(old.getInt(12 + 4 * i) + extra);
+        }
+        byte[] raw = new byte[ID_BYTES];
+        int k = 0;
+        for (String id : added) {
+            while (k < n && compareAt(old, k, id) < 0) {
+                old.get(HEADER + k * ID_BYTES, raw);
+                idx.put(raw);
+                k += 1;
+            }
+            idx.put(Utils.fromHex(id));
+        }
+        for (; k < n; k += 1) {
+            old.get(HEADER + k * ID_BYTES, raw);
+            idx.put(raw);
+        }
+        store(idx);
+        dropTail();
+    }
+
+    /**
+     * Return whether the sorted file IDX holds ID.
+     * @param idx index contents
+     * @param id hex commit id
+     * @return true if present
+     */
+    private static boolean inSorted(ByteBuffer idx, String id) {
+        int b = Integer.parseInt(id.substring(0, 2), 16);
+        int end = bucketEnd(idx, b);
+        int pos = lowerBound(idx, bucketStart(idx, b), end, id);
+        return pos < end && compareAt(idx, pos, id) == 0;
+    }
+
+    /**
+     * store getter.
+     * @return the store of the indexed commits
+     */
+    ObjectStore getStore() {
+        return _store;
+    }
+
+    /**
+     * Return the unique id starting with PREFIX, or null if there is none.
+     * Throws GitletException if more than one id starts with PREFIX.
+     * @param prefix full or abbreviated hex id
+     * @return full hex id
+     */
+    String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        ByteBuffer idx = map();
+        int lo, hi;
+        int first = Character.digit(prefix.charAt(0), 16);
+        if (prefix.length() == 1) {
+            lo = bucketStart(idx, first << 4);
+            hi = bucketEnd(idx, (first << 4) | 0xf);
+        } else {
+            int b = (first << 4) | Character.digit(prefix.charAt(1), 16);
+            lo = bucketStart(idx, b);
+            hi = bucketEnd(idx, b);
+        }
+        int pos = lowerBound(idx, lo, hi, prefix);
+        String result = null;
+        if (pos < hi && compareAt(idx, pos, prefix) == 0) {
+            if (pos + 1 < hi && compareAt(idx, pos + 1, prefix) == 0) {
+                throw Utils.error("Ambiguous commit id.");
+            }
+            result = idAt(pos);
+        }
+        for (String id : tail()) {
+            if (id.startsWith(prefix)) {
+                if (result != null) {
+                    throw Utils.error("Ambiguous commit id.");
+                }
+                result = id;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Position of the first id in IDX[LO .. HI) not less than PREFIX.
+     * @param idx index contents
+     * @param lo first position
+     * @param hi position after the last
+     * @param prefix hex prefix
+     * @return position
+     */
+    private static int lowerBound(ByteBuffer idx, int lo, int hi,
+                                  String prefix) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(idx, mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compare the leading hex digits of the Kth id in IDX with PREFIX.
+     * @param idx index contents
+     * @param k position
+     * @param prefix hex prefix
+     * @return negative, zero or positive as the id's first
+     *         prefix.length() digits are less, equal or greater
+     */
+    private static int compareAt(ByteBuffer idx, int k, String prefix) {
+        int base = HEADER + k * ID_BYTES;
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int b = idx.get(base + i / 2) & 0xff;
+            int nibble = (i % 2 == 0) ? b >> 4 : b & 0xf;
+            int c = nibble - Character.digit(prefix.charAt(i), 16);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * First position of the ids starting with byte B.
+     * @param idx index contents
+     * @param b first byte
+     * @return position
+     */
+    private static int bucketStart(ByteBuffer idx, int b) {
+        return b == 0 ? 0 : idx.getInt(12 + 4 * (b - 1));
+    }
+
+    /**
+     * Position after the last id starting with byte B.
+     * @param idx index contents
+     * @param b first byte
+     * @return position
+     */
+    private static int bucketEnd(ByteBuffer idx, int b) {
+        return idx.getInt(12 + 4 * b);
+    }
+
+    /**
+     * Return the memory-mapped index contents, rebuilding the file from
+     * the commit store if it does not exist yet.
+     * @return index contents
+     */
+    private ByteBuffer map() {
+        if (_map == null) {
+            if (!_file.isFile()) {
+                rebuild();
+            } else {
+                try (FileChannel ch = FileChannel.open(_file.toPath(),
+                        StandardOpenOption.READ)) {
+                    _map = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                            ch.size());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+                    throw new IllegalArgumentException(
+                            "corrupt commit index");
+                }
+            }
+        }
+        return _map;
+    }
+
+    /**
+     * Return the ids of the tail that the sorted file lacks, reading the
+     * tail file on first use.
+     * @return tail ids in order of insertion
+     */
+    private ArrayList<String> tail() {
+        if (_tail == null) {
+            ByteBuffer idx = map();
+            _tail = new ArrayList<>();
+            if (_tailFile.isFile()) {
+                byte[] bytes = Utils.readContents(_tailFile);
+                byte[] raw = new byte[ID_BYTES];
+                LinkedHashSet<String> ids = new LinkedHashSet<>();
+                for (int at = 0; at + ID_BYTES <= bytes.length;
+                     at += ID_BYTES) {
+                    System.arraycopy(bytes, at, raw, 0, ID_BYTES);
+                    String id = Utils.toHex(raw);
+                    if (!inSorted(idx, id)) {
+                        ids.add(id);
+                    }
+                }
+                _tail.addAll(ids);
+            }
+        }
+        return _tail;
+    }
+
+    /**
+     * Delete the tail file, whose ids are all in the sorted file.
+     */
+    private void dropTail() {
+        _tailFile.delete();
+        _tail = new ArrayList<>();
+    }
+
+    /**
+     * Forget the mapped index and tail, so that they are read again on
+     * next use.
+     */
+    void invalidate() {
+        _map = null;
+        _tail = null;
+    }
+
+    /**
+     * Rebuild the index from the ids in the commit store, emptying the
+     * tail.
+     */
+    void rebuild() {
+        List<String> ids = new ArrayList<>(_store.ids());
+        ByteBuffer idx = ByteBuffer.allocate(HEADER
+                + ids.size() * ID_BYTES);
+        idx.putInt(MAGIC).putInt(VERSION).putInt(ids.size());
+        int[] fanout = new int[FANOUT];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int i = 0; i < FANOUT; i += 1) {
+            total += fanout[i];
+            idx.putInt(total);
+        }
+        for (String id : ids) {
+            idx.put(Utils.fromHex(id));
+        }
+        store(idx);
+        dropTail();
+    }
+
+    /**
+     * Atomically replace the index file with IDX.
+     * @param idx new index contents
+     */
+    private void store(ByteBuffer idx) {
+        try {
+            File tmp = File.createTempFile("tmp-", ".idx",
+                    _file.getParentFile());
+            Utils.writeContents(tmp, idx.array());
+            Utils.rename(tmp, _file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _map = idx;
+    }
+}
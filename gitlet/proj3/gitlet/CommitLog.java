@@ -0,0 +1,799 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of commit metadata, so that global-log and find
+ * never decode a Commit.  The log holds one RECORD-byte record per
+ * commit, in the order the commits were made: 20-byte id, the ids of its
+ * parents (zero if absent), its time and time zone, and the offset,
+ * length and hash of its message, whose UTF-8 bytes are appended to a
+ * separate messages file.  global-log reads both files front to back.
+ *
+ * find uses a chained hash table over the message hashes, kept in the
+ * message index file: magic, version, bucket count, entry count, then
+ * for each bucket the position of the newest record whose message hashes
+ * to it, then for each record the position of the next older record in
+ * the same bucket (NONE ends a chain).  An append updates one chain link
+ * and one bucket in place; the table is rebuilt, with twice the buckets,
+ * when it holds more than two entries per bucket.  Only records whose
+ * message hash matches are checked against the message.
+ *
+ * global-log --since/--until uses the time index: magic, version, entry
+ * count, then for each record its time and position, sorted by time.  A
+ * window is found by bisection, and only the records inside it are read.
+ * Commits are nearly always appended in time order, so an append
+ * extends the time index; a commit older than the newest one, as a
+ * fetch can bring, makes it be rebuilt.
+ *
+ * The log holds the commits of the commit index.  A log that does not,
+ * or is missing, is rebuilt from the commit store, oldest commit first;
+ * so is a message index or time index that does not match its log.
+ * @author Joshua Park
+ */
+class CommitLog {
+
+    /** Magic number at the start of the log ("GCLG"). */
+    static final int MAGIC = 0x47434c47;
+
+    /** Magic number at the start of the message index ("GMIX"). */
+    static final int INDEX_MAGIC = 0x474d4958;
+
+    /** Magic number at the start of the time index ("GCTM"). */
+    static final int TIMES_MAGIC = 0x4743544d;
+
+    /** Version of all three file formats. */
+    static final int VERSION = 2;
+
+    /** Size of the log header. */
+    static final int HEADER = 8;
+
+    /** Size of the message index header. */
+    static final int INDEX_HEADER = 16;
+
+    /** Size of the time index header. */
+    static final int TIMES_HEADER = 12;
+
+    /** Size of one log record. */
+    static final int RECORD = 3 * CommitIndex.ID_BYTES + 8 + 4 + 8 + 4 + 8;
+
+    /** Offset of the message offset in a log record. */
+    static final int MESSAGE_FIELD = 3 * CommitIndex.ID_BYTES + 12;
+
+    /** Size of one time index entry. */
+    static final int TIME_ENTRY = 8 + 4;
+
+    /** Fewest buckets in the message index. */
+    static final int MIN_BUCKETS = 256;
+
+    /** Position that ends a chain. */
+    static final int NONE = -1;
+
+    /** The log of this repository's commits. */
+    static final CommitLog LOG = new CommitLog(Paths.COMMIT_LOG,
+            Paths.COMMIT_MESSAGES, Paths.MESSAGE_INDEX, Paths.COMMIT_TIMES,
+            CommitIndex.INDEX);
+
+    /** The log file. */
+    private final File _file;
+
+    /** The messages file. */
+    private final File _messages;
+
+    /** The message index file. */
+    private final File _index;
+
+    /** The time index file. */
+    private final File _times;
+
+    /** Index of the commits the log should hold. */
+    private final CommitIndex _commits;
+
+    /**
+     * A log kept in FILE, MESSAGES, INDEX and TIMES of the commits in
+     * COMMITS.
+     * @param file log file
+     * @param messages messages file
+     * @param index message index file
+     * @param times time index file
+     * @param commits commit index
+     */
+    CommitLog(File file, File messages, File index, File times,
+              CommitIndex commits) {
+        _file = file;
+        _messages = messages;
+        _index = index;
+        _times = times;
+        _commits = commits;
+    }
+
+    /**
+     * number of commits.
+     * @return count
+     */
+    int size() {
+        check();
+        return count();
+    }
+
+    /**
+     * Append COMMIT, which was just added to the commit index, unless it
+     * is already in the log.
+     * @param commit a stored commit
+     */
+    void add(Commit commit) {
+        addAll(List.of(commit));
+    }
+
+    /**
+     * Append COMMITS, which were just added to the commit index, unless
+     * they are already in the log.  The log is rebuilt if it does not
+     * hold every other indexed commit.
+     * @param commits stored commits
+     */
+    void addAll(List<Commit> commits) {
+        int n = count();
+        int expected = _commits.size();
+        int m = commits.size();
+        if (n == expected) {
+            return;
+        } else if (n != expected - m) {
+            rebuild();
+            return;
+        }
+        long hash = 0;
+        try (FileChannel messages = FileChannel.open(_messages.toPath(),
+                StandardOpenOption.WRITE);
+             FileChannel log = FileChannel.open(_file.toPath(),
+                     StandardOpenOption.WRITE)) {
+            long start = messages.size();
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            ByteBuffer records = ByteBuffer.allocate(m * RECORD);
+            for (Commit commit : commits) {
+                byte[] message = commit.getCommitMessage()
+                        .getBytes(StandardCharsets.UTF_8);
+                hash = hash(message);
+                record(commit, start + text.size(), message.length, hash,
+                        records);
+                text.write(message);
+            }
+            write(messages, ByteBuffer.wrap(text.toByteArray()), start);
+            records.flip();
+            long end = HEADER + (long) n * RECORD;
+            write(log, records, end);
+            log.truncate(end + (long) m * RECORD);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (m == 1) {
+            index(n, hash);
+        } else {
+            rebuildIndex(hashes(n + m));
+        }
+        appendTimes(n, commits);
+    }
+
+    /**
+     * Call ACTION on every commit, oldest first.
+     * @param action action on each entry
+     */
+    void forEach(Consumer<Entry> action) {
+        check();
+        int n = count();
+        try (DataInputStream log = open(_file);
+             DataInputStream messages = open(_messages)) {
+            log.skipNBytes(HEADER);
+            long pos = 0;
+            byte[] record = new byte[RECORD];
+            for (int k = 0; k < n; k += 1) {
+                log.readFully(record);
+                ByteBuffer buf = ByteBuffer.wrap(record);
+                Entry e = entry(buf);
+                long offset = buf.getLong(MESSAGE_FIELD);
+                byte[] message = new byte[buf.getInt(MESSAGE_FIELD + 8)];
+                messages.skipNBytes(offset - pos);
+                messages.readFully(message);
+                pos = offset + message.length;
+                e._message = new String(message, StandardCharsets.UTF_8);
+                action.accept(e);
+            }
+        } catch (EOFException excp) {
+            throw new IllegalArgumentException("truncated commit log");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Call ACTION on every commit made from SINCE to UNTIL, inclusive, in
+     * order of time, reading only those commits' records.
+     * @param since earliest time in milliseconds since the epoch
+     * @param until latest time in milliseconds since the epoch
+     * @param action action on each entry
+     */
+    void forEach(long since, long until, Consumer<Entry> action) {
+        check();
+        try (FileChannel times = FileChannel.open(_times.toPath(),
+                StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(_file.toPath(),
+                     StandardOpenOption.READ);
+             FileChannel messages = FileChannel.open(_messages.toPath(),
+                     StandardOpenOption.READ)) {
+            ByteBuffer index = times.map(FileChannel.MapMode.READ_ONLY, 0,
+                    times.size());
+            int n = index.getInt(8);
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (index.getLong(TIMES_HEADER + mid * TIME_ENTRY) < since) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD);
+            for (int k = lo; k < n; k += 1) {
+                int at = TIMES_HEADER + k * TIME_ENTRY;
+                if (index.getLong(at) > until) {
+                    break;
+                }
+                int pos = index.getInt(at + 8);
+                record.clear();
+                read(log, HEADER + (long) pos * RECORD, record);
+                Entry e = entry(record);
+                byte[] message = read(messages, record.getLong(MESSAGE_FIELD),
+                        record.getInt(MESSAGE_FIELD + 8)).array();
+                e._message = new String(message, StandardCharsets.UTF_8);
+                action.accept(e);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the ids of the commits whose message is MESSAGE, oldest
+     * first.
+     * @param message commit message
+     * @return hex ids
+     */
+    List<String> find(String message) {
+        check();
+        byte[] wanted = message.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(wanted);
+        ArrayList<String> result = new ArrayList<>();
+        try (FileChannel index = FileChannel.open(_index.toPath(),
+                StandardOpenOption.READ);
+             FileChannel log = FileChannel.open(_file.toPath(),
+                     StandardOpenOption.READ);
+             FileChannel messages = FileChannel.open(_messages.toPath(),
+                     StandardOpenOption.READ)) {
+            int buckets = read(index, 8, 4).getInt();
+            int k = read(index, INDEX_HEADER
+                    + 4L * bucket(hash, buckets), 4).getInt();
+            ByteBuffer record = ByteBuffer.allocate(RECORD);
+            while (k != NONE) {
+                record.clear();
+                read(log, HEADER + (long) k * RECORD, record);
+                long offset = record.getLong(MESSAGE_FIELD);
+                int length = record.getInt(MESSAGE_FIELD + 8);
+                if (record.getLong(RECORD - 8) == hash
+                        && length == wanted.length
+                        && Arrays.equals(wanted,
+                                read(messages, offset, length).array())) {
+                    byte[] raw = new byte[CommitIndex.ID_BYTES];
+                    record.get(0, raw);
+                    result.add(Utils.toHex(raw));
+                }
+                k = read(index, INDEX_HEADER + 4L * buckets + 4L * k, 4)
+                        .getInt();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Rebuild the log, its messages and its message index from every
+     * commit in the commit index, oldest first, replacing each file
+     * atomically.
+     */
+    void rebuild() {
+        int n = _commits.size();
+        List<Commit> commits = new ArrayList<>(n);
+        for (int k = 0; k < n; k += 1) {
+            commits.add(Commit.read(_commits.getStore(),
+                    _commits.idAt(k)));
+        }
+        commits.sort((a, b) -> {
+            int c = Long.compare(a.getTime(), b.getTime());
+            return c != 0 ? c : a.getSha1().compareTo(b.getSha1());
+        });
+        ByteBuffer log = ByteBuffer.allocate(HEADER + n * RECORD);
+        log.putInt(MAGIC).putInt(VERSION);
+        ByteBuffer messages = ByteBuffer.allocate(1024);
+        long[] hashes = new long[n];
+        for (int k = 0; k < n; k += 1) {
+            Commit c = commits.get(k);
+            byte[] message = c.getCommitMessage()
+                    .getBytes(StandardCharsets.UTF_8);
+            if (messages.remaining() < message.length) {
+                messages = grow(messages, message.length);
+            }
+            hashes[k] = hash(message);
+            record(c, messages.position(), message.length, hashes[k], log);
+            messages.put(message);
+        }
+        Utils.writeAtomically(_messages,
+                Arrays.copyOf(messages.array(), messages.position()));
+        Utils.writeAtomically(_file, log.array());
+        rebuildIndex(hashes);
+        rebuildTimes(n);
+    }
+
+    /**
+     * Rebuild the log if it is missing or does not hold the commits of
+     * the commit index, and the message index if it does not match the
+     * log.
+     */
+    private void check() {
+        int n = count();
+        if (n != _commits.size()) {
+            rebuild();
+            return;
+        }
+        if (indexCount() != n) {
+            rebuildIndex(hashes(n));
+        }
+        if (timesCount() != n) {
+            rebuildTimes(n);
+        }
+    }
+
+    /**
+     * Return the number of whole records in the log, or -1 if it is
+     * missing or not a commit log.  A partial record left by an
+     * interrupted append is ignored.
+     * @return record count
+     */
+    private int count() {
+        if (!_file.isFile() || !_messages.isFile()) {
+            return -1;
+        }
+        try (FileChannel log = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            if (log.size() < HEADER) {
+                return -1;
+            }
+            ByteBuffer header = read(log, 0, HEADER);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return -1;
+            }
+            return (int) ((log.size() - HEADER) / RECORD);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the number of records in the message index, or -1 if it is
+     * missing or not a message index.
+     * @return entry count
+     */
+    private int indexCount() {
+        if (!_index.isFile() || _index.length() < INDEX_HEADER) {
+            return -1;
+        }
+        try (FileChannel index = FileChannel.open(_index.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = read(index, 0, INDEX_HEADER);
+            if (header.getInt() != INDEX_MAGIC
+                    || header.getInt() != VERSION) {
+                return -1;
+            }
+            header.getInt();
+            return header.getInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the number of entries in the time index, or -1 if it is
+     * missing or not a time index.
+     * @return entry count
+     */
+    private int timesCount() {
+        if (!_times.isFile() || _times.length() < TIMES_HEADER) {
+            return -1;
+        }
+        try (FileChannel times = FileChannel.open(_times.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = read(times, 0, TIMES_HEADER);
+            if (header.getInt() != TIMES_MAGIC
+                    || header.getInt() != VERSION) {
+                return -1;
+            }
+            return header.getInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Add COMMITS, just appended to the log at position N, to the time
+     * index, or rebuild the index if it does not hold records 0 .. N - 1
+     * or a commit is older than the newest one it holds.
+     * @param n position of the first new record
+     * @param commits new commits
+     */
+    private void appendTimes(int n, List<Commit> commits) {
+        int m = commits.size();
+        if (timesCount() == n) {
+            try (FileChannel times = FileChannel.open(_times.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long last = n == 0 ? Long.MIN_VALUE : read(times,
+                        TIMES_HEADER + (long) (n - 1) * TIME_ENTRY, 8)
+                        .getLong();
+                ByteBuffer entries = ByteBuffer.allocate(m * TIME_ENTRY);
+                boolean inOrder = true;
+                for (int k = 0; k < m; k += 1) {
+                    long time = commits.get(k).getTime();
+                    inOrder &= time >= last;
+                    last = Math.max(last, time);
+                    entries.putLong(time).putInt(n + k);
+                }
+                if (inOrder) {
+                    entries.flip();
+                    write(times, entries,
+                            TIMES_HEADER + (long) n * TIME_ENTRY);
+                    write(times, ByteBuffer.allocate(4).putInt(0, n + m),
+                            8);
+                    return;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        rebuildTimes(n + m);
+    }
+
+    /**
+     * Replace the time index with one over the first N records of the
+     * log.
+     * @param n record count
+     */
+    private void rebuildTimes(int n) {
+        long[] times = new long[n];
+        try (DataInputStream log = open(_file)) {
+            log.skipNBytes(HEADER);
+            for (int k = 0; k < n; k += 1) {
+                log.skipNBytes(3 * CommitIndex.ID_BYTES);
+                times[k] = log.readLong();
+                log.skipNBytes(RECORD - 3 * CommitIndex.ID_BYTES - 8);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        ByteBuffer out = ByteBuffer.allocate(TIMES_HEADER + n * TIME_ENTRY);
+        out.putInt(TIMES_MAGIC).putInt(VERSION).putInt(n);
+        for (int k : order) {
+            out.putLong(times[k]).putInt(k);
+        }
+        Utils.writeAtomically(_times, out.array());
+    }
+
+    /**
+     * Return the message hashes of the first N records of the log.
+     * @param n record count
+     * @return hashes
+     */
+    private long[] hashes(int n) {
+        long[] result = new long[n];
+        try (DataInputStream log = open(_file)) {
+            log.skipNBytes(HEADER);
+            for (int k = 0; k < n; k += 1) {
+                log.skipNBytes(RECORD - 8);
+                result[k] = log.readLong();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Add record N, whose message hash is HASH, to the message index, or
+     * rebuild the index if it does not hold records 0 .. N - 1 or would
+     * become too full.
+     * @param n new record's position
+     * @param hash its message hash
+     */
+    private void index(int n, long hash) {
+        if (indexCount() == n) {
+            try (FileChannel index = FileChannel.open(_index.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                int buckets = read(index, 8, 4).getInt();
+                if (n + 1 <= 2 * buckets) {
+                    long head = INDEX_HEADER + 4L * bucket(hash, buckets);
+                    int next = read(index, head, 4).getInt();
+                    write(index, ByteBuffer.allocate(4).putInt(0, next),
+                            INDEX_HEADER + 4L * buckets + 4L * n);
+                    write(index, ByteBuffer.allocate(4).putInt(0, n), head);
+                    write(index, ByteBuffer.allocate(4).putInt(0, n + 1),
+                            12);
+                    return;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        rebuildIndex(hashes(n + 1));
+    }
+
+    /**
+     * Replace the message index with one over records whose message
+     * hashes are HASHES.
+     * @param hashes message hash of each record
+     */
+    private void rebuildIndex(long[] hashes) {
+        int n = hashes.length;
+        int buckets = Math.max(MIN_BUCKETS,
+                Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+        int[] heads = new int[buckets];
+        Arrays.fill(heads, NONE);
+        ByteBuffer out = ByteBuffer.allocate(INDEX_HEADER
+                + 4 * buckets + 4 * n);
+        out.putInt(INDEX_MAGIC).putInt(VERSION).putInt(buckets).putInt(n);
+        out.position(INDEX_HEADER + 4 * buckets);
+        for (int k = 0; k < n; k += 1) {
+            int b = bucket(hashes[k], buckets);
+            out.putInt(heads[b]);
+            heads[b] = k;
+        }
+        out.position(INDEX_HEADER);
+        for (int head : heads) {
+            out.putInt(head);
+        }
+        Utils.writeAtomically(_index, out.array());
+    }
+
+    /**
+     * Put the log record of COMMIT, whose message is at OFFSET in the
+     * messages file and has LENGTH bytes and hash HASH, into OUT.
+     * @param commit commit
+     * @param offset message offset
+     * @param length message length
+     * @param hash message hash
+     * @param out destination
+     */
+    private static void record(Commit commit, long offset, int length,
+                               long hash, ByteBuffer out) {
+        out.put(Utils.fromHex(commit.getSha1()));
+        for (String p : new String[] { commit.getParent1(),
+                                       commit.getParent2() }) {
+            out.put(p == null ? new byte[CommitIndex.ID_BYTES]
+                    : Utils.fromHex(p));
+        }
+        out.putLong(commit.getTime()).putInt(commit.getZone())
+                .putLong(offset).putInt(length).putLong(hash);
+    }
+
+    /**
+     * Return the entry of the log record in RECORD, without its message.
+     * @param record a whole record, positioned at its start
+     * @return entry
+     */
+    private static Entry entry(ByteBuffer record) {
+        byte[] raw = new byte[CommitIndex.ID_BYTES];
+        Entry e = new Entry();
+        record.get(0, raw);
+        e._sha1 = Utils.toHex(raw);
+        e._parent1 = optionalId(record, CommitIndex.ID_BYTES, raw);
+        e._parent2 = optionalId(record, 2 * CommitIndex.ID_BYTES, raw);
+        e._time = record.getLong(3 * CommitIndex.ID_BYTES);
+        e._zone = record.getInt(3 * CommitIndex.ID_BYTES + 8);
+        return e;
+    }
+
+    /**
+     * Read into RAW the optional id at POS in RECORD.
+     * @param record log record
+     * @param pos position of the id
+     * @param raw buffer
+     * @return hex id, or null if absent
+     */
+    private static String optionalId(ByteBuffer record, int pos,
+                                     byte[] raw) {
+        record.get(pos, raw);
+        for (byte b : raw) {
+            if (b != 0) {
+                return Utils.toHex(raw);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the bucket of message hash HASH in a table of BUCKETS.
+     * @param hash message hash
+     * @param buckets bucket count, a power of two
+     * @return bucket
+     */
+    private static int bucket(long hash, int buckets) {
+        return (int) (hash ^ (hash >>> 32)) & (buckets - 1);
+    }
+
+    /**
+     * Return the 64-bit FNV-1a hash of MESSAGE.
+     * @param message UTF-8 bytes
+     * @return hash
+     */
+    private static long hash(byte[] message) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : message) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Return BUF with room for at least N more bytes.
+     * @param buf buffer
+     * @param n bytes needed
+     * @return buffer holding the contents of BUF
+     */
+    private static ByteBuffer grow(ByteBuffer buf, int n) {
+        ByteBuffer result = ByteBuffer.allocate(
+                Math.max(2 * buf.capacity(), buf.position() + n));
+        buf.flip();
+        return result.put(buf);
+    }
+
+    /**
+     * Return a buffered stream over FILE.
+     * @param file file
+     * @return stream
+     * @throws IOException if FILE cannot be opened
+     */
+    private static DataInputStream open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    /**
+     * Return N bytes of CH at POS.
+     * @param ch channel
+     * @param pos position
+     * @param n count
+     * @return buffer positioned at 0
+     * @throws IOException if CH fails or ends early
+     */
+    private static ByteBuffer read(FileChannel ch, long pos, int n)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(n);
+        read(ch, pos, buf);
+        return buf;
+    }
+
+    /**
+     * Fill BUF from CH at POS, and rewind it.
+     * @param ch channel
+     * @param pos position
+     * @param buf destination
+     * @throws IOException if CH fails or ends early
+     */
+    private static void read(FileChannel ch, long pos, ByteBuffer buf)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            int k = ch.read(buf, pos);
+            if (k < 0) {
+                throw new EOFException();
+            }
+            pos += k;
+        }
+        buf.flip();
+    }
+
+    /**
+     * Write all of BUF to CH at POS.
+     * @param ch channel
+     * @param buf data
+     * @param pos position
+     * @throws IOException if CH fails
+     */
+    private static void write(FileChannel ch, ByteBuffer buf, long pos)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    /** The metadata of one commit. */
+    static class Entry {
+        /** Id. */
+        private String _sha1;
+        /** First parent, or null. */
+        private String _parent1;
+        /** Second parent, or null. */
+        private String _parent2;
+        /** Time in milliseconds since the epoch. */
+        private long _time;
+        /** Time zone offset in minutes, or Commit.NO_ZONE. */
+        private int _zone;
+        /** Message. */
+        private String _message;
+
+        /**
+         * get Sha1.
+         * @return sha1
+         */
+        String getSha1() {
+            return _sha1;
+        }
+
+        /**
+         * get Parent.
+         * @return parent
+         */
+        String getParent1() {
+            return _parent1;
+        }
+
+        /**
+         * get parent 2.
+         * @return parent
+         */
+        String getParent2() {
+            return _parent2;
+        }
+
+        /**
+         * get Time.
+         * @return commit time in milliseconds since the epoch
+         */
+        long getTime() {
+            return _time;
+        }
+
+        /**
+         * get Zone.
+         * @return offset from UTC in minutes, or Commit.NO_ZONE
+         */
+        int getZone() {
+            return _zone;
+        }
+
+        /**
+         * get Commit Message.
+         * @return message
+         */
+        String getCommitMessage() {
+            return _message;
+        }
+    }
+}
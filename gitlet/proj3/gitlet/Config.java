@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Repository settings, read from the optional file .gitlet/config.  The
+ * file holds "key = value" lines in java.util.Properties syntax.
+ * @author Joshua Park
+ */
+class Config {
+
+    /** Deflate level for stored blobs: 0 (store uncompressed) to 9, or -1
+     *  for the zlib default. */
+    static final String COMPRESSION = "core.compression";
+
+    /** Smallest file, in bytes, stored in content-defined chunks so that
+     *  similar large files share storage; 0, the default, to store every
+     *  file whole. */
+    static final String CHUNKING = "core.chunking";
+
+    /** Number of threads that write files on checkout and reset; 1 to
+     *  write them one at a time. */
+    static final String CHECKOUT_WORKERS = "checkout.workers";
+
+    /** 0 to skip syncing journaled ref and stage updates and new packs
+     *  to disk, which keeps them atomic if gitlet crashes but not if the
+     *  host does. */
+    static final String FSYNC = "core.fsync";
+
+    /** Settings, loaded on first use. */
+    private static Properties _settings;
+
+    /**
+     * Return the integer setting KEY, or DEFAULTVALUE if it is unset.
+     * Throws GitletException if the setting is not an integer.
+     * @param key setting name
+     * @param defaultValue value of an unset key
+     * @return value
+     */
+    static int getInt(String key, int defaultValue) {
+        String value = settings().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s in config: %s", key, value);
+        }
+    }
+
+    /**
+     * Forget the settings, so that they are read again on next use.
+     */
+    static synchronized void invalidate() {
+        _settings = null;
+    }
+
+    /**
+     * Return the settings, reading them if needed.
+     * @return settings
+     */
+    private static synchronized Properties settings() {
+        if (_settings == null) {
+            _settings = new Properties();
+            if (Paths.CONFIG.isFile()) {
+                try (InputStream in = Files.newInputStream(
+                        Paths.CONFIG.toPath())) {
+                    _settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _settings;
+    }
+}
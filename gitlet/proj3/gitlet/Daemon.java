@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A long-running gitlet process serving one repository, and the client
+ * side that forwards commands to it.  "gitlet daemon", run at the top of
+ * a working tree, listens on the Unix-domain socket .gitlet/daemon.sock
+ * until "gitlet daemon stop".  While the socket exists, every gitlet
+ * command run in that directory sends its arguments to the daemon, which
+ * runs them one at a time with a warm JVM and warm caches (see
+ * RepoCache), and prints the daemon's output and exit status as its own.
+ * If the daemon cannot be reached, the command runs in-process as usual.
+ *
+ * Request: the client's working directory, the argument count, then the
+ * arguments, all as DataOutput UTF strings and ints.  Response: the exit
+ * status, then the bytes written to standard output and to standard
+ * error, each preceded by its length.
+ * @author Joshua Park
+ */
+class Daemon {
+
+    /** Operand of "daemon" that stops a running daemon. */
+    static final String STOP = "stop";
+
+    /** Status sent for a request the daemon will not run, so that the
+     *  client runs it itself. */
+    private static final int REFUSED = -1;
+
+    /** True while this process is serving commands. */
+    private static volatile boolean _serving;
+
+    /** True once a stop has been requested. */
+    private static boolean _stopping;
+
+    /**
+     * Return true if this process is a daemon, so that commands must not
+     * exit the JVM.
+     * @return true if serving
+     */
+    static boolean isServing() {
+        return _serving;
+    }
+
+    /**
+     * Run "daemon" with operands ARGS: start serving, or with the operand
+     * "stop", stop the daemon once the current request is answered.
+     * @param args command and operands
+     */
+    static void command(String... args) {
+        if (args.length > 2 || args.length == 2 && !args[1].equals(STOP)) {
+            System.out.println("Incorrect operands.");
+            Main.exit(0);
+        }
+        boolean stop = args.length == 2;
+        if (_serving) {
+            if (stop) {
+                _stopping = true;
+            } else {
+                System.out.println("A gitlet daemon is already running.");
+            }
+        } else if (stop) {
+            System.out.println("No gitlet daemon is running.");
+        } else {
+            serve();
+        }
+    }
+
+    /**
+     * Send the command ARGS to the daemon of the repository in the
+     * current directory and print its output.  Return its exit status,
+     * or -1 if there is no daemon to run it.
+     * @param args command and operands
+     * @return exit status, or -1
+     */
+    static int forward(String... args) {
+        if (args.length == 0 || !Paths.DAEMON_SOCKET.exists()) {
+            return REFUSED;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(Paths.DAEMON_SOCKET.toPath()));
+        } catch (IOException excp) {
+            return REFUSED;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            out.writeUTF(System.getProperty("user.dir"));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(
+                            Channels.newInputStream(channel)));
+            int status = in.readInt();
+            if (status != REFUSED) {
+                System.out.write(readBytes(in));
+                System.out.flush();
+                System.err.write(readBytes(in));
+                System.err.flush();
+            }
+            return status;
+        } catch (IOException excp) {
+            System.err.println("Lost the connection to the gitlet daemon: "
+                    + excp.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Serve commands on the daemon socket until stopped.
+     */
+    private static void serve() {
+        if (Paths.DAEMON_SOCKET.exists()) {
+            Paths.DAEMON_SOCKET.delete();
+        }
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(
+                    Paths.DAEMON_SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(Paths.DAEMON_SOCKET::delete));
+            RepoCache.enable();
+            RepoCache.settle();
+            _serving = true;
+            while (!_stopping) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot start the gitlet daemon: %s",
+                    excp.getMessage());
+        } finally {
+            _serving = false;
+            Paths.DAEMON_SOCKET.delete();
+        }
+    }
+
+    /**
+     * Run the request from CLIENT and send the response.
+     * @param client connection to a client
+     * @throws IOException if the connection fails
+     */
+    private static void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        String dir = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        if (!dir.equals(System.getProperty("user.dir"))) {
+            out.writeInt(REFUSED);
+            out.flush();
+            return;
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int status = run(args, stdout, stderr);
+        out.writeInt(status);
+        out.writeInt(stdout.size());
+        stdout.writeTo(out);
+        out.writeInt(stderr.size());
+        stderr.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Run the command ARGS in this process as the daemon would, with its
+     * standard output and error sent to STDOUT and STDERR, and return its
+     * exit status.  The JVM and its caches stay warm for the next call,
+     * so that a program such as a benchmark can run many commands in
+     * one JVM.  The current directory must be the working tree.
+     * @param args command and operands
+     * @param stdout standard output of the command
+     * @param stderr standard error of the command
+     * @return exit status
+     */
+    static synchronized int runInProcess(String[] args,
+                                         ByteArrayOutputStream stdout,
+                                         ByteArrayOutputStream stderr) {
+        if (!_serving) {
+            RepoCache.enable();
+            RepoCache.settle();
+            _serving = true;
+        }
+        return run(args, stdout, stderr);
+    }
+
+    /**
+     * Run the command ARGS with its standard output and error sent to
+     * STDOUT and STDERR, and return its exit status.  An exception that
+     * would have ended a one-shot gitlet is reported as the JVM would
+     * report it, and everything cached is dropped.
+     * @param args command and operands
+     * @param stdout standard output of the command
+     * @param stderr standard error of the command
+     * @return exit status
+     */
+    private static int run(String[] args, ByteArrayOutputStream stdout,
+                           ByteArrayOutputStream stderr) {
+        PrintStream oldOut = System.out, oldErr = System.err;
+        PrintStream err = new PrintStream(stderr, true);
+        System.setOut(new PrintStream(stdout, true));
+        System.setErr(err);
+        int status = 0;
+        try {
+            RepoCache.revalidate();
+            Main.run(args);
+        } catch (Exit excp) {
+            status = excp.getStatus();
+        } catch (RuntimeException excp) {
+            err.print("Exception in thread \"main\" ");
+            excp.printStackTrace(err);
+            RepoCache.clear();
+            status = 1;
+        } finally {
+            System.out.flush();
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+            RepoCache.settle();
+        }
+        return status;
+    }
+
+    /**
+     * Read a length and that many bytes from IN.
+     * @param in response stream
+     * @return bytes
+     * @throws IOException if IN fails
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Thrown in place of System.exit by a command run in a daemon. */
+    static class Exit extends RuntimeException {
+        /** Serial number. */
+        private static final long serialVersionUID = 1L;
+
+        /** Exit status. */
+        private final int _status;
+
+        /**
+         * An exit with STATUS.
+         * @param status exit status
+         */
+        Exit(int status) {
+            super(null, null, false, false);
+            _status = status;
+        }
+
+        /**
+         * status getter.
+         * @return exit status
+         */
+        int getStatus() {
+            return _status;
+        }
+    }
+}
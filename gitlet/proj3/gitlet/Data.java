@@ -6,16 +6,16 @@ import java.util.HashSet;
 import java.util.List;
 
 /**
- * The data class, deals with data.
+ * The data class, deals with data: the repository state one command
+ * works on.  HEAD, the head commit, the current branch and the stages
+ * are each read on first use, so a command pays only for what it
+ * touches.  Mutators change the in-memory state and mark it dirty;
+ * flush() then writes every changed file once, at the end of the
+ * command, as one Journal transaction.
  * @author Joshua Park
  */
 public class Data {
 
-    /**
-     * File contents from file name.
-     */
-    private String _fileContents;
-
     /**
      * Get the branch of where HEAD points to.
      */
@@ -35,7 +35,7 @@ public class Data {
      * Mappings of filenames to their blob ids.
      * These filenames are staged for addition.
      */
-    private HashMap<String, String> _addStageMap;
+    private HashMap<String, ObjectId> _addStageMap;
 
     /**
      * Filenames that are staged for deletion.
@@ -43,40 +43,29 @@ public class Data {
     private HashSet<String> _removeStageSet;
 
     /**
-     * Data constructor.
-     * @param filename filename to get contents for
-     */
-    /**
-     * The data constructor.
-     * @param filename fileName
+     * Stat cache of the working tree, loaded on first use.
      */
-    @SuppressWarnings("unchecked")
-    Data(String filename) {
-        _head = Utils.readObject(Paths.HEAD, Head.class);
-        _headCommit = Utils.readObject(Utils.join(Paths.COMMITS,
-                _head.setCommitSha1()), Commit.class);
-        _branch = Utils.readObject(Utils.join(Paths.BRANCHES,
-                _head.getName()), Branch.class);
-        _fileContents = Utils.readContentsAsString(new File(filename));
-        _addStageMap = Utils.readObject(Paths.STAGEDFORADD, HashMap.class);
-        _removeStageSet = Utils.readObject(Paths.STAGEDFORREMOVE,
-                HashSet.class);
-    }
+    private StatCache _statCache;
+
+    /** True if HEAD changed since it was read. */
+    private boolean _headDirty;
+
+    /** True if the current branch changed since it was read. */
+    private boolean _branchDirty;
+
+    /** True if the addition stage changed since it was read. */
+    private boolean _addStageDirty;
+
+    /** True if the removal stage changed since it was read. */
+    private boolean _removeStageDirty;
+
+    /** Updates to be written by flush(). */
+    private final Journal _journal = new Journal();
 
     /**
-     * Data constructor.
+     * Data constructor.  Nothing is read until it is needed.
      */
-    @SuppressWarnings("unchecked")
     Data() {
-        _head = Utils.readObject(Paths.HEAD, Head.class);
-        _headCommit = Utils.readObject(Utils.join(Paths.COMMITS,
-                _head.setCommitSha1()), Commit.class);
-        _branch = Utils.readObject(Utils.join(Paths.BRANCHES,
-                _head.getName()), Branch.class);
-        _fileContents = null;
-        _addStageMap = Utils.readObject(Paths.STAGEDFORADD, HashMap.class);
-        _removeStageSet = Utils.readObject(
-                Paths.STAGEDFORREMOVE, HashSet.class);
     }
 
     /**
@@ -84,6 +73,9 @@ public class Data {
      * @return head
      */
     public Head getHead() {
+        if (_head == null) {
+            _head = Head.decode(RepoCache.read(Paths.HEAD));
+        }
         return _head;
     }
 
@@ -92,6 +84,9 @@ public class Data {
      * @return head commit
      */
     public Commit getHeadCommit() {
+        if (_headCommit == null) {
+            _headCommit = Commit.read(getHead().setCommitSha1());
+        }
         return _headCommit;
     }
 
@@ -100,22 +95,43 @@ public class Data {
      * @return branch
      */
     public Branch getBranch() {
+        if (_branch == null) {
+            _branch = Branch.decode(RepoCache.read(
+                    Branch.file(getHead().getName())));
+        }
         return _branch;
     }
 
     /**
-     * file content Getter.
-     * @return fileContents
+     * stat cache getter.
+     * @return the working tree's stat cache
      */
-    public String getFileContents() {
-        return _fileContents;
+    public StatCache getStatCache() {
+        if (_statCache == null) {
+            _statCache = new StatCache(Paths.INDEX);
+        }
+        return _statCache;
+    }
+
+    /**
+     * Return the blob id of the working file FILENAME, rehashing it only
+     * if its stat data changed.
+     * @param filename working file
+     * @return blob id
+     */
+    public ObjectId workingBlobId(String filename) {
+        return getStatCache().blobId(new File(filename), filename);
     }
 
     /**
      * Hashmap for data.
      * @return addStageMap
      */
-    public HashMap<String, String> getAddStageMap() {
+    public HashMap<String, ObjectId> getAddStageMap() {
+        if (_addStageMap == null) {
+            _addStageMap = Stages.decodeAddStage(
+                    RepoCache.read(Paths.STAGEDFORADD));
+        }
         return _addStageMap;
     }
 
@@ -124,17 +140,21 @@ public class Data {
      * @return stage set
      */
     public HashSet<String> getRemoveStageSet() {
+        if (_removeStageSet == null) {
+            _removeStageSet = Stages.decodeRemoveStage(
+                    RepoCache.read(Paths.STAGEDFORREMOVE));
+        }
         return _removeStageSet;
     }
 
     /**
      * add stage.
      * @param key key string
-     * @param value value string
+     * @param value blob id
      */
-    public void putAddStageMap(String key, String value) {
-        this._addStageMap.put(key, value);
-        Utils.writeObject(Paths.STAGEDFORADD, _addStageMap);
+    public void putAddStageMap(String key, ObjectId value) {
+        getAddStageMap().put(key, value);
+        _addStageDirty = true;
     }
 
     /**
@@ -142,8 +162,9 @@ public class Data {
      * @param key key to remove
      */
     public void removeAddStageMap(String key) {
-        this._addStageMap.remove(key);
-        Utils.writeObject(Paths.STAGEDFORADD, _addStageMap);
+        if (getAddStageMap().remove(key) != null) {
+            _addStageDirty = true;
+        }
     }
 
     /**
@@ -151,18 +172,23 @@ public class Data {
      * @param key string
      */
     public void addRemoveStageSet(String key) {
-        this._removeStageSet.add(key);
-        Utils.writeObject(Paths.STAGEDFORREMOVE, _removeStageSet);
+        if (getRemoveStageSet().add(key)) {
+            _removeStageDirty = true;
+        }
     }
 
     /**
      * clear stages.
      */
     public void clearStages() {
-        this.getAddStageMap().clear();
-        this.getRemoveStageSet().clear();
-        Utils.writeObject(Paths.STAGEDFORADD, _addStageMap);
-        Utils.writeObject(Paths.STAGEDFORREMOVE, _removeStageSet);
+        if (!getAddStageMap().isEmpty()) {
+            _addStageMap.clear();
+            _addStageDirty = true;
+        }
+        if (!getRemoveStageSet().isEmpty()) {
+            _removeStageSet.clear();
+            _removeStageDirty = true;
+        }
     }
 
     /**
@@ -170,8 +196,9 @@ public class Data {
      * @param key string
      */
     public void removeRemoveStageSet(String key) {
-        this._removeStageSet.remove(key);
-        Utils.writeObject(Paths.STAGEDFORREMOVE, _removeStageSet);
+        if (getRemoveStageSet().remove(key)) {
+            _removeStageDirty = true;
+        }
     }
 
     /**
@@ -179,7 +206,92 @@ public class Data {
      * @param sha1 setter
      */
     public void setBranchSha1(String sha1) {
-        this._branch.setSha1(sha1);
+        getBranch().setSha1(sha1);
+        _branchDirty = true;
+    }
+
+    /**
+     * Point branch BRANCHNAME, which need not exist, at commit SHA1.  If
+     * it is the current branch, HEAD moves with it.
+     * @param branchName branch name
+     * @param sha1 commit id
+     */
+    public void setBranchSha1(String branchName, String sha1) {
+        if (branchName.equals(getHead().getName())) {
+            setBranchSha1(sha1);
+            setHeadCommit(sha1);
+        } else {
+            _journal.write(Branch.file(branchName),
+                    Branch.encode(branchName, sha1));
+        }
+    }
+
+    /**
+     * Delete branch BRANCHNAME, which is not the current branch.
+     * @param branchName branch name
+     */
+    public void removeBranch(String branchName) {
+        _journal.delete(Branch.file(branchName));
+    }
+
+    /**
+     * Point HEAD at commit SHA1.
+     * @param sha1 commit id
+     */
+    public void setHeadCommit(String sha1) {
+        getHead().setCommitSha1(sha1);
+        _headCommit = null;
+        _headDirty = true;
+    }
+
+    /**
+     * Make BRANCHNAME the current branch.  Its commit is set separately
+     * with setHeadCommit.
+     * @param branchName branch name
+     */
+    public void setHeadBranch(String branchName) {
+        flushBranch();
+        getHead().setName(branchName);
+        _branch = null;
+        _headDirty = true;
+    }
+
+    /**
+     * Write every changed part of the repository state as one
+     * transaction, so that a crash leaves HEAD, the branches and the
+     * stages either all as they were or all updated.
+     */
+    public void flush() {
+        flushBranch();
+        if (_headDirty) {
+            _journal.write(Paths.HEAD, _head.encode());
+            _headDirty = false;
+        }
+        if (_addStageDirty) {
+            _journal.write(Paths.STAGEDFORADD,
+                    Stages.encodeAddStage(_addStageMap));
+            _addStageDirty = false;
+        }
+        if (_removeStageDirty) {
+            _journal.write(Paths.STAGEDFORREMOVE,
+                    Stages.encodeRemoveStage(_removeStageSet));
+            _removeStageDirty = false;
+        }
+        _journal.commit();
+        if (_statCache != null) {
+            _statCache.save();
+        }
+    }
+
+    /**
+     * Add the current branch to the transaction if it changed.
+     */
+    private void flushBranch() {
+        if (_branchDirty) {
+            _journal.write(Branch.file(_branch.getName()),
+                    _branch.encode());
+            _branchDirty = false;
+        }
     }
 
     /**
@@ -188,17 +300,19 @@ public class Data {
      * @return the object
      */
     public Commit getCommit(String commitId) {
-        List<String> filenames = Utils.plainFilenamesIn(Paths.COMMITS);
-        assert filenames != null;
-        int len = commitId.length();
-        for (String filename : filenames) {
-            if (filename.substring(0, len).equals(commitId)) {
-                return Utils.readObject(
-                        Utils.join(Paths.COMMITS, filename), Commit.class);
-            }
+        String id;
+        try {
+            id = CommitIndex.INDEX.resolve(commitId);
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            Main.exit(0);
+            return null;
+        }
+        if (id != null) {
+            return Commit.read(id);
         }
         System.out.println("No commit with that id exists.");
-        System.exit(0);
+        Main.exit(0);
         return null;
     }
 
@@ -208,16 +322,11 @@ public class Data {
      * @return null or object
      */
     public Branch getBranch(String branchName) {
-        List<String> branchNames = Utils.plainFilenamesIn(Paths.BRANCHES);
-        assert branchNames != null;
-        for (String name : branchNames) {
-            if (name.equals(branchName)) {
-                return Utils.readObject(Utils.join(
-                        Paths.BRANCHES, branchName), Branch.class);
-            }
+        if (Branch.names().contains(branchName)) {
+            return Branch.decode(RepoCache.read(Branch.file(branchName)));
         }
         System.out.println("A branch with that name does not exist.");
-        System.exit(0);
+        Main.exit(0);
         return null;
     }
 
@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/**
+ * Delta encoding of one blob against another, in the style of xdelta and
+ * git's pack deltas.  The base is cut into BLOCK-byte blocks indexed by a
+ * Rabin-Karp hash; the target is scanned with a rolling hash of the same
+ * width, and every verified match is extended in both directions and
+ * emitted as a copy from the base.  Bytes between matches are emitted as
+ * inserts.
+ *
+ * A delta is a Codec record of type DELTA: the base blob id, the target
+ * length, then instructions.  Each instruction starts with a varint
+ * N << 1 | OP: OP 0 inserts the N bytes that follow; OP 1 copies N bytes
+ * from the base, at the offset given by a second varint.
+ * @author Joshua Park
+ */
+class Delta {
+
+    /** Width of the hashed blocks; shorter matches are not found. */
+    static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 0x01000193;
+
+    /** PRIME to the power BLOCK - 1, to remove the oldest byte. */
+    private static final int OUT_FACTOR;
+
+    static {
+        int f = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            f *= PRIME;
+        }
+        OUT_FACTOR = f;
+    }
+
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction copying bytes from the base. */
+    private static final int COPY = 1;
+
+    /**
+     * Return a delta that rebuilds TARGET from BASE, the contents of blob
+     * BASEID.
+     * @param baseId hex id of the base blob
+     * @param base base contents
+     * @param target target contents
+     * @return encoded delta
+     */
+    static byte[] encode(String baseId, byte[] base, byte[] target) {
+        Codec.Writer out = new Codec.Writer(Codec.DELTA);
+        out.id(baseId).varint(target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int pending = 0;
+        int p = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (p + BLOCK <= target.length) {
+            int o = table[h & mask] - 1;
+            if (o >= 0 && Arrays.equals(base, o, o + BLOCK,
+                    target, p, p + BLOCK)) {
+                int len = BLOCK;
+                while (o + len < base.length && p + len < target.length
+                        && base[o + len] == target[p + len]) {
+                    len += 1;
+                }
+                while (o > 0 && p > pending
+                        && base[o - 1] == target[p - 1]) {
+                    o -= 1;
+                    p -= 1;
+                    len += 1;
+                }
+                insert(out, target, pending, p);
+                out.varint((long) len << 1 | COPY).varint(o);
+                p += len;
+                pending = p;
+                if (p + BLOCK <= target.length) {
+                    h = hash(target, p);
+                }
+            } else {
+                if (p + BLOCK < target.length) {
+                    h = (h - target[p] * OUT_FACTOR) * PRIME
+                            + target[p + BLOCK];
+                }
+                p += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the id of the base of DELTA.
+     * @param delta encoded delta
+     * @return hex id
+     */
+    static String baseId(byte[] delta) {
+        return new Codec.Reader(delta, Codec.DELTA).id();
+    }
+
+    /**
+     * Return the contents rebuilt by applying DELTA to BASE.  Throws
+     * IllegalArgumentException if DELTA is malformed.
+     * @param base base contents
+     * @param delta encoded delta
+     * @return target contents
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        Codec.Reader in = new Codec.Reader(delta, Codec.DELTA);
+        in.id();
+        long size = in.varint();
+        if (size > Integer.MAX_VALUE - BLOCK) {
+            throw new IllegalArgumentException("bad delta size " + size);
+        }
+        byte[] result = new byte[(int) size];
+        int pos = 0;
+        while (!in.atEnd()) {
+            long op = in.varint();
+            long len = op >>> 1;
+            if (len > result.length - pos) {
+                throw new IllegalArgumentException("delta overruns target");
+            }
+            if ((op & 1) == INSERT) {
+                in.bytes(result, pos, (int) len);
+            } else {
+                long offset = in.varint();
+                if (offset > base.length - len) {
+                    throw new IllegalArgumentException(
+                            "delta overruns base");
+                }
+                System.arraycopy(base, (int) offset, result, pos, (int) len);
+            }
+            pos += (int) len;
+        }
+        if (pos != result.length) {
+            throw new IllegalArgumentException("truncated delta");
+        }
+        return result;
+    }
+
+    /**
+     * Write an instruction inserting TARGET[FROM .. TO) to OUT, if that
+     * range is not empty.
+     * @param out delta being written
+     * @param target target contents
+     * @param from start of the range
+     * @param to end of the range
+     */
+    private static void insert(Codec.Writer out, byte[] target, int from,
+                               int to) {
+        if (from < to) {
+            out.varint((long) (to - from) << 1 | INSERT);
+            out.bytes(target, from, to - from);
+        }
+    }
+
+    /**
+     * Return a table mapping the hash of each whole BLOCK of BASE, masked
+     * to the table size, to one more than the block's offset.  Where
+     * hashes collide the later block wins.
+     * @param base base contents
+     * @return hash table whose length is a power of two
+     */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(1, 2 * blocks - 1)) << 1;
+        int[] table = new int[size];
+        for (int o = 0; o + BLOCK <= base.length; o += BLOCK) {
+            table[hash(base, o) & (size - 1)] = o + 1;
+        }
+        return table;
+    }
+
+    /**
+     * Return the rolling hash of BYTES[FROM .. FROM + BLOCK).
+     * @param bytes data
+     * @param from start of the window
+     * @return hash
+     */
+    private static int hash(byte[] bytes, int from) {
+        int h = 0;
+        for (int i = from; i < from + BLOCK; i += 1) {
+            h = h * PRIME + bytes[i];
+        }
+        return h;
+    }
+}
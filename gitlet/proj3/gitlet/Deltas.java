@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The choice of delta bases made when the blob store is repacked.  The
+ * versions of each tracked file are ordered by the time of the first
+ * commit holding them, found by walking the commits' trees oldest first
+ * and visiting each tree once.  As in git, the newest version is stored
+ * whole and each older one as a delta against the next newer, so that
+ * checking out recent versions stays cheap.  A chain is cut, and the
+ * version stored whole, when it would grow past MAX_DEPTH.
+ * @author Joshua Park
+ */
+class Deltas {
+
+    /** Longest chain of deltas between a blob and a whole blob. */
+    static final int MAX_DEPTH = 10;
+
+    /** Largest blob stored as or used as the base of a delta. */
+    static final long MAX_SIZE = 8 << 20;
+
+    /** The blob store being repacked. */
+    private final ObjectStore _store;
+
+    /** Planned delta base of each blob that should become a delta. */
+    private final HashMap<String, String> _bases = new HashMap<>();
+
+    /**
+     * The plan for the blobs in STORE referenced by the commits in
+     * INDEX.
+     * @param store blob store
+     * @param index commit index
+     */
+    Deltas(ObjectStore store, CommitIndex index) {
+        _store = store;
+        List<Commit> commits = new ArrayList<>();
+        for (int k = 0; k < index.size(); k += 1) {
+            commits.add(Commit.read(index.idAt(k)));
+        }
+        commits.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+        HashMap<String, Long> born = new HashMap<>();
+        HashMap<String, List<String>> versions = new HashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        for (Commit commit : commits) {
+            Tree.walk(commit.getTree(), "", seen, (filename, blob) -> {
+                String id = blob.toString();
+                if (!born.containsKey(id)) {
+                    born.put(id, commit.getTime());
+                    versions.computeIfAbsent(filename,
+                            f -> new ArrayList<>()).add(id);
+                }
+            });
+        }
+        for (List<String> ids : versions.values()) {
+            ids.sort((a, b) -> {
+                int c = Long.compare(born.get(b), born.get(a));
+                return c != 0 ? c : a.compareTo(b);
+            });
+            int depth = 0;
+            for (int i = 1; i < ids.size(); i += 1) {
+                if (depth < MAX_DEPTH) {
+                    _bases.put(ids.get(i), ids.get(i - 1));
+                    depth += 1;
+                } else {
+                    depth = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the new stored form of blob ID, or null to keep its current
+     * one.  A planned delta is used only if it is less than half the size
+     * of the blob; a blob that is stored as a delta but should not be is
+     * rewritten whole.
+     * @param id hex blob id
+     * @return stored bytes or null
+     */
+    byte[] rewrite(String id) {
+        boolean isDelta = Blob.format(_store, id) == Blob.DELTA;
+        String base = _bases.get(id);
+        if (base != null && _store.contains(base)
+                && Blob.size(_store, id) <= MAX_SIZE
+                && Blob.size(_store, base) <= MAX_SIZE) {
+            byte[] target = Blob.contents(_store, id);
+            byte[] delta = Delta.encode(base, Blob.contents(_store, base),
+                    target);
+            long stored = _store.locate(id).getLength();
+            if (2L * delta.length < target.length
+                    && (isDelta || delta.length + 1 < stored)) {
+                return tagged(Blob.DELTA, delta);
+            }
+        }
+        if (isDelta) {
+            return tagged(Blob.RAW, Blob.contents(_store, id));
+        }
+        return null;
+    }
+
+    /**
+     * Return BYTES preceded by the format byte FORMAT.
+     * @param format format byte
+     * @param bytes body
+     * @return stored bytes
+     */
+    private static byte[] tagged(byte format, byte[] bytes) {
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = format;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+}
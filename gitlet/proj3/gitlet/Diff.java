@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Myers' O(ND) difference algorithm, in its linear-space form, over
+ * arrays of line ids.  Equal lines must have equal ids, so comparing two
+ * lines is one int comparison.  Common prefixes and suffixes are trimmed
+ * before each search, which makes the usual case of a few edits in a
+ * long file close to linear.
+ * @author Joshua Park
+ */
+class Diff {
+
+    /** Lines of the old version. */
+    private final int[] _a;
+    /** Lines of the new version. */
+    private final int[] _b;
+    /** True for each line of _a that is not in the common subsequence. */
+    private final boolean[] _changedA;
+    /** True for each line of _b that is not in the common subsequence. */
+    private final boolean[] _changedB;
+    /** Furthest reaching forward paths, by diagonal. */
+    private final int[] _forward;
+    /** Furthest reaching reverse paths, by diagonal. */
+    private final int[] _reverse;
+    /** Index of diagonal 0 in _forward and _reverse. */
+    private final int _origin;
+
+    /**
+     * A difference of A and B.
+     * @param a old line ids
+     * @param b new line ids
+     */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _changedA = new boolean[a.length];
+        _changedB = new boolean[b.length];
+        _origin = a.length + b.length + 2;
+        _forward = new int[2 * _origin + 2];
+        _reverse = new int[2 * _origin + 2];
+    }
+
+    /**
+     * Return the hunks of a shortest edit script from A to B, in order.
+     * @param a old line ids
+     * @param b new line ids
+     * @return hunks
+     */
+    static List<Hunk> diff(int[] a, int[] b) {
+        Diff d = new Diff(a, b);
+        d.compare(0, a.length, 0, b.length);
+        List<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length
+                    && !d._changedA[i] && !d._changedB[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < a.length && d._changedA[i]) {
+                i += 1;
+            }
+            while (j < b.length && d._changedB[j]) {
+                j += 1;
+            }
+            result.add(new Hunk(i0, i, j0, j));
+        }
+        return result;
+    }
+
+    /**
+     * Mark the changed lines of _a[ALO .. AHI) and _b[BLO .. BHI).
+     * @param aLo start in _a
+     * @param aHi end in _a
+     * @param bLo start in _b
+     * @param bHi end in _b
+     */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                _changedB[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                _changedA[i] = true;
+            }
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /**
+     * Return the middle snake of a shortest edit script from
+     * _a[ALO .. AHI) to _b[BLO .. BHI), as {x0, y0, x1, y1}: a run of
+     * equal lines from (x0, y0) to (x1, y1) that splits the script into
+     * two halves of about the same number of edits.  Both ranges must be
+     * non-empty with different first and last lines.
+     * @param aLo start in _a
+     * @param aHi end in _a
+     * @param bLo start in _b
+     * @param bHi end in _b
+     * @return snake bounds
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] vf = _forward, vr = _reverse;
+        int o = _origin;
+        vf[o + 1] = 0;
+        vr[o + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && vf[o + k - 1] < vf[o + k + 1]))
+                        ? vf[o + k + 1] : vf[o + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[o + k] = x;
+                int c = delta - k;
+                if (odd && c >= 1 - d && c <= d - 1
+                        && x + vr[o + c] >= n) {
+                    return new int[] { aLo + x0, bLo + y0, aLo + x, bLo + y };
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x = (c == -d || (c != d && vr[o + c - 1] < vr[o + c + 1]))
+                        ? vr[o + c + 1] : vr[o + c - 1] + 1;
+                int y = x - c;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                        && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vr[o + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d && vf[o + k] + x >= n) {
+                    return new int[] { aHi - x, bHi - y, aHi - x0, bHi - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /**
+     * A difference: lines [aStart, aEnd) of the old version were replaced
+     * by lines [bStart, bEnd) of the new one.  Either range may be empty.
+     */
+    static class Hunk {
+        /** Start in the old version. */
+        private final int _aStart;
+        /** End in the old version. */
+        private final int _aEnd;
+        /** Start in the new version. */
+        private final int _bStart;
+        /** End in the new version. */
+        private final int _bEnd;
+
+        /**
+         * A hunk replacing old lines [ASTART, AEND) by new lines
+         * [BSTART, BEND).
+         * @param aStart start in the old version
+         * @param aEnd end in the old version
+         * @param bStart start in the new version
+         * @param bEnd end in the new version
+         */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+
+        /**
+         * old start getter.
+         * @return start in the old version
+         */
+        int getAStart() {
+            return _aStart;
+        }
+
+        /**
+         * old end getter.
+         * @return end in the old version
+         */
+        int getAEnd() {
+            return _aEnd;
+        }
+
+        /**
+         * new start getter.
+         * @return start in the new version
+         */
+        int getBStart() {
+            return _bStart;
+        }
+
+        /**
+         * new end getter.
+         * @return end in the new version
+         */
+        int getBEnd() {
+            return _bEnd;
+        }
+    }
+}
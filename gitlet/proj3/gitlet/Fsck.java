@@ -0,0 +1,439 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The fsck command: a check of every object in the repository.  Commits
+ * and trees are read and rehashed first.  Then every parent, tree, file
+ * and subtree reference is resolved, and each blob is assigned the path
+ * it is tracked under.  A blob's id covers that path, so its contents
+ * are rehashed only after this pass.  Each pass splits the sorted ids of
+ * one store into shards, which a fork/join pool hashes in parallel.
+ * Finally, commits, trees and blobs that no branch, HEAD or staged file
+ * reaches are reported as dangling.
+ *
+ * A commit that lists its files directly cannot be rehashed (see
+ * Commit.computeSha1); only its recorded id is checked against its
+ * name.  A blob that no commit names is read in full but not rehashed.
+ * @author Joshua Park
+ */
+class Fsck {
+
+    /** Most objects checked by one task without splitting. */
+    static final int SHARD = 64;
+
+    /** Bytes per megabyte, for the throughput report. */
+    private static final double MB = 1 << 20;
+
+    /** Problems found, one line each. */
+    private final ConcurrentLinkedQueue<String> _problems =
+            new ConcurrentLinkedQueue<>();
+
+    /** Commits that decoded and hashed correctly, by id. */
+    private final ConcurrentHashMap<String, Commit> _commits =
+            new ConcurrentHashMap<>();
+
+    /** Entries of each tree that decoded and hashed correctly: names to
+     *  blob ids, names with a trailing '/' to tree ids, and the ids of
+     *  parts, after a '/', to themselves. */
+    private final ConcurrentHashMap<String, Map<String, String>> _trees =
+            new ConcurrentHashMap<>();
+
+    /** Path each referenced blob is tracked under. */
+    private final HashMap<String, String> _blobPaths = new HashMap<>();
+
+    /** Number of objects checked. */
+    private final AtomicLong _objects = new AtomicLong();
+
+    /** Number of bytes hashed. */
+    private final AtomicLong _bytes = new AtomicLong();
+
+    /** Ids of all stored commits, trees and blobs. */
+    private HashSet<String> _commitIds, _treeIds, _blobIds;
+
+    /**
+     * Check the repository and report what is wrong, ending with the
+     * number of problems found if any object is missing or corrupt.
+     */
+    static void run() {
+        long start = System.nanoTime();
+        Fsck fsck = new Fsck();
+        int problems = fsck.check();
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        long objects = fsck._objects.get();
+        double mb = fsck._bytes.get() / MB;
+        System.out.printf("Checked %d commits, %d trees and %d blobs "
+                + "(%.1f MB) in %.2f s: %.0f objects/s, %.1f MB/s.%n",
+                fsck._commitIds.size(), fsck._treeIds.size(),
+                fsck._blobIds.size(), mb, seconds, objects / seconds,
+                mb / seconds);
+        if (problems > 0) {
+            System.out.println(problems
+                    + (problems == 1 ? " problem" : " problems") + " found.");
+        }
+    }
+
+    /**
+     * Check every object, print the problems found and the dangling
+     * objects, and return the number of problems.
+     * @return number of missing or corrupt objects
+     */
+    private int check() {
+        List<String> commits = ObjectStore.COMMITS.ids();
+        List<String> trees = ObjectStore.TREES.ids();
+        List<String> blobs = ObjectStore.BLOBS.ids();
+        _commitIds = new HashSet<>(commits);
+        _treeIds = new HashSet<>(trees);
+        _blobIds = new HashSet<>(blobs);
+        ForkJoinPool pool = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new Shard(commits, 0, commits.size(),
+                    this::checkCommit));
+            pool.invoke(new Shard(trees, 0, trees.size(), this::checkTree));
+            checkReferences();
+            pool.invoke(new Shard(blobs, 0, blobs.size(), this::checkBlob));
+        } finally {
+            pool.shutdown();
+        }
+        List<String> dangling = dangling();
+        List<String> problems = new ArrayList<>(_problems);
+        Collections.sort(problems);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        for (String line : dangling) {
+            System.out.println(line);
+        }
+        return problems.size();
+    }
+
+    /**
+     * Read commit ID, check its id and record it.
+     * @param id hex commit id
+     */
+    private void checkCommit(String id) {
+        try {
+            byte[] bytes = ObjectStore.COMMITS.read(id);
+            count(bytes.length);
+            Commit commit = Commit.decode(bytes);
+            String computed = commit.computeSha1();
+            if (!id.equals(commit.getSha1())
+                    || computed != null && !id.equals(computed)) {
+                _problems.add("hash mismatch in commit " + id);
+                return;
+            }
+            _commits.put(id, commit);
+        } catch (RuntimeException excp) {
+            _problems.add("corrupt commit " + id + ": " + excp.getMessage());
+        }
+    }
+
+    /**
+     * Read tree ID, check its id and record its entries.
+     * @param id hex tree id
+     */
+    private void checkTree(String id) {
+        try {
+            byte[] bytes = ObjectStore.TREES.read(id);
+            count(bytes.length);
+            if (!id.equals(Utils.sha1(bytes))) {
+                _problems.add("hash mismatch in tree " + id);
+                return;
+            }
+            HashMap<String, String> entries = new HashMap<>();
+            Tree.list(id, (name, blob) -> entries.put(name, blob.toString()),
+                    (name, tree) -> entries.put(name + "/", tree),
+                    part -> entries.put("/" + part, part));
+            _trees.put(id, entries);
+        } catch (RuntimeException excp) {
+            _problems.add("corrupt tree " + id + ": " + excp.getMessage());
+        }
+    }
+
+    /**
+     * Report every parent, tree, subtree and file that a commit or tree
+     * names but that is not stored, and record the path of every blob
+     * that is named.
+     */
+    private void checkReferences() {
+        for (Commit commit : _commits.values()) {
+            String id = commit.getSha1();
+            for (String parent : new String[] {
+                commit.getParent1(), commit.getParent2() }) {
+                if (parent != null && !_commitIds.contains(parent)) {
+                    _problems.add("missing commit " + parent
+                            + " (parent of commit " + id + ")");
+                }
+            }
+            String tree = commit.getStoredTree();
+            if (tree == null) {
+                for (Map.Entry<String, ObjectId> e
+                         : commit.getState().entrySet()) {
+                    referBlob(e.getValue().toString(), e.getKey(),
+                            "commit " + id);
+                }
+            } else if (!tree.equals(Tree.EMPTY)
+                       && !_treeIds.contains(tree)) {
+                _problems.add("missing tree " + tree + " (in commit "
+                        + id + ")");
+            }
+        }
+        HashSet<String> seen = new HashSet<>();
+        for (Commit commit : _commits.values()) {
+            String tree = commit.getStoredTree();
+            if (tree != null) {
+                referTree(tree, "", seen);
+            }
+        }
+    }
+
+    /**
+     * Record the paths of the blobs of tree ID and its subtrees, with
+     * PREFIX before them, skipping trees in SEEN.
+     * @param id hex tree id
+     * @param prefix path of the tree's directory, ending in '/', or ""
+     * @param seen ids of trees already visited
+     */
+    private void referTree(String id, String prefix, HashSet<String> seen) {
+        Map<String, String> entries = _trees.get(id);
+        if (entries == null || !seen.add(id)) {
+            return;
+        }
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            String name = e.getKey();
+            if (name.startsWith("/")) {
+                if (_treeIds.contains(e.getValue())) {
+                    referTree(e.getValue(), prefix, seen);
+                } else {
+                    _problems.add("missing tree " + e.getValue() + " (part "
+                            + "of " + prefix + " in tree " + id + ")");
+                }
+            } else if (!name.endsWith("/")) {
+                referBlob(e.getValue(), prefix + name, "tree " + id);
+            } else if (_treeIds.contains(e.getValue())) {
+                referTree(e.getValue(), prefix + name, seen);
+            } else {
+                _problems.add("missing tree " + e.getValue() + " ("
+                        + prefix + name + " in tree " + id + ")");
+            }
+        }
+    }
+
+    /**
+     * Record that blob ID is tracked as PATH by OWNER, reporting it if it
+     * is not stored.
+     * @param id hex blob id
+     * @param path tracked path
+     * @param owner the commit or tree naming the blob
+     */
+    private void referBlob(String id, String path, String owner) {
+        if (!_blobIds.contains(id)) {
+            _problems.add("missing blob " + id + " (" + path + " in "
+                    + owner + ")");
+        } else {
+            _blobPaths.putIfAbsent(id, path);
+        }
+    }
+
+    /**
+     * Read blob ID in full, and rehash it if its path is known.
+     * @param id hex blob id
+     */
+    private void checkBlob(String id) {
+        String path = _blobPaths.get(id);
+        try (InputStream in = new Blob(ObjectId.fromHex(id), path)
+                .open(ObjectStore.BLOBS)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buf = new byte[Blob.BUFFER_SIZE];
+            long total = 0;
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                total += n;
+            }
+            count(total);
+            if (path != null) {
+                md.update(path.getBytes(StandardCharsets.UTF_8));
+                if (!id.equals(Utils.toHex(md.digest()))) {
+                    _problems.add("hash mismatch in blob " + id + " ("
+                            + path + ")");
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            _problems.add("corrupt blob " + id + ": " + excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Return a line for each commit, tree and blob that no branch, HEAD
+     * or staged file reaches, the roots that gc keeps, and a problem
+     * for each branch whose commit is missing.
+     * @return sorted lines
+     */
+    private List<String> dangling() {
+        HashSet<String> commits = new HashSet<>();
+        ArrayList<String> work = new ArrayList<>();
+        for (String name : Branch.names()) {
+            String id;
+            try {
+                id = Branch.decode(Utils.readContents(Branch.file(name)))
+                        .getSha1();
+            } catch (RuntimeException excp) {
+                _problems.add("corrupt branch " + name + ": "
+                        + excp.getMessage());
+                continue;
+            }
+            if (!_commitIds.contains(id)) {
+                _problems.add("missing commit " + id + " (branch " + name
+                        + ")");
+            }
+            work.add(id);
+        }
+        HashSet<String> trees = new HashSet<>();
+        HashSet<String> blobs = new HashSet<>();
+        try {
+            Data data = new Data();
+            work.add(data.getHead().setCommitSha1());
+            for (ObjectId blob : data.getAddStageMap().values()) {
+                blobs.add(blob.toString());
+            }
+        } catch (RuntimeException excp) {
+            _problems.add("corrupt HEAD or stage: " + excp.getMessage());
+        }
+        while (!work.isEmpty()) {
+            Commit commit = _commits.get(work.remove(work.size() - 1));
+            if (commit == null || !commits.add(commit.getSha1())) {
+                continue;
+            }
+            if (commit.getParent1() != null) {
+                work.add(commit.getParent1());
+            }
+            if (commit.getParent2() != null) {
+                work.add(commit.getParent2());
+            }
+            if (commit.getStoredTree() == null) {
+                for (ObjectId blob : commit.getState().values()) {
+                    blobs.add(blob.toString());
+                }
+            } else {
+                reach(commit.getStoredTree(), trees, blobs);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        danglingIn("commit", _commitIds, commits, result);
+        danglingIn("tree", _treeIds, trees, result);
+        danglingIn("blob", _blobIds, blobs, result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Add tree ID, its subtrees and their blobs to TREES and BLOBS.
+     * @param id hex tree id
+     * @param trees reached tree ids
+     * @param blobs reached blob ids
+     */
+    private void reach(String id, HashSet<String> trees,
+                       HashSet<String> blobs) {
+        Map<String, String> entries = _trees.get(id);
+        if (!trees.add(id) || entries == null) {
+            return;
+        }
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            if (e.getKey().endsWith("/") || e.getKey().startsWith("/")) {
+                reach(e.getValue(), trees, blobs);
+            } else {
+                blobs.add(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add to RESULT a line for each id of STORED, objects of kind KIND,
+     * that is not in REACHED.
+     * @param kind "commit", "tree" or "blob"
+     * @param stored ids of stored objects
+     * @param reached ids of reachable objects
+     * @param result lines
+     */
+    private static void danglingIn(String kind, HashSet<String> stored,
+                                   HashSet<String> reached,
+                                   List<String> result) {
+        for (String id : stored) {
+            if (!reached.contains(id)) {
+                result.add("dangling " + kind + " " + id);
+            }
+        }
+    }
+
+    /**
+     * Count one object of N bytes.
+     * @param n bytes hashed
+     */
+    private void count(long n) {
+        _objects.incrementAndGet();
+        _bytes.addAndGet(n);
+    }
+
+    /** A task that checks a range of ids, splitting it in halves until
+     *  each piece is at most SHARD ids. */
+    private static class Shard extends RecursiveAction {
+        /** Serial number. */
+        private static final long serialVersionUID = 1L;
+
+        /** All ids. */
+        private final List<String> _ids;
+        /** First id of the range. */
+        private final int _lo;
+        /** Id after the last of the range. */
+        private final int _hi;
+        /** Check applied to each id. */
+        private final transient Consumer<String> _action;
+
+        /**
+         * A task applying ACTION to IDS[LO .. HI).
+         * @param ids all ids
+         * @param lo first index
+         * @param hi index after the last
+         * @param action check
+         */
+        Shard(List<String> ids, int lo, int hi, Consumer<String> action) {
+            _ids = ids;
+            _lo = lo;
+            _hi = hi;
+            _action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= SHARD) {
+                for (int k = _lo; k < _hi; k += 1) {
+                    _action.accept(_ids.get(k));
+                }
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Shard(_ids, _lo, mid, _action),
+                    new Shard(_ids, mid, _hi, _action));
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The gc command: a mark-and-sweep collection of the objects that no
+ * branch, HEAD or staged file reaches.  Each store's ids are gathered
+ * into a sorted array of raw ids (Ids), and an object is marked by
+ * setting the bit at its position, so the marks of a million objects
+ * take 20 MB for the ids and 125 KB for the bits.  Marking follows
+ * parents, trees, subtrees, files, the bases of delta blobs and the
+ * chunks of chunked blobs.
+ * Sweeping deletes every unmarked loose object.  Packs holding unmarked
+ * objects are rewritten into one pack without them.  If commits were
+ * removed, the commit index, commit graph and commit log are rebuilt.
+ *
+ * Marking stops, and nothing is deleted, if a reachable commit or tree
+ * is missing or unreadable, since objects that only it names would be
+ * swept.
+ * @author Joshua Park
+ */
+class Gc {
+
+    /** Bytes per kilobyte, for the report. */
+    private static final double KB = 1 << 10;
+
+    /** Ids of the stored commits, trees, blobs and chunks. */
+    private final Ids _commits, _trees, _blobs, _chunks;
+
+    /** Positions in _commits of reachable commits. */
+    private final BitSet _liveCommits = new BitSet();
+
+    /** Positions in _trees of reachable trees. */
+    private final BitSet _liveTrees = new BitSet();
+
+    /** Positions in _blobs of reachable blobs. */
+    private final BitSet _liveBlobs = new BitSet();
+
+    /** Positions in _chunks of the chunks of reachable blobs. */
+    private final BitSet _liveChunks = new BitSet();
+
+    /**
+     * A collection over the current contents of the object stores.
+     */
+    private Gc() {
+        _commits = new Ids(ObjectStore.COMMITS);
+        _trees = new Ids(ObjectStore.TREES);
+        _blobs = new Ids(ObjectStore.BLOBS);
+        _chunks = new Ids(ObjectStore.BLOBS.chunks());
+    }
+
+    /**
+     * Remove every unreachable object from the repository whose state
+     * is DATA, and report how many were removed and the space reclaimed.
+     * @param data repository state
+     */
+    static void run(Data data) {
+        long before = diskUsage();
+        Gc gc = new Gc();
+        gc.markRoots(data);
+        int commits = gc.sweep(ObjectStore.COMMITS, gc._commits,
+                gc._liveCommits);
+        int trees = gc.sweep(ObjectStore.TREES, gc._trees, gc._liveTrees);
+        int blobs = gc.sweep(ObjectStore.BLOBS, gc._blobs, gc._liveBlobs);
+        int chunks = gc.sweep(ObjectStore.BLOBS.chunks(), gc._chunks,
+                gc._liveChunks);
+        if (commits > 0) {
+            CommitIndex.INDEX.rebuild();
+            CommitGraph.GRAPH.rebuild();
+            CommitLog.LOG.rebuild();
+        } else {
+            CommitIndex.INDEX.compact();
+        }
+        System.out.printf("Removed %d unreachable objects (%d commits, "
+                + "%d trees, %d blobs, %d chunks) and reclaimed %.1f KB.%n",
+                commits + trees + blobs + chunks, commits, trees, blobs,
+                chunks,
+                Math.max(before - diskUsage(), 0) / KB);
+    }
+
+    /**
+     * Mark everything reachable from the branches, HEAD and the addition
+     * stage of DATA.
+     * @param data repository state
+     */
+    private void markRoots(Data data) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        for (String name : Branch.names()) {
+            work.push(Branch.decode(Utils.readContents(Branch.file(name)))
+                    .getSha1());
+        }
+        work.push(data.getHead().setCommitSha1());
+        for (ObjectId blob : data.getAddStageMap().values()) {
+            markBlob(blob);
+        }
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            int k = _commits.find(id);
+            if (k < 0) {
+                throw Utils.error("gc stopped: missing commit %s; run fsck.",
+                        id);
+            }
+            if (_liveCommits.get(k)) {
+                continue;
+            }
+            _liveCommits.set(k);
+            Commit commit = read(id);
+            if (commit.getParent1() != null) {
+                work.push(commit.getParent1());
+            }
+            if (commit.getParent2() != null) {
+                work.push(commit.getParent2());
+            }
+            if (commit.getStoredTree() != null) {
+                markTree(commit.getStoredTree());
+            } else {
+                for (ObjectId blob : commit.getState().values()) {
+                    markBlob(blob);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark tree ID, its subtrees and their files.
+     * @param id hex tree id
+     */
+    private void markTree(String id) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String tree = work.pop();
+            int k = _trees.find(tree);
+            if (k < 0) {
+                if (tree.equals(Tree.EMPTY)) {
+                    continue;
+                }
+                throw Utils.error("gc stopped: missing tree %s; run fsck.",
+                        tree);
+            }
+            if (_liveTrees.get(k)) {
+                continue;
+            }
+            _liveTrees.set(k);
+            try {
+                Tree.list(tree, (name, blob) -> markBlob(blob),
+                        (name, subtree) -> work.push(subtree), work::push);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("gc stopped: cannot read tree %s (%s); "
+                        + "run fsck.", tree, excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Mark blob ID and, if it is stored as a delta, its chain of bases,
+     * or if it is stored in chunks, its chunks.
+     * @param blob blob id
+     */
+    private void markBlob(ObjectId blob) {
+        String id = blob.toString();
+        while (true) {
+            int k = _blobs.find(id);
+            if (k < 0 || _liveBlobs.get(k)) {
+                return;
+            }
+            _liveBlobs.set(k);
+            byte format = Blob.format(ObjectStore.BLOBS, id);
+            if (format == Blob.CHUNKED) {
+                Chunks chunks = Blob.chunks(ObjectStore.BLOBS, id);
+                for (int c = 0; c < chunks.count(); c += 1) {
+                    int pos = _chunks.find(chunks.idAt(c));
+                    if (pos >= 0) {
+                        _liveChunks.set(pos);
+                    }
+                }
+                return;
+            }
+            if (format != Blob.DELTA) {
+                return;
+            }
+            byte[] stored = ObjectStore.BLOBS.read(id);
+            id = Delta.baseId(Arrays.copyOfRange(stored, 1, stored.length));
+        }
+    }
+
+    /**
+     * Return commit ID, stopping the collection if it cannot be read.
+     * @param id hex commit id
+     * @return the commit
+     */
+    private static Commit read(String id) {
+        try {
+            return Commit.read(id);
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("gc stopped: cannot read commit %s (%s); "
+                    + "run fsck.", id, excp.getMessage());
+        }
+    }
+
+    /**
+     * Delete the objects of STORE, whose ids are IDS, that are not in
+     * LIVE, and return how many there were.
+     * @param store object store
+     * @param ids its ids
+     * @param live positions in IDS of reachable objects
+     * @return number of objects removed
+     */
+    private int sweep(ObjectStore store, Ids ids, BitSet live) {
+        int removed = ids.size() - live.cardinality();
+        if (removed == 0) {
+            return 0;
+        }
+        for (String id : store.looseIds()) {
+            if (!live.get(ids.find(id))) {
+                Utils.join(store.getDir(), id).delete();
+            }
+        }
+        for (Pack pack : store.packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (!live.get(ids.find(pack.idAt(k)))) {
+                    store.repack(null, id -> live.get(ids.find(id)));
+                    return removed;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Return the number of bytes the object stores take on disk.
+     * @return bytes
+     */
+    private static long diskUsage() {
+        return ObjectStore.COMMITS.diskUsage()
+                + ObjectStore.TREES.diskUsage()
+                + ObjectStore.BLOBS.diskUsage()
+                + ObjectStore.BLOBS.chunks().diskUsage();
+    }
+
+    /**
+     * The ids of all the objects of one store, loose or packed, held in
+     * ascending order as raw 20-byte ids in a single array.
+     */
+    private static class Ids {
+        /** Length of a raw id. */
+        private static final int ID_BYTES = Codec.ID_BYTES;
+
+        /** The ids, ID_BYTES each. */
+        private final byte[] _ids;
+
+        /** Number of ids. */
+        private final int _size;
+
+        /**
+         * The ids of the objects in STORE, merged from its sorted list
+         * of loose objects and its sorted packs.
+         * @param store object store
+         */
+        Ids(ObjectStore store) {
+            List<String> loose = store.looseIds();
+            List<Pack> packs = store.packs();
+            int total = loose.size();
+            for (Pack pack : packs) {
+                total += pack.size();
+            }
+            byte[] ids = new byte[total * ID_BYTES];
+            int[] next = new int[packs.size()];
+            int nextLoose = 0, n = 0;
+            while (true) {
+                String min = nextLoose < loose.size()
+                        ? loose.get(nextLoose) : null;
+                for (int p = 0; p < next.length; p += 1) {
+                    if (next[p] < packs.get(p).size()) {
+                        String id = packs.get(p).idAt(next[p]);
+                        if (min == null || id.compareTo(min) < 0) {
+                            min = id;
+                        }
+                    }
+                }
+                if (min == null) {
+                    break;
+                }
+                if (nextLoose < loose.size()
+                        && loose.get(nextLoose).equals(min)) {
+                    nextLoose += 1;
+                }
+                for (int p = 0; p < next.length; p += 1) {
+                    if (next[p] < packs.get(p).size()
+                            && packs.get(p).idAt(next[p]).equals(min)) {
+                        next[p] += 1;
+                    }
+                }
+                System.arraycopy(Utils.fromHex(min), 0, ids, n * ID_BYTES,
+                        ID_BYTES);
+                n += 1;
+            }
+            _ids = ids;
+            _size = n;
+        }
+
+        /**
+         * number of ids.
+         * @return count
+         */
+        int size() {
+            return _size;
+        }
+
+        /**
+         * Return the position of ID, or -1 if it is absent.
+         * @param id hex id
+         * @return position
+         */
+        int find(String id) {
+            if (id.length() != Utils.UID_LENGTH) {
+                return -1;
+            }
+            byte[] key = Utils.fromHex(id);
+            int lo = 0, hi = _size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = Arrays.compareUnsigned(_ids, mid * ID_BYTES,
+                        (mid + 1) * ID_BYTES, key, 0, ID_BYTES);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
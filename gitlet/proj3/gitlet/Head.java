@@ -7,6 +7,9 @@ import java.io.Serializable;
  */
 class Head implements Serializable {
 
+    /** Serial version of the legacy serialized form. */
+    private static final long serialVersionUID = 8804355955436915767L;
+
     /** Branch name. */
     private String _name1;
 
@@ -25,10 +28,44 @@ class Head implements Serializable {
     }
 
     /**
-     * Serialize the head pointer.
+     * A decoded head pointer, not written back.
+     */
+    private Head() {
+    }
+
+    /**
+     * Serialize the head pointer, replacing the HEAD file in a Journal
+     * transaction.
      */
-    private void serialize() {
-        Utils.writeObject(Paths.HEAD, this);
+    void serialize() {
+        Journal journal = new Journal();
+        journal.write(Paths.HEAD, encode());
+        journal.commit();
+    }
+
+    /**
+     * Return the binary encoding of this pointer.
+     * @return encoded bytes
+     */
+    byte[] encode() {
+        return new Codec.Writer(Codec.HEAD).string(_name1).id(commitSha1)
+                .toByteArray();
+    }
+
+    /**
+     * Return the head pointer stored as BYTES, in binary or legacy form.
+     * @param bytes stored bytes
+     * @return head pointer
+     */
+    static Head decode(byte[] bytes) {
+        if (Codec.isLegacy(bytes)) {
+            return Utils.deserialize(bytes, Head.class);
+        }
+        Codec.Reader in = new Codec.Reader(bytes, Codec.HEAD);
+        Head head = new Head();
+        head._name1 = in.string();
+        head.commitSha1 = in.id();
+        return head;
     }
 
     /**
@@ -48,20 +85,18 @@ class Head implements Serializable {
     }
 
     /**
-     * set commit.
+     * set commit.  The change is written by serialize().
      * @param commitSha2 String
      */
     public void setCommitSha1(String commitSha2) {
         this.commitSha1 = commitSha2;
-        this.serialize();
     }
 
     /**
-     * name setter.
+     * name setter.  The change is written by serialize().
      * @param realName sets name
      */
     public void setName(String realName) {
         this._name1 = realName;
-        this.serialize();
     }
 }
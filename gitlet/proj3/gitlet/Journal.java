@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The updates one command makes to HEAD, branch refs and the stages,
+ * applied as one transaction.  Every update of a ref goes through a
+ * journal, including those push makes to a remote repository, which
+ * uses a journal in that repository's .gitlet directory.  The new
+ * contents of every file are first written to .gitlet/journal, which is
+ * synced and then renamed into place; that rename is the commit point.
+ * Copies of the new files are then all written and synced in one pass,
+ * each is renamed over the file it replaces, files the transaction
+ * deletes are removed, the directories holding them are synced once
+ * each, and only then is the journal deleted, so that until every
+ * update is durable the journal holds it.
+ *
+ * recover() runs before every command.  A journal left by a command that
+ * crashed after its commit point is replayed, which is safe to repeat; a
+ * journal that was never renamed into place, or fails its checksum, is
+ * discarded, leaving the files as they were before that command.
+ *
+ * Encoding: a Codec record of type JOURNAL holding the file count, then
+ * for each file its path, as seen from the directory above .gitlet, and
+ * either WRITE and its contents or DELETE, followed by the CRC-32 of the
+ * record as four big-endian bytes.
+ * @author Joshua Park
+ */
+class Journal {
+
+    /** Name of a journal being written, not yet committed. */
+    private static final String PENDING = "journal.tmp";
+
+    /** Name of the directory of the temporary files that replace
+     *  journaled files, kept apart so that their names cannot clash with
+     *  a branch's. */
+    private static final String TMP_DIR = "journal-files";
+
+    /** Journal entry kind: replace the file. */
+    private static final int WRITE = 0;
+
+    /** Journal entry kind: delete the file. */
+    private static final int DELETE = 1;
+
+    /** Length of the checksum after the record. */
+    private static final int CRC_BYTES = 4;
+
+    /** The .gitlet directory of the repository updated. */
+    private final File _dir;
+
+    /** New contents of each updated file, in order of update, or null
+     *  for a file to be deleted. */
+    private final LinkedHashMap<File, byte[]> _writes =
+            new LinkedHashMap<>();
+
+    /**
+     * A transaction on this repository.
+     */
+    Journal() {
+        this(Paths.GITLET);
+    }
+
+    /**
+     * A transaction on the repository whose .gitlet directory is DIR,
+     * which may be another repository's.
+     * @param dir .gitlet directory
+     */
+    Journal(File dir) {
+        _dir = dir;
+    }
+
+    /**
+     * Replace FILE with CONTENTS when this transaction commits.
+     * @param file a file under the .gitlet directory
+     * @param contents new contents
+     */
+    void write(File file, byte[] contents) {
+        _writes.put(file, contents);
+    }
+
+    /**
+     * Delete FILE, and its directory if that is left empty and is not a
+     * directory directly under .gitlet, when this transaction commits.
+     * @param file a file under the .gitlet directory
+     */
+    void delete(File file) {
+        _writes.put(file, null);
+    }
+
+    /**
+     * Apply every update made so far as one transaction, then start a
+     * new one.
+     */
+    void commit() {
+        if (_writes.isEmpty()) {
+            return;
+        }
+        File pending = Utils.join(_dir, PENDING);
+        writeFile(pending, encode(_writes), true);
+        Utils.rename(pending, journal());
+        syncDirectory(_dir);
+        apply(_writes);
+        _writes.clear();
+    }
+
+    /**
+     * Finish or discard the transaction of a command that did not
+     * complete.
+     */
+    static void recover() {
+        new Journal().replay();
+    }
+
+    /**
+     * Finish or discard the transaction left in this repository by a
+     * command that did not complete.
+     */
+    private void replay() {
+        File pending = Utils.join(_dir, PENDING);
+        if (pending.exists()) {
+            pending.delete();
+        }
+        if (!journal().exists()) {
+            return;
+        }
+        LinkedHashMap<File, byte[]> writes;
+        try {
+            writes = decode(Utils.readContents(journal()));
+        } catch (IllegalArgumentException excp) {
+            journal().delete();
+            syncDirectory(_dir);
+            return;
+        }
+        apply(writes);
+    }
+
+    /**
+     * Return the journal file of this repository.
+     * @return journal file
+     */
+    private File journal() {
+        return Utils.join(_dir, Paths.JOURNAL.getName());
+    }
+
+    /**
+     * Replace each file of WRITES with its contents, or delete it if
+     * they are null, sync the directories holding them, and delete the
+     * journal.
+     * @param writes files to new contents
+     */
+    private void apply(Map<File, byte[]> writes) {
+        File tmpDir = Utils.join(_dir, TMP_DIR);
+        tmpDir.mkdir();
+        File[] tmps = new File[writes.size()];
+        int k = 0;
+        for (byte[] contents : writes.values()) {
+            if (contents != null) {
+                tmps[k] = Utils.join(tmpDir, Integer.toString(k));
+                writeFile(tmps[k], contents, false);
+            }
+            k += 1;
+        }
+        for (File tmp : tmps) {
+            if (tmp != null) {
+                syncFile(tmp);
+            }
+        }
+        File top = _dir.getAbsoluteFile();
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        k = 0;
+        for (File file : writes.keySet()) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (tmps[k] != null) {
+                parent.mkdirs();
+                Utils.rename(tmps[k], file);
+                dirs.add(parent);
+            } else {
+                file.delete();
+                if (!parent.getParentFile().equals(top)
+                        && parent.delete()) {
+                    dirs.add(parent.getParentFile());
+                } else if (parent.exists()) {
+                    dirs.add(parent);
+                }
+            }
+            k += 1;
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        journal().delete();
+        syncDirectory(_dir);
+    }
+
+    /**
+     * Return the journal holding WRITES.
+     * @param writes files to new contents
+     * @return encoded journal
+     */
+    private byte[] encode(Map<File, byte[]> writes) {
+        Codec.Writer out = new Codec.Writer(Codec.JOURNAL);
+        out.varint(writes.size());
+        for (Map.Entry<File, byte[]> e : writes.entrySet()) {
+            byte[] contents = e.getValue();
+            String path = Paths.GITLET.getPath() + File.separator
+                    + _dir.toPath().relativize(e.getKey().toPath());
+            out.string(path);
+            if (contents == null) {
+                out.varint(DELETE);
+            } else {
+                out.varint(WRITE).varint(contents.length)
+                        .bytes(contents, 0, contents.length);
+            }
+        }
+        byte[] record = out.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        byte[] result = Arrays.copyOf(record, record.length + CRC_BYTES);
+        ByteBuffer.wrap(result, record.length, CRC_BYTES)
+                .putInt((int) crc.getValue());
+        return result;
+    }
+
+    /**
+     * Return the updates held by the journal BYTES.  Throws
+     * IllegalArgumentException if it is damaged or names a file outside
+     * .gitlet.
+     * @param bytes encoded journal
+     * @return files to new contents
+     */
+    private LinkedHashMap<File, byte[]> decode(byte[] bytes) {
+        if (bytes.length < CRC_BYTES) {
+            throw new IllegalArgumentException("truncated journal");
+        }
+        int n = bytes.length - CRC_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, n);
+        if (ByteBuffer.wrap(bytes, n, CRC_BYTES).getInt()
+                != (int) crc.getValue()) {
+            throw new IllegalArgumentException("bad journal checksum");
+        }
+        Codec.Reader in = new Codec.Reader(Arrays.copyOf(bytes, n),
+                Codec.JOURNAL);
+        LinkedHashMap<File, byte[]> result = new LinkedHashMap<>();
+        for (int k = in.length(); k > 0; k -= 1) {
+            String path = in.string();
+            String prefix = Paths.GITLET.getPath() + File.separator;
+            if (!path.startsWith(prefix) || path.contains("..")) {
+                throw new IllegalArgumentException("bad journal path "
+                        + path);
+            }
+            byte[] contents;
+            switch (in.length()) {
+            case WRITE:
+                contents = new byte[in.length()];
+                in.bytes(contents, 0, contents.length);
+                break;
+            case DELETE:
+                contents = null;
+                break;
+            default:
+                throw new IllegalArgumentException("bad journal entry");
+            }
+            result.put(Utils.join(_dir, path.substring(prefix.length())),
+                    contents);
+        }
+        return result;
+    }
+
+    /**
+     * Write CONTENTS to FILE, and sync it if SYNC, unless core.fsync is
+     * 0.  Throws IllegalArgumentException in case of problems.
+     * @param file destination
+     * @param contents bytes
+     * @param sync true to sync FILE
+     */
+    static void writeFile(File file, byte[] contents, boolean sync) {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            if (sync && syncing()) {
+                out.force(true);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Sync the contents of FILE, unless core.fsync is 0.  Throws
+     * IllegalArgumentException in case of problems.
+     * @param file file
+     */
+    static void syncFile(File file) {
+        if (!syncing()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Sync the entries of directory DIR, so that renames and deletions
+     * in it are durable, unless core.fsync is 0.  Where a directory
+     * cannot be opened for syncing, this does nothing.
+     * @param dir directory
+     */
+    static void syncDirectory(File dir) {
+        if (!syncing()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Return whether writes are synced to disk.
+     * @return false if core.fsync is 0
+     */
+    static boolean syncing() {
+        return Config.getInt(Config.FSYNC, 1) != 0;
+    }
+}
@@ -0,0 +1,299 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A three-way merge of the lines of one file, in the manner of diff3.
+ * The lines of the three versions are interned to int ids, both sides are
+ * diffed against the base with Diff, and the two lists of hunks are
+ * walked together.  A region changed on one side only takes that side's
+ * lines; a region changed on both sides in the same way takes them once;
+ * any other region is a conflict, written between gitlet's conflict
+ * markers.  Hunks that overlap or touch are one region.
+ * @author Joshua Park
+ */
+class LineMerge {
+
+    /** Marker before the current branch's side of a conflict. */
+    static final byte[] OURS_MARKER =
+            "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Marker between the two sides of a conflict. */
+    static final byte[] SEPARATOR =
+            "=======\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Marker after the given branch's side of a conflict. */
+    static final byte[] THEIRS_MARKER =
+            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Ids of the distinct lines seen so far. */
+    private final HashMap<Line, Integer> _lineIds = new HashMap<>();
+
+    /** The base version. */
+    private final Text _base;
+    /** The current branch's version. */
+    private final Text _ours;
+    /** The given branch's version. */
+    private final Text _theirs;
+
+    /**
+     * A merge of OURS and THEIRS, both derived from BASE.
+     * @param base split point contents
+     * @param ours current contents
+     * @param theirs given contents
+     */
+    private LineMerge(byte[] base, byte[] ours, byte[] theirs) {
+        _base = new Text(base);
+        _ours = new Text(ours);
+        _theirs = new Text(theirs);
+    }
+
+    /**
+     * Write the merge of OURS and THEIRS, both derived from BASE, to OUT.
+     * A missing version is passed as an empty array.
+     * @param base split point contents
+     * @param ours current contents
+     * @param theirs given contents
+     * @param out destination
+     * @return true if the result has conflicts
+     * @throws IOException if OUT fails
+     */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        return new LineMerge(base, ours, theirs).merge(out);
+    }
+
+    /**
+     * Write the merge to OUT.
+     * @param out destination
+     * @return true if there were conflicts
+     * @throws IOException if OUT fails
+     */
+    private boolean merge(OutputStream out) throws IOException {
+        List<Diff.Hunk> ours = Diff.diff(_base._ids, _ours._ids);
+        List<Diff.Hunk> theirs = Diff.diff(_base._ids, _theirs._ids);
+        boolean conflict = false;
+        int i = 0, j = 0, done = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            int lo = Math.min(start(ours, i), start(theirs, j));
+            int hi = lo;
+            int i0 = i, j0 = j;
+            while (true) {
+                if (i < ours.size() && start(ours, i) <= hi) {
+                    hi = Math.max(hi, ours.get(i).getAEnd());
+                    i += 1;
+                } else if (j < theirs.size() && start(theirs, j) <= hi) {
+                    hi = Math.max(hi, theirs.get(j).getAEnd());
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            _base.write(out, done, lo);
+            done = hi;
+            if (j == j0) {
+                side(_ours, ours, i0, i, lo, hi).write(out);
+            } else if (i == i0) {
+                side(_theirs, theirs, j0, j, lo, hi).write(out);
+            } else {
+                Region mine = side(_ours, ours, i0, i, lo, hi);
+                Region yours = side(_theirs, theirs, j0, j, lo, hi);
+                if (mine.sameLines(yours)) {
+                    mine.write(out);
+                } else {
+                    conflict = true;
+                    out.write(OURS_MARKER);
+                    mine.write(out);
+                    out.write(SEPARATOR);
+                    yours.write(out);
+                    out.write(THEIRS_MARKER);
+                }
+            }
+        }
+        _base.write(out, done, _base.size());
+        return conflict;
+    }
+
+    /**
+     * Return the base start of HUNKS[K], or MAX_VALUE past the end.
+     * @param hunks hunks
+     * @param k position
+     * @return base line number
+     */
+    private static int start(List<Diff.Hunk> hunks, int k) {
+        return k < hunks.size() ? hunks.get(k).getAStart()
+                : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Return the lines of SIDE that replace base lines [LO, HI), given
+     * that HUNKS[FROM .. TO) are its changes in that range.
+     * @param side one side of the merge
+     * @param hunks that side's hunks
+     * @param from first hunk in the range
+     * @param to hunk after the last one in the range
+     * @param lo start in the base
+     * @param hi end in the base
+     * @return lines of SIDE
+     */
+    private static Region side(Text side, List<Diff.Hunk> hunks, int from,
+                               int to, int lo, int hi) {
+        Diff.Hunk first = hunks.get(from), last = hunks.get(to - 1);
+        return new Region(side, first.getBStart() - (first.getAStart() - lo),
+                last.getBEnd() + (hi - last.getAEnd()));
+    }
+
+    /** The lines of one version. */
+    private class Text {
+        /** Contents. */
+        private final byte[] _bytes;
+        /** Start of each line, then the length of _bytes. */
+        private final int[] _starts;
+        /** Id of each line. */
+        private final int[] _ids;
+
+        /**
+         * The lines of BYTES.  The last line may lack a newline.
+         * @param bytes contents
+         */
+        Text(byte[] bytes) {
+            _bytes = bytes;
+            int n = 0;
+            for (byte b : bytes) {
+                n += b == '\n' ? 1 : 0;
+            }
+            if (bytes.length > 0 && bytes[bytes.length - 1] != '\n') {
+                n += 1;
+            }
+            _starts = new int[n + 1];
+            _ids = new int[n];
+            int line = 0;
+            for (int p = 0; p < bytes.length; p += 1) {
+                if (bytes[p] == '\n') {
+                    _starts[line + 1] = p + 1;
+                    line += 1;
+                }
+            }
+            _starts[n] = bytes.length;
+            for (int k = 0; k < n; k += 1) {
+                Line key = new Line(bytes, _starts[k], _starts[k + 1]);
+                Integer id = _lineIds.get(key);
+                if (id == null) {
+                    id = _lineIds.size();
+                    _lineIds.put(key, id);
+                }
+                _ids[k] = id;
+            }
+        }
+
+        /**
+         * number of lines.
+         * @return count
+         */
+        int size() {
+            return _ids.length;
+        }
+
+        /**
+         * Write lines [FROM, TO) to OUT.
+         * @param out destination
+         * @param from first line
+         * @param to line after the last
+         * @throws IOException if OUT fails
+         */
+        void write(OutputStream out, int from, int to) throws IOException {
+            out.write(_bytes, _starts[from], _starts[to] - _starts[from]);
+        }
+    }
+
+    /** A range of lines of one version. */
+    private static class Region {
+        /** The version. */
+        private final Text _text;
+        /** First line. */
+        private final int _from;
+        /** Line after the last. */
+        private final int _to;
+
+        /**
+         * Lines [FROM, TO) of TEXT.
+         * @param text version
+         * @param from first line
+         * @param to line after the last
+         */
+        Region(Text text, int from, int to) {
+            _text = text;
+            _from = from;
+            _to = to;
+        }
+
+        /**
+         * Return whether OTHER holds the same lines as this region.
+         * @param other region
+         * @return true if equal
+         */
+        boolean sameLines(Region other) {
+            return Arrays.equals(_text._ids, _from, _to,
+                    other._text._ids, other._from, other._to);
+        }
+
+        /**
+         * Write this region to OUT.
+         * @param out destination
+         * @throws IOException if OUT fails
+         */
+        void write(OutputStream out) throws IOException {
+            _text.write(out, _from, _to);
+        }
+    }
+
+    /** A line of some version, as a key for interning. */
+    private static class Line {
+        /** Contents of the version. */
+        private final byte[] _bytes;
+        /** Start of the line. */
+        private final int _from;
+        /** End of the line, after its newline if any. */
+        private final int _to;
+        /** Hash of the line's bytes. */
+        private final int _hash;
+
+        /**
+         * Line BYTES[FROM .. TO).
+         * @param bytes contents
+         * @param from start
+         * @param to end
+         */
+        Line(byte[] bytes, int from, int to) {
+            _bytes = bytes;
+            _from = from;
+            _to = to;
+            int h = 1;
+            for (int p = from; p < to; p += 1) {
+                h = 31 * h + bytes[p];
+            }
+            _hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                    && Arrays.equals(_bytes, _from, _to,
+                            other._bytes, other._from, other._to);
+        }
+    }
+}
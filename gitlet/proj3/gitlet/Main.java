@@ -1,6 +1,15 @@
 package gitlet;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.Objects;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -8,19 +17,66 @@ import java.util.List;
 import java.util.HashSet;
 import java.util.Collections;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Joshua Park
  */
 public class Main {
 
+    /**
+     * Marks a file whose versions must be merged line by line in the
+     * result of mergeChanges.  The all-zero id is the id of no blob.
+     */
+    private static final ObjectId MERGE_CONTENTS =
+            ObjectId.fromRaw(new byte[ObjectId.BYTES]);
+
+    /** Length of the parent ids on the Merge line of a log entry. */
+    private static final int MERGE_ABBREV = 7;
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  The command is sent to the repository's
+     *  daemon if one is running. */
     public static void main(String... args) {
+        args = Trace.fromEnvironment(args);
+        int status = Daemon.forward(args);
+        if (status >= 0) {
+            System.exit(status);
+        }
+        run(args);
+    }
+
+    /**
+     * Run the command ARGS in this process.
+     * @param args command and operands
+     */
+    static void run(String... args) {
+        args = Trace.start(args);
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            exit(0);
+        }
+        try {
+            runCommand(args);
+            Trace.finish(0);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            exit(0);
         }
-        runCommand(args);
+    }
+
+    /**
+     * Exit with STATUS.  In a daemon, this ends only the current command.
+     * @param status exit status
+     */
+    static void exit(int status) {
+        Trace.finish(status);
+        if (Daemon.isServing()) {
+            throw new Daemon.Exit(status);
+        }
+        System.exit(status);
     }
 
     /**
@@ -32,13 +88,14 @@ public class Main {
             if (Objects.nonNull(Utils.plainFilenamesIn(".gitlet"))) {
                 System.out.println("A Gitlet version-control system "
                         + "already exists in the current directory.");
-                System.exit(0);
+                exit(0);
             }
         } else {
             if (Objects.isNull(Utils.plainFilenamesIn(".gitlet"))) {
                 System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
+                exit(0);
             }
+            Journal.recover();
         }
         switch (args[0]) {
         case "init":
@@ -54,14 +111,17 @@ public class Main {
             doRm(args);
             break;
         case "log":
-            doLog();
+            doLog(args);
             break;
         case "global-log":
-            doGlobalLog();
+            doGlobalLog(args);
             break;
         case "find":
             doFind(args);
             break;
+        case "blame":
+            doBlame(args);
+            break;
         case "status":
             doStatus();
             break;
@@ -80,9 +140,37 @@ public class Main {
         case "merge":
             doMerge(args);
             break;
+        case "add-remote":
+            doAddRemote(args);
+            break;
+        case "rm-remote":
+            doRmRemote(args);
+            break;
+        case "push":
+            doPush(args);
+            break;
+        case "fetch":
+            doFetch(args);
+            break;
+        case "pull":
+            doPull(args);
+            break;
+        case "repack":
+            doRepack(args);
+            break;
+        case "gc":
+            doGc(args);
+            break;
+        case "fsck":
+        case "verify":
+            doFsck(args);
+            break;
+        case "daemon":
+            Daemon.command(args);
+            break;
         default:
             System.out.println("No command with that name exists");
-            System.exit(0);
+            exit(0);
         }
     }
 
@@ -103,7 +191,7 @@ public class Main {
             break;
         default:
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
             break;
         }
     }
@@ -117,57 +205,61 @@ public class Main {
             repo = new Repository();
         } catch (IOException e) {
             System.out.println(e.getMessage());
-            System.exit(1);
+            exit(1);
         }
-        System.exit(0);
+        exit(0);
     }
 
     /**
-     * Adder.
+     * Adder: stage each of the files named in ARGS.  Nothing is staged
+     * if any of them does not exist.
      * @param args string
      */
     private static void doAdd(String... args) {
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
-
-        String filename = args[1];
-        Data data;
-        try {
-            data = new Data(filename);
-        } catch (IllegalArgumentException e) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-            return;
+        String[] names = new String[args.length - 1];
+        for (int i = 1; i < args.length; i += 1) {
+            names[i - 1] = trackedName(args[i]);
+            if (!new File(args[i]).isFile()) {
+                System.out.println("File does not exist.");
+                exit(0);
+            }
+        }
+        Data data = new Data();
+        for (String name : names) {
+            addFile(data, name);
         }
-        HashMap<String, String> state = data.getHeadCommit().getState();
+        data.flush();
+
+        exit(0);
+    }
+
+    /**
+     * Stage FILENAME for addition, storing its blob if needed.
+     * @param data Data
+     * @param filename an existing working file
+     */
+    private static void addFile(Data data, String filename) {
+        ObjectId tracked = data.getHeadCommit().getBlobId(filename);
         File file = new File(filename);
-        Blob newBlob = new Blob(Utils.readContentsAsString(file), filename);
+        Blob newBlob = new Blob(file, filename,
+                data.workingBlobId(filename));
 
-        if (!state.containsKey(filename)) {
-            data.putAddStageMap(filename, newBlob.getSha1());
+        if (tracked == null) {
             newBlob.callerSerialize();
+            data.putAddStageMap(filename, newBlob.getSha1());
         } else {
-            Blob blob = data.getHeadCommit().getBlob(filename);
-            if (newBlob.getSha1().equals(blob.getSha1())) {
-                if (data.getAddStageMap().containsKey(filename)) {
-                    data.removeAddStageMap(filename);
-                }
+            if (newBlob.getSha1().equals(tracked)) {
+                data.removeAddStageMap(filename);
             } else {
-                if (data.getAddStageMap().containsKey(filename)) {
-                    data.removeAddStageMap(filename);
-                }
-                data.putAddStageMap(filename, newBlob.getSha1());
                 newBlob.callerSerialize();
+                data.putAddStageMap(filename, newBlob.getSha1());
             }
-
         }
-        if (data.getRemoveStageSet().contains(filename)) {
-            data.removeRemoveStageSet(filename);
-        }
-
-        System.exit(0);
+        data.removeRemoveStageSet(filename);
     }
 /**
  * commit.
@@ -176,46 +268,37 @@ public class Main {
     private static void doCommit(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (args[1].isBlank()) {
             System.out.println("Please enter a commit message.");
-            System.exit(0);
+            exit(0);
         }
 
         Data data = new Data();
 
-        HashMap<String, String> addStage = data.getAddStageMap();
+        HashMap<String, ObjectId> addStage = data.getAddStageMap();
         HashSet<String> removeStage = data.getRemoveStageSet();
 
         if (addStage.isEmpty() && removeStage.isEmpty()) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
+            exit(0);
         }
 
         Commit prevCommit = data.getHeadCommit();
-        HashMap<String, String> oldState = prevCommit.getState();
-
-        HashMap<String, String> newState = new HashMap<>();
-        for (Map.Entry<String, String> pair : oldState.entrySet()) {
-            newState.put(pair.getKey(), pair.getValue());
-        }
-
-        for (Map.Entry<String, String> pair : addStage.entrySet()) {
-            newState.remove(pair.getKey());
-            newState.put(pair.getKey(), pair.getValue());
-        }
-
+        TreeMap<String, ObjectId> changes = new TreeMap<>(addStage);
         for (String filename: removeStage) {
-            newState.remove(filename);
+            changes.put(filename, null);
         }
+        String tree = Tree.update(prevCommit.getTree(), changes);
 
         data.clearStages();
         Commit commit = new Commit(prevCommit.getSha1(),
-                null, args[1], newState);
+                null, args[1], tree);
         data.setBranchSha1(commit.getSha1());
-        data.getHead().setCommitSha1(commit.getSha1());
+        data.setHeadCommit(commit.getSha1());
+        data.flush();
 
-        System.exit(0);
+        exit(0);
 
     }
 
@@ -224,27 +307,27 @@ public class Main {
      * @param args string
      */
     private static void doCheckoutHead(String... args) {
-        String filename = args[2];
+        String filename = trackedName(args[2]);
         if (!args[1].equals("--")) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (filename.isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
 
-        Data data = new Data(filename);
+        Data data = new Data();
 
-        if (!data.getHeadCommit().getState().containsKey(filename)) {
+        if (data.getHeadCommit().getBlobId(filename) == null) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            exit(0);
         } else {
             Blob newBlob = data.getHeadCommit().getBlob(filename);
-            newBlob.callerSerialize();
-            Utils.writeContents(new File(filename), newBlob.getContents());
+            writeWorkingFile(data, newBlob);
+            data.flush();
         }
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
@@ -252,32 +335,32 @@ public class Main {
      * @param args string
      */
     private static void doCheckoutCommit(String... args) {
-        String filename = args[3];
+        String filename = trackedName(args[3]);
         String commitId = args[1];
         if (!args[2].equals("--")) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (filename.isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (commitId.isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
 
         Data data = new Data();
         Commit commit = data.getCommit(commitId);
 
-        if (!commit.getState().containsKey(filename)) {
+        if (commit.getBlobId(filename) == null) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            exit(0);
         } else {
             Blob newBlob = commit.getBlob(filename);
-            newBlob.callerSerialize();
-            Utils.writeContents(new File(filename), newBlob.getContents());
+            writeWorkingFile(data, newBlob);
+            data.flush();
         }
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
@@ -288,95 +371,237 @@ public class Main {
         String branchName = args[1];
         if (branchName.isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
         Data data = new Data();
         if (data.getBranch().getName().equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            exit(0);
         }
-        if (!Objects.requireNonNull(Utils.plainFilenamesIn(Paths.BRANCHES))
-                .contains(branchName)) {
+        if (!Branch.names().contains(branchName)) {
             System.out.println("No such branch exists.");
-            System.exit(0);
+            exit(0);
         }
 
-        File cwd = new File(".");
-        String cwdString = cwd.getAbsolutePath().substring(0,
-                cwd.getAbsolutePath().length() - 2);
-        List<String> filesInDir = Utils.plainFilenamesIn(cwdString);
+        List<String> filesInDir = Utils.workingFiles();
 
         for (String file : filesInDir) {
             if (!data.getAddStageMap().containsKey(file)
                     && !data.getHeadCommit().getState().containsKey(file)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
-
-        for (String file : filesInDir) {
-            File fileObj = new File(file);
-            if (fileObj.isFile()) {
-                Utils.restrictedDelete(file);
+                exit(0);
             }
         }
 
         Branch branch = data.getBranch(branchName);
         Commit commit = data.getCommit(branch.getSha1());
-        for (String filename : commit.getState().keySet()) {
-            Blob newBlob = commit.getBlob(filename);
-            newBlob.callerSerialize();
-            Utils.writeContents(new File(filename), newBlob.getContents());
-        }
+        checkoutTree(data, data.getHeadCommit(), commit, filesInDir);
 
         data.clearStages();
-        data.getHead().setCommitSha1(commit.getSha1());
-        data.getHead().setName(branchName);
+        data.setHeadCommit(commit.getSha1());
+        data.setHeadBranch(branchName);
+        data.flush();
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
-     * log function.
+     * log function.  With --since or --until, or -- PATH, the
+     * first-parent chain is walked in the commit graph, and only the
+     * commits made in that window, and that the changed-path filters do
+     * not rule out, are read.  With -- PATH, only the commits that
+     * changed the file or directory PATH are listed.
+     * @param args string
      */
-    private static void doLog() {
+    private static void doLog(String... args) {
+        int dashes = Arrays.asList(args).indexOf("--");
+        if (dashes >= 0 && dashes != args.length - 2) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        long[] window = timeWindow(dashes < 0 ? args
+                : Arrays.copyOf(args, dashes));
+        String path = dashes < 0 ? null : trimPath(args[dashes + 1]);
         Data data = new Data();
-        Commit commit = data.getHeadCommit();
-        while (true) {
-            System.out.println("===");
-            System.out.println("commit " + commit.getSha1());
-            System.out.println("Date: " + commit.getTimeStamp());
-            System.out.println(commit.getCommitMessage());
-
-            String parent1 = commit.getParent1();
-            if (parent1 != null) {
-                System.out.println();
-                commit = data.getCommit(commit.getParent1());
-            } else {
-                break;
+        if (window == null && path == null) {
+            Commit commit = data.getHeadCommit();
+            while (true) {
+                printLogEntry(commit);
+                String parent1 = commit.getParent1();
+                if (parent1 != null) {
+                    System.out.println();
+                    commit = data.getCommit(commit.getParent1());
+                } else {
+                    break;
+                }
+            }
+            exit(0);
+        }
+        if (window == null) {
+            window = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        }
+        boolean first = true;
+        for (String id = data.getHeadCommit().getSha1(); id != null;
+             id = CommitGraph.GRAPH.parent1(id)) {
+            long time = CommitGraph.GRAPH.time(id);
+            if (time >= window[0] && time <= window[1]
+                    && (path == null
+                        || ChangedPaths.FILTERS.changed(id, path))) {
+                if (!first) {
+                    System.out.println();
+                }
+                first = false;
+                printLogEntry(Commit.read(id));
             }
         }
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
-     * global log.
+     * Return PATH, given on the command line, with '/' between its
+     * components and no leading "./" or trailing '/'.
+     * @param path file or directory path
+     * @return path as commits track it
      */
-    private static void doGlobalLog() {
-        Data data = new Data();
-        Commit commit;
-        for (String filename : Objects.requireNonNull(
-                Utils.plainFilenamesIn(Paths.COMMITS))) {
-            commit = data.getCommit(filename);
+    private static String trimPath(String path) {
+        path = path.replace(File.separatorChar, '/');
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        while (path.endsWith("/") && path.length() > 1) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * blame: for each line of file ARGS[1] in the head commit, the
+     * commit that last changed it.
+     * @param args string
+     */
+    private static void doBlame(String... args) {
+        if (args.length != 2) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        Blame.run(new Data(), trimPath(args[1]));
+
+        exit(0);
+    }
+
+    /**
+     * Print the log entry of COMMIT.
+     * @param commit commit
+     */
+    private static void printLogEntry(Commit commit) {
+        System.out.println("===");
+        System.out.println("commit " + commit.getSha1());
+        printMergeLine(commit.getParent1(), commit.getParent2());
+        System.out.println("Date: " + commit.getTimeStamp());
+        System.out.println(commit.getCommitMessage());
+    }
+
+    /**
+     * Print the Merge line of a log entry, with the abbreviated ids of
+     * PARENT1 and PARENT2, if PARENT2 is not null.
+     * @param parent1 first parent id
+     * @param parent2 second parent id or null
+     */
+    private static void printMergeLine(String parent1, String parent2) {
+        if (parent2 != null) {
+            System.out.println("Merge: " + parent1.substring(0, MERGE_ABBREV)
+                    + " " + parent2.substring(0, MERGE_ABBREV));
+        }
+    }
+
+    /**
+     * global log.  With --since or --until, only the commits made in
+     * that window are listed, in order of time.
+     * @param args string
+     */
+    private static void doGlobalLog(String... args) {
+        long[] window = timeWindow(args);
+        Consumer<CommitLog.Entry> print = e -> {
             System.out.println("===");
-            System.out.println("commit " + commit.getSha1());
-            System.out.println("Date: " + commit.getTimeStamp());
-            System.out.println(commit.getCommitMessage());
+            System.out.println("commit " + e.getSha1());
+            printMergeLine(e.getParent1(), e.getParent2());
+            System.out.println("Date: "
+                    + Commit.formatTime(e.getTime(), e.getZone()));
+            System.out.println(e.getCommitMessage());
+        };
+        if (window == null) {
+            CommitLog.LOG.forEach(print);
+        } else {
+            CommitLog.LOG.forEach(window[0], window[1], print);
+        }
+
+        exit(0);
+    }
+
+    /**
+     * Return the window of commit times, in milliseconds since the
+     * epoch, given by the --since=DATE and --until=DATE options in
+     * ARGS[1..], or null if there are none.  A DATE is an ISO date, date
+     * and time, or date and time with an offset, in the local time zone
+     * unless an offset is given; an --until date without a time covers
+     * that whole day.
+     * @param args string
+     * @return { since, until }, inclusive, or null
+     */
+    private static long[] timeWindow(String... args) {
+        if (args.length == 1) {
+            return null;
+        }
+        long[] window = { Long.MIN_VALUE, Long.MAX_VALUE };
+        for (int i = 1; i < args.length; i += 1) {
+            String[] option = args[i].split("=", 2);
+            boolean since = option[0].equals("--since");
+            if (option.length != 2 || !since
+                    && !option[0].equals("--until")) {
+                System.out.println("Incorrect operands.");
+                exit(0);
+            }
+            Long time = parseTime(option[1], !since);
+            if (time == null) {
+                System.out.println("Incorrect operands.");
+                exit(0);
+            }
+            window[since ? 0 : 1] = time;
         }
+        return window;
+    }
 
-        System.exit(0);
+    /**
+     * Return the time given by DATE in milliseconds since the epoch, or
+     * null if it is not a date.  If END, a date without a time stands
+     * for the last millisecond of that day; otherwise for its first.
+     * @param date ISO date, date and time, or date and time with offset
+     * @param end whether the time ends a window
+     * @return milliseconds since the epoch, or null
+     */
+    private static Long parseTime(String date, boolean end) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            /* Not a time with an offset. */
+        }
+        try {
+            return LocalDateTime.parse(date).atZone(zone).toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            /* Not a local date and time. */
+        }
+        try {
+            LocalDate day = end ? LocalDate.parse(date).plusDays(1)
+                    : LocalDate.parse(date);
+            return day.atStartOfDay(zone).toInstant().toEpochMilli()
+                    - (end ? 1 : 0);
+        } catch (DateTimeParseException excp) {
+            return null;
+        }
     }
 
     /**
@@ -384,32 +609,33 @@ public class Main {
      * @param args string
      */
     private static void doRm(String... args) {
-        String filename = args[1];
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
-        } else if (filename.isBlank()) {
+            exit(0);
+        } else if (args[1].isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
+        String filename = trackedName(args[1]);
 
         Data data = new Data();
-        if (!data.getHeadCommit().getState().containsKey(filename)
-                && !data.getAddStageMap().containsKey(filename)) {
+        boolean tracked = data.getHeadCommit().getBlobId(filename) != null;
+        if (!tracked && !data.getAddStageMap().containsKey(filename)) {
             System.out.println("No reason to remove the file.");
-            System.exit(0);
+            exit(0);
         }
 
         if (data.getAddStageMap().containsKey(filename)) {
             data.removeAddStageMap(filename);
         }
 
-        if (data.getHeadCommit().getState().containsKey(filename)) {
+        if (tracked) {
             data.addRemoveStageSet(filename);
-            Utils.restrictedDelete(filename);
+            deleteWorkingFile(data, filename);
         }
+        data.flush();
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
@@ -420,29 +646,22 @@ public class Main {
         String commitMessage = args[1];
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (commitMessage.isBlank()) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
 
-        Data data = new Data();
-        Commit commit;
-        boolean found = false;
-        for (String filename : Objects.requireNonNull(
-                Utils.plainFilenamesIn(Paths.COMMITS))) {
-            commit = data.getCommit(filename);
-            if (commit.getCommitMessage().equals(commitMessage)) {
-                found = true;
-                System.out.println(commit.getSha1());
-            }
+        List<String> found = CommitLog.LOG.find(commitMessage);
+        for (String id : found) {
+            System.out.println(id);
         }
-        if (!found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
-            System.exit(0);
+            exit(0);
         }
 
-        System.exit(0);
+        exit(0);
     }
 
     /**
@@ -452,9 +671,7 @@ public class Main {
         Data data = new Data();
         System.out.println("=== Branches ===");
 
-        List<String> allBranches = Utils.plainFilenamesIn(Paths.BRANCHES);
-        assert allBranches != null;
-        Collections.sort(allBranches);
+        List<String> allBranches = Branch.names();
         System.out.println("*" + data.getBranch().getName());
         for (String branchName : allBranches) {
             if (!branchName.equals(data.getBranch().getName())) {
@@ -475,16 +692,169 @@ public class Main {
         System.out.println("=== Removed Files ===");
         filenames = new LinkedList<>(data.getRemoveStageSet());
         Collections.sort(filenames);
-        for (String filename : data.getRemoveStageSet()) {
+        for (String filename : filenames) {
             System.out.println(filename);
         }
 
+        List<String> filesInDir = Utils.workingFiles();
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String line : unstagedModifications(data, filesInDir)) {
+            System.out.println(line);
+        }
+
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String filename : filesInDir) {
+            if (!data.getAddStageMap().containsKey(filename)
+                    && (!data.getHeadCommit().getState()
+                            .containsKey(filename)
+                        || data.getRemoveStageSet().contains(filename))) {
+                System.out.println(filename);
+            }
+        }
+        data.flush();
+
+        exit(0);
+    }
 
-        System.exit(0);
+    /**
+     * Return the status lines for files whose working copy differs from
+     * what is staged or tracked, sorted by filename.  Only files whose
+     * stat data changed are rehashed.
+     * @param data Data
+     * @param filesInDir sorted names of the working files
+     * @return lines of the form "NAME (modified)" or "NAME (deleted)"
+     */
+    private static List<String> unstagedModifications(Data data,
+            List<String> filesInDir) {
+        Map<String, ObjectId> state = data.getHeadCommit().getState();
+        HashMap<String, ObjectId> added = data.getAddStageMap();
+        HashSet<String> present = new HashSet<>(filesInDir);
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> entry : state.entrySet()) {
+            String filename = entry.getKey();
+            if (added.containsKey(filename)) {
+                continue;
+            }
+            if (!present.contains(filename)) {
+                if (!data.getRemoveStageSet().contains(filename)) {
+                    result.put(filename, filename + " (deleted)");
+                }
+            } else if (!data.workingBlobId(filename)
+                    .equals(entry.getValue())) {
+                result.put(filename, filename + " (modified)");
+            }
+        }
+        for (Map.Entry<String, ObjectId> entry : added.entrySet()) {
+            String filename = entry.getKey();
+            if (!present.contains(filename)) {
+                result.put(filename, filename + " (deleted)");
+            } else if (!data.workingBlobId(filename)
+                    .equals(entry.getValue())) {
+                result.put(filename, filename + " (modified)");
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Make the working files FILESINDIR, which hold commit FROM, match
+     * commit TO: delete the files TO does not track, write the files
+     * whose blobs differ between the two trees, and rewrite any other
+     * file of TO whose working copy is missing or modified.  Working
+     * copies are compared through the stat cache, and files are written
+     * by a pool of checkout.workers threads.
+     * @param data Data
+     * @param from commit the working files were checked out from
+     * @param to commit to check out
+     * @param filesInDir working files
+     */
+    private static void checkoutTree(Data data, Commit from, Commit to,
+                                     List<String> filesInDir) {
+        StatCache statCache = data.getStatCache();
+        HashMap<String, ObjectId> changed = new HashMap<>();
+        Tree.diff(from.getTree(), to.getTree(), changed);
+        Map<String, ObjectId> target = to.getState();
+        for (String filename : filesInDir) {
+            if (!target.containsKey(filename)) {
+                deleteWorkingFile(data, filename);
+            }
+        }
+        int workers = Config.getInt(Config.CHECKOUT_WORKERS,
+                Parallel.THREADS);
+        Parallel.forEach(target.entrySet(), workers, e -> {
+            File file = new File(e.getKey());
+            if (changed.containsKey(e.getKey()) || !file.isFile()
+                    || !statCache.blobId(file, e.getKey())
+                            .equals(e.getValue())) {
+                writeWorkingFile(data, new Blob(e.getValue(), e.getKey()));
+            }
+        });
+    }
+
+    /**
+     * Check out BLOB into the working file of the same name, and record
+     * the file's new stat data so it is not rehashed later.
+     * @param data Data
+     * @param blob blob to write
+     */
+    private static void writeWorkingFile(Data data, Blob blob) {
+        File file = new File(blob.getFilename());
+        makeParents(file);
+        blob.writeTo(file);
+        data.getStatCache().update(file, blob.getFilename(),
+                blob.getSha1());
+    }
+
+    /**
+     * Delete the working file FILENAME and any directories that it
+     * leaves empty, and forget its stat data.
+     * @param data Data
+     * @param filename working file
+     */
+    private static void deleteWorkingFile(Data data, String filename) {
+        File file = new File(filename);
+        if (file.isFile()) {
+            file.delete();
+        }
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        data.getStatCache().remove(filename);
+    }
+
+    /**
+     * Create the missing directories above FILE.
+     * @param file working file
+     */
+    private static void makeParents(File file) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory()) {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Return PATH as a tracked file name: relative to the working
+     * directory, normalized, with '/' between components.  Exits if PATH
+     * is absolute, leaves the working tree, or lies in .gitlet.
+     * @param path path as given
+     * @return tracked name
+     */
+    private static String trackedName(String path) {
+        Path normal = new File(path).toPath().normalize();
+        String result = normal.toString().replace(File.separatorChar, '/');
+        boolean valid = !normal.isAbsolute();
+        for (String name : result.split("/", -1)) {
+            valid = valid && Tree.validName(name);
+        }
+        if (!valid) {
+            System.out.println("That path is outside the working tree.");
+            exit(0);
+        }
+        return result;
     }
 
     /**
@@ -494,24 +864,18 @@ public class Main {
     private static void doBranch(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
         String newBranchName = args[1];
 
-        List<String> branchNames = Utils.plainFilenamesIn(Paths.BRANCHES);
-        assert branchNames != null;
-        for (String branchName : branchNames) {
-            if (branchName.equals(newBranchName)) {
-                System.out.println("A branch with that name already exists.");
-                System.exit(0);
-            }
+        if (Branch.names().contains(newBranchName)) {
+            System.out.println("A branch with that name already exists.");
+            exit(0);
         }
         Data data = new Data();
-
-        Branch newBranch = new Branch(
-                newBranchName, data.getHead().setCommitSha1());
-
-        System.exit(0);
+        data.setBranchSha1(newBranchName, data.getHead().setCommitSha1());
+        data.flush();
+        exit(0);
     }
 
     /**
@@ -521,19 +885,19 @@ public class Main {
     private static void doRmBranch(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
         String branchName = args[1];
         Data data = new Data();
         if (data.getBranch().getName().equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            exit(0);
         }
 
         Branch branch = data.getBranch(branchName);
-        Utils.join(Paths.BRANCHES, branch.getName()).delete();
-
-        System.exit(0);
+        data.removeBranch(branch.getName());
+        data.flush();
+        exit(0);
     }
 
     /**
@@ -543,44 +907,192 @@ public class Main {
     private static void doReset(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
         String commitId = args[1];
         Data data = new Data();
         Commit commit = data.getCommit(commitId);
 
-        File cwd = new File(".");
-        String cwdString = cwd.getAbsolutePath()
-                .substring(0, cwd.getAbsolutePath().length() - 2);
-        List<String> filesInDir = Utils.plainFilenamesIn(cwdString);
+        List<String> filesInDir = Utils.workingFiles();
 
         for (String file : filesInDir) {
             if (!data.getAddStageMap().containsKey(file)
                     && !data.getHeadCommit().getState().containsKey(file)) {
                 System.out.println("There is an untracked file in"
                         + " the way; delete it, or add and commit it first.");
-                System.exit(0);
+                exit(0);
             }
         }
 
-        for (String file : filesInDir) {
-            File fileObj = new File(file);
-            if (fileObj.isFile()) {
-                Utils.restrictedDelete(file);
-            }
+        checkoutTree(data, data.getHeadCommit(), commit, filesInDir);
+
+        data.clearStages();
+        data.setBranchSha1(commit.getSha1());
+        data.setHeadCommit(commit.getSha1());
+        data.flush();
+
+        exit(0);
+    }
+
+    /**
+     * Check every stored object and report missing, corrupt and dangling
+     * ones.
+     * @param args string
+     */
+    private static void doFsck(String... args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            exit(0);
         }
+        Fsck.run();
+    }
 
-        for (String filename : commit.getState().keySet()) {
-            Blob newBlob = commit.getBlob(filename);
-            newBlob.callerSerialize();
-            Utils.writeContents(new File(filename), newBlob.getContents());
+    /**
+     * Remove the objects that no branch, HEAD or staged file reaches.
+     * @param args string
+     */
+    private static void doGc(String... args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            exit(0);
         }
+        Gc.run(new Data());
+    }
 
-        data.clearStages();
-        data.getBranch().setSha1(commit.getSha1());
-        data.getHead().setCommitSha1(commit.getSha1());
+    /**
+     * Move loose commits, trees and blobs into packs, storing older
+     * versions of files as deltas against newer ones.
+     * @param args string
+     */
+    private static void doRepack(String... args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        ObjectStore.COMMITS.repack();
+        CommitIndex.INDEX.compact();
+        Deltas deltas = new Deltas(ObjectStore.BLOBS, CommitIndex.INDEX);
+        ObjectStore.BLOBS.repack(deltas::rewrite);
+        ObjectStore.BLOBS.chunks().repack();
+        ObjectStore.TREES.repack();
+        exit(0);
+    }
+
+    /**
+     * Record a remote repository under a name.
+     * @param args string
+     */
+    private static void doAddRemote(String... args) {
+        if (args.length != 3) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        if (Remote.file(args[1]).exists()) {
+            System.out.println("A remote with that name already exists.");
+            exit(0);
+        }
+        Remote.add(args[1], args[2]);
+        exit(0);
+    }
 
-        System.exit(0);
+    /**
+     * Forget a remote repository.
+     * @param args string
+     */
+    private static void doRmRemote(String... args) {
+        if (args.length != 2) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        if (!Remote.file(args[1]).delete()) {
+            System.out.println("A remote with that name does not exist.");
+            exit(0);
+        }
+        exit(0);
+    }
+
+    /**
+     * Copy the current branch's commits to a branch of a remote, which
+     * must not have commits the current branch lacks.
+     * @param args string
+     */
+    private static void doPush(String... args) {
+        if (args.length != 3) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        Remote remote = Remote.open(args[1]);
+        if (remote == null) {
+            System.out.println("Remote directory not found.");
+            exit(0);
+        }
+        String head = new Data().getBranch().getSha1();
+        String remoteHead = remote.branchHead(args[2]);
+        if (remoteHead != null
+                && !CommitGraph.GRAPH.isAncestor(remoteHead, head)) {
+            System.out.println("Please pull down remote changes before "
+                    + "pushing.");
+            exit(0);
+        }
+        Remote.transfer(Remote.LOCAL, remote, head);
+        remote.setBranch(args[2], head);
+        exit(0);
+    }
+
+    /**
+     * Copy a branch of a remote, and the commits it reaches, into the
+     * local branch REMOTE/BRANCH.
+     * @param args string
+     */
+    private static void doFetch(String... args) {
+        if (args.length != 3) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        fetch(args[1], args[2]);
+        exit(0);
+    }
+
+    /**
+     * Fetch a branch of a remote, then merge it into the current branch.
+     * @param args string
+     */
+    private static void doPull(String... args) {
+        if (args.length != 3) {
+            System.out.println("Incorrect operands.");
+            exit(0);
+        }
+        fetch(args[1], args[2]);
+        doMerge("merge", args[1] + "/" + args[2]);
+    }
+
+    /**
+     * Copy branch BRANCH of remote NAME, and the commits it reaches, into
+     * the local branch NAME/BRANCH, which must not be the current branch:
+     * as in git, moving it would leave the working files behind HEAD.
+     * @param name remote name
+     * @param branch remote branch name
+     */
+    private static void fetch(String name, String branch) {
+        Remote remote = Remote.open(name);
+        if (remote == null) {
+            System.out.println("Remote directory not found.");
+            exit(0);
+        }
+        String head = remote.branchHead(branch);
+        if (head == null) {
+            System.out.println("That remote does not have that branch.");
+            exit(0);
+        }
+        String local = name + "/" + branch;
+        Data data = new Data();
+        if (data.getHead().getName().equals(local)) {
+            System.out.println("Cannot fetch into the current branch.");
+            exit(0);
+        }
+        Remote.transfer(remote, Remote.LOCAL, head);
+        data.setBranchSha1(local, head);
+        data.flush();
     }
 
     /**
@@ -590,13 +1102,22 @@ public class Main {
     private static void doMerge(String... args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
         String branchName = args[1];
         Data data = new Data();
+        if (!data.getAddStageMap().isEmpty()
+                || !data.getRemoveStageSet().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            exit(0);
+        }
+        if (!Branch.file(branchName).isFile()) {
+            System.out.println("A branch with that name does not exist.");
+            exit(0);
+        }
         if (branchName.equals(data.getBranch().getName())) {
-            System.out.println("Cannot merge a branch with itself");
-            System.exit(0);
+            System.out.println("Cannot merge a branch with itself.");
+            exit(0);
         }
         Commit splitPoint = findSplitPoint(data, args);
         assert splitPoint != null;
@@ -604,56 +1125,135 @@ public class Main {
         if (splitPoint.getSha1().equals(fromBranch.getSha1())) {
             System.out.println("Given branch "
                     + "is an ancestor of the current branch.");
-            System.exit(0);
+            exit(0);
         }
         if (splitPoint.getSha1().equals(data.getBranch().getSha1())) {
             System.out.println("Current branch fast-forwarded.");
             doCheckoutBranch(args);
         }
-        if (!data.getAddStageMap().isEmpty()
-                || !data.getRemoveStageSet().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+
+        Commit current = data.getHeadCommit();
+        Commit given = data.getCommit(fromBranch.getSha1());
+        TreeMap<String, ObjectId> changes = mergeChanges(splitPoint,
+                current, given);
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String filename = change.getKey();
+            if (current.getBlobId(filename) == null
+                    && new File(filename).exists()) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                exit(0);
+            }
         }
 
+        TreeMap<String, ObjectId> resolved = new TreeMap<>();
+        boolean conflict = false;
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String filename = change.getKey();
+            ObjectId blobId = change.getValue();
+            if (blobId == null) {
+                deleteWorkingFile(data, filename);
+                resolved.put(filename, null);
+            } else if (!blobId.equals(MERGE_CONTENTS)) {
+                writeWorkingFile(data, new Blob(blobId, filename));
+                resolved.put(filename, blobId);
+            } else {
+                conflict |= mergeFile(filename,
+                        splitPoint.getBlobId(filename),
+                        current.getBlobId(filename),
+                        given.getBlobId(filename));
+                Blob merged = new Blob(new File(filename), filename);
+                merged.callerSerialize();
+                data.getStatCache().update(new File(filename), filename,
+                        merged.getSha1());
+                resolved.put(filename, merged.getSha1());
+            }
+        }
 
-        System.exit(0);
+        Commit commit = new Commit(current.getSha1(), given.getSha1(),
+                "Merged " + branchName + " into "
+                + data.getBranch().getName() + ".",
+                Tree.update(current.getTree(), resolved));
+        data.setBranchSha1(commit.getSha1());
+        data.setHeadCommit(commit.getSha1());
+        data.flush();
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        exit(0);
     }
 
     /**
-     * find split point.
-     * @param data Data
-     * @param args string array
-     * @return split points
+     * Return the changes a merge makes to the files of commit CURRENT,
+     * given the split point SPLIT and the given branch's commit GIVEN.
+     * Each changed file maps to the blob id it takes, to null if it is
+     * removed, or to MERGE_CONTENTS if both sides changed it differently.
+     * Only the subtrees that differ from the split point are visited.
+     * @param split split point
+     * @param current current commit
+     * @param given given branch's commit
+     * @return changes by filename
      */
-    private static Commit findSplitPoint(Data data, String[] args) {
-        Branch curBranch = data.getBranch();
-        Commit curCommit = data.getCommit(curBranch.getSha1());
-        LinkedList<String> curBranchPath = new LinkedList<>();
-        while (true) {
-            curBranchPath.add(curCommit.getSha1());
-            String parent1 = curCommit.getParent1();
-            if (parent1 != null) {
-                curCommit = data.getCommit(curCommit.getParent1());
-            } else {
-                break;
+    private static TreeMap<String, ObjectId> mergeChanges(Commit split,
+            Commit current, Commit given) {
+        HashMap<String, ObjectId> ours = new HashMap<>();
+        HashMap<String, ObjectId> theirs = new HashMap<>();
+        Tree.diff(split.getTree(), current.getTree(), ours);
+        Tree.diff(split.getTree(), given.getTree(), theirs);
+        TreeMap<String, ObjectId> changes = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> e : theirs.entrySet()) {
+            String filename = e.getKey();
+            if (!ours.containsKey(filename)) {
+                changes.put(filename, e.getValue());
+            } else if (!Objects.equals(ours.get(filename), e.getValue())) {
+                changes.put(filename, MERGE_CONTENTS);
             }
         }
+        return changes;
+    }
 
-        String fromBranchName = args[1];
-        Branch fromBranch = data.getBranch(fromBranchName);
-        curCommit = data.getCommit(fromBranch.getSha1());
-        while (true) {
-            if (curBranchPath.contains(curCommit.getSha1())) {
-                return curCommit;
-            }
-            String parent1 = curCommit.getParent1();
-            if (parent1 != null) {
-                curCommit = data.getCommit(curCommit.getParent1());
-            } else {
-                break;
-            }
+    /**
+     * Merge the versions SPLIT, CURRENT and GIVEN (blob ids, or null if
+     * absent) of FILENAME into the working file.
+     * @param filename file to merge
+     * @param split blob id at the split point
+     * @param current blob id in the current commit
+     * @param given blob id in the given commit
+     * @return true if there were conflicts
+     */
+    private static boolean mergeFile(String filename, ObjectId split,
+                                  ObjectId current, ObjectId given) {
+        makeParents(new File(filename));
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(filename))) {
+            return LineMerge.merge(contents(split), contents(current),
+                    contents(given), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        return null;
+    }
+
+    /**
+     * Return the contents of blob ID, or no bytes if ID is null.
+     * @param id blob id or null
+     * @return contents
+     */
+    private static byte[] contents(ObjectId id) {
+        return id == null ? new byte[0]
+                : Blob.contents(ObjectStore.BLOBS, id.toString());
+    }
+
+    /**
+     * find split point: the merge base of the current branch and the
+     * branch named ARGS[1], found in the commit graph.
+     * @param data Data
+     * @param args string array
+     * @return split points
+     */
+    private static Commit findSplitPoint(Data data, String[] args) {
+        Branch fromBranch = data.getBranch(args[1]);
+        String base = CommitGraph.GRAPH.mergeBase(data.getBranch().getSha1(),
+                fromBranch.getSha1());
+        return base == null ? null : data.getCommit(base);
     }
 }
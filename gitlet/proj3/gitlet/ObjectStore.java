@@ -0,0 +1,435 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A content-addressed object store.  New objects are written loose, one
+ * file per object named by its SHA-1 in the store's directory; repack()
+ * migrates them into pack files kept in the "pack" subdirectory, where
+ * they are found by bisection of a memory-mapped index.
+ * @author Joshua Park
+ */
+class ObjectStore {
+
+    /** The store of commits. */
+    static final ObjectStore COMMITS = new ObjectStore(Paths.COMMITS);
+
+    /** The store of blobs. */
+    static final ObjectStore BLOBS = new ObjectStore(Paths.BLOBS);
+
+    /** The store of trees. */
+    static final ObjectStore TREES = new ObjectStore(Paths.TREES);
+
+    /** Name of the pack subdirectory. */
+    static final String PACK_DIR = "pack";
+
+    /** Name of the subdirectory holding the chunks of chunked blobs. */
+    static final String CHUNK_DIR = "chunks";
+
+    /** Directory of loose objects. */
+    private final File _dir;
+
+    /** Directory of pack files. */
+    private final File _packDir;
+
+    /** Packs currently in the pack directory, loaded on first use. */
+    private List<Pack> _packs;
+
+    /** Store of the chunks of this store's chunked blobs, made on first
+     *  use. */
+    private ObjectStore _chunks;
+
+    /**
+     * A store whose loose objects live in DIR.
+     * @param dir object directory
+     */
+    ObjectStore(File dir) {
+        _dir = dir;
+        _packDir = Utils.join(dir, PACK_DIR);
+    }
+
+    /**
+     * directory getter.
+     * @return the loose object directory
+     */
+    File getDir() {
+        return _dir;
+    }
+
+    /**
+     * Return the store of the chunks of the chunked blobs in this store,
+     * kept in its "chunks" subdirectory.
+     * @return chunk store
+     */
+    synchronized ObjectStore chunks() {
+        if (_chunks == null) {
+            _chunks = new ObjectStore(Utils.join(_dir, CHUNK_DIR));
+        }
+        return _chunks;
+    }
+
+    /**
+     * Return whether object ID is present.
+     * @param id hex SHA-1
+     * @return true if present
+     */
+    boolean contains(String id) {
+        if (Utils.join(_dir, id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the contents of object ID.  Throws IllegalArgumentException
+     * if there is no such object.
+     * @param id hex SHA-1
+     * @return object contents
+     */
+    byte[] read(String id) {
+        Trace.count(Trace.OBJECTS_READ, 1);
+        File loose = Utils.join(_dir, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0) {
+                try (Trace.Span span = Trace.begin(Trace.READ)) {
+                    byte[] result = pack.read(k);
+                    Trace.count(Trace.BYTES_READ, result.length);
+                    return result;
+                }
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /**
+     * Return where the contents of object ID lie on disk, so that they can
+     * be streamed rather than read whole.  Throws IllegalArgumentException
+     * if there is no such object.
+     * @param id hex SHA-1
+     * @return location of the contents
+     */
+    Location locate(String id) {
+        File loose = Utils.join(_dir, id);
+        if (loose.isFile()) {
+            return new Location(loose, 0, loose.length());
+        }
+        for (Pack pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0) {
+                return new Location(pack.getPackFile(), pack.offsetAt(k),
+                        pack.lengthAt(k));
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /**
+     * Write CONTENTS as loose object ID, unless it is already present,
+     * through a temporary file renamed into place, so that a crash never
+     * leaves a partly written object under its id.
+     * @param id hex SHA-1
+     * @param contents object contents
+     */
+    void write(String id, byte[] contents) {
+        if (!contains(id)) {
+            File tmp = tempFile();
+            Utils.writeContents(tmp, contents);
+            install(id, tmp);
+        }
+    }
+
+    /**
+     * Write HEADER followed by the contents of SOURCE as loose object ID,
+     * unless it is already present.  SOURCE is copied by channel transfer
+     * into a temporary file that is then renamed into place.
+     * @param id hex SHA-1
+     * @param header bytes preceding the contents
+     * @param source file whose contents are stored
+     */
+    void write(String id, byte[] header, File source) {
+        if (contains(id)) {
+            return;
+        }
+        Trace.count(Trace.OBJECTS_WRITTEN, 1);
+        File tmp = tempFile();
+        try (Trace.Span span = Trace.begin(Trace.WRITE);
+             FileChannel in = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(header);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            long size = in.size();
+            for (long pos = 0; pos < size;) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            Trace.count(Trace.BYTES_WRITTEN, header.length + size);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.rename(tmp, Utils.join(_dir, id));
+    }
+
+    /**
+     * Return a new empty temporary file in the loose object directory,
+     * to be filled and then passed to install().
+     * @return temporary file
+     */
+    File tempFile() {
+        try {
+            return File.createTempFile("tmp-", null, _dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Rename the completed temporary file TMP into place as loose object
+     * ID, or delete it if ID is already present.
+     * @param id hex SHA-1
+     * @param tmp file from tempFile()
+     */
+    void install(String id, File tmp) {
+        if (contains(id)) {
+            tmp.delete();
+        } else {
+            Trace.count(Trace.OBJECTS_WRITTEN, 1);
+            if (Trace.isOn()) {
+                Trace.count(Trace.BYTES_WRITTEN, tmp.length());
+            }
+            Utils.rename(tmp, Utils.join(_dir, id));
+        }
+    }
+
+    /**
+     * Return the ids of all loose objects.
+     * @return sorted ids
+     */
+    List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(_dir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the ids of all objects, loose or packed.
+     * @return sorted ids
+     */
+    List<String> ids() {
+        TreeSet<String> all = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            all.addAll(pack.ids());
+        }
+        return new ArrayList<>(all);
+    }
+
+    /**
+     * Return the number of bytes this store's loose objects and packs
+     * take on disk.
+     * @return bytes
+     */
+    long diskUsage() {
+        long total = 0;
+        for (File dir : new File[] {_dir, _packDir}) {
+            File[] files = dir.listFiles(File::isFile);
+            if (files != null) {
+                for (File file : files) {
+                    total += file.length();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Forget the list of packs, so that it is read again on next use.
+     */
+    synchronized void invalidate() {
+        _packs = null;
+    }
+
+    /**
+     * Return the packs of this store.
+     * @return packs
+     */
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.startsWith("pack-")
+                            && name.endsWith(Pack.IDX_SUFFIX)) {
+                        _packs.add(new Pack(Utils.join(_packDir, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /**
+     * Move every loose object and every existing pack into a single new
+     * pack, then delete the loose files and old packs.  Objects too large
+     * for a pack record stay loose.
+     * @return number of objects in the new pack
+     */
+    int repack() {
+        return repack(null);
+    }
+
+    /**
+     * Repack as repack() does, but store each object ID for which
+     * REWRITE returns non-null bytes as those bytes instead of copying
+     * it.  REWRITE is called before the old objects are deleted, so it
+     * may read them.
+     * @param rewrite new contents by id, or null to copy every object
+     * @return number of objects in the new pack
+     */
+    int repack(Function<String, byte[]> rewrite) {
+        return repack(rewrite, null);
+    }
+
+    /**
+     * Repack as repack(REWRITE) does, but leave out every object whose id
+     * KEEP rejects.  Loose objects left out are deleted.  If nothing is
+     * left to pack, the old packs are deleted and no pack is written.
+     * Nothing is deleted until the new pack is durably in place.
+     * @param rewrite new contents by id, or null to copy every object
+     * @param keep ids of the objects to keep, or null to keep them all
+     * @return number of objects in the new pack
+     */
+    int repack(Function<String, byte[]> rewrite, Predicate<String> keep) {
+        List<Pack> oldPacks = new ArrayList<>(packs());
+        List<String> loose = looseIds();
+        if (rewrite == null && keep == null && loose.isEmpty()
+                && oldPacks.size() <= 1) {
+            return oldPacks.isEmpty() ? 0 : oldPacks.get(0).size();
+        }
+        Pack.Writer writer = new Pack.Writer(_packDir);
+        TreeSet<String> seen = new TreeSet<>();
+        List<String> drop = new ArrayList<>();
+        for (String id : loose) {
+            File file = Utils.join(_dir, id);
+            if (keep != null && !keep.test(id)) {
+                drop.add(id);
+                continue;
+            }
+            byte[] bytes = rewrite == null ? null : rewrite.apply(id);
+            if (bytes != null) {
+                writer.add(id, bytes);
+            } else if (file.length() <= Pack.MAX_OBJECT) {
+                writer.add(id, file, 0, file.length());
+            } else {
+                continue;
+            }
+            seen.add(id);
+            drop.add(id);
+        }
+        for (Pack pack : oldPacks) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                String id = pack.idAt(k);
+                if (keep != null && !keep.test(id) || !seen.add(id)) {
+                    continue;
+                }
+                byte[] bytes = rewrite == null ? null : rewrite.apply(id);
+                if (bytes != null) {
+                    writer.add(id, bytes);
+                } else {
+                    writer.add(id, pack.getPackFile(), pack.offsetAt(k),
+                            pack.lengthAt(k));
+                }
+            }
+        }
+        Pack result = writer.finish();
+        for (Pack pack : oldPacks) {
+            if (result == null
+                    || !pack.getIndexFile().equals(result.getIndexFile())) {
+                pack.getIndexFile().delete();
+                pack.getPackFile().delete();
+            }
+        }
+        for (String id : drop) {
+            Utils.join(_dir, id).delete();
+        }
+        invalidate();
+        return result == null ? 0 : result.size();
+    }
+
+    /**
+     * The position of an object's contents on disk: LENGTH bytes starting
+     * at OFFSET in FILE.
+     */
+    static class Location {
+        /** File holding the contents. */
+        private final File _file;
+        /** Offset of the contents in _file. */
+        private final long _offset;
+        /** Length of the contents. */
+        private final long _length;
+
+        /**
+         * A location of LENGTH bytes at OFFSET in FILE.
+         * @param file file
+         * @param offset offset
+         * @param length length
+         */
+        Location(File file, long offset, long length) {
+            _file = file;
+            _offset = offset;
+            _length = length;
+        }
+
+        /**
+         * file getter.
+         * @return file
+         */
+        File getFile() {
+            return _file;
+        }
+
+        /**
+         * offset getter.
+         * @return offset
+         */
+        long getOffset() {
+            return _offset;
+        }
+
+        /**
+         * length getter.
+         * @return length
+         */
+        long getLength() {
+            return _length;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pack of objects: an append-only data file holding the contents of
+ * many objects back to back, and a sorted index file mapping each
+ * object's SHA-1 to its offset and length in the data file.  The index
+ * is memory-mapped and searched by bisection.
+ *
+ * Index layout: magic, version, count, then COUNT records of
+ * (20-byte SHA-1, 8-byte offset, 4-byte length) sorted by SHA-1.
+ * Data layout: magic, version, then the object contents.
+ * @author Joshua Park
+ */
+class Pack {
+
+    /** Magic number at the start of an index file ("GIDX"). */
+    static final int IDX_MAGIC = 0x47494458;
+
+    /** Magic number at the start of a data file ("GPAK"). */
+    static final int PACK_MAGIC = 0x4750414b;
+
+    /** Version of the pack format written by this class. */
+    static final int VERSION = 1;
+
+    /** Length of a raw SHA-1 id in bytes. */
+    static final int ID_BYTES = 20;
+
+    /** Size of the index header in bytes. */
+    static final int IDX_HEADER = 12;
+
+    /** Size of the data file header in bytes. */
+    static final int PACK_HEADER = 8;
+
+    /** Size of one index record in bytes. */
+    static final int RECORD = ID_BYTES + 8 + 4;
+
+    /** Largest object a pack record can describe. */
+    static final long MAX_OBJECT = Integer.MAX_VALUE;
+
+    /** Suffix of index files. */
+    static final String IDX_SUFFIX = ".idx";
+
+    /** Suffix of data files. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** The index file. */
+    private final File _idxFile;
+    /** The data file. */
+    private final File _packFile;
+    /** The memory-mapped index. */
+    private final MappedByteBuffer _index;
+    /** Number of objects in the pack. */
+    private final int _count;
+
+    /**
+     * Open the pack whose index file is IDXFILE.
+     * @param idxFile index file, named pack-NAME.idx
+     */
+    Pack(File idxFile) {
+        _idxFile = idxFile;
+        String name = idxFile.getName();
+        _packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - IDX_SUFFIX.length())
+                        + PACK_SUFFIX);
+        try (FileChannel ch = FileChannel.open(idxFile.toPath(),
+                StandardOpenOption.READ)) {
+            _index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.capacity() < IDX_HEADER
+                || _index.getInt(0) != IDX_MAGIC
+                || _index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt pack index "
+                    + idxFile);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /**
+     * index file getter.
+     * @return the index file
+     */
+    File getIndexFile() {
+        return _idxFile;
+    }
+
+    /**
+     * data file getter.
+     * @return the data file
+     */
+    File getPackFile() {
+        return _packFile;
+    }
+
+    /**
+     * number of objects.
+     * @return count of objects in this pack
+     */
+    int size() {
+        return _count;
+    }
+
+    /**
+     * Return the SHA-1 of the Kth object in sorted order.
+     * @param k record number
+     * @return hex id
+     */
+    String idAt(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        _index.get(IDX_HEADER + k * RECORD, raw);
+        return Utils.toHex(raw);
+    }
+
+    /**
+     * Return the record number of ID, or -1 if absent.
+     * @param id hex SHA-1
+     * @return record number
+     */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareAt(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the id of record K with KEY.
+     * @param k record number
+     * @param key raw id
+     * @return negative, zero or positive as record K is less, equal or
+     *         greater than KEY
+     */
+    private int compareAt(int k, byte[] key) {
+        int base = IDX_HEADER + k * RECORD;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = (_index.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Offset of record K in the data file.
+     * @param k record number
+     * @return offset
+     */
+    long offsetAt(int k) {
+        return _index.getLong(IDX_HEADER + k * RECORD + ID_BYTES);
+    }
+
+    /**
+     * Length of record K in the data file.
+     * @param k record number
+     * @return length
+     */
+    int lengthAt(int k) {
+        return _index.getInt(IDX_HEADER + k * RECORD + ID_BYTES + 8);
+    }
+
+    /**
+     * Return whether this pack holds ID.
+     * @param id hex SHA-1
+     * @return true if present
+     */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Return the contents of record K.
+     * @param k record number
+     * @return object contents
+     */
+    byte[] read(int k) {
+        ByteBuffer buf = ByteBuffer.allocate(lengthAt(k));
+        try (FileChannel ch = FileChannel.open(_packFile.toPath(),
+                StandardOpenOption.READ)) {
+            long pos = offsetAt(k);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, pos + buf.position()) < 0) {
+                    throw new IllegalArgumentException("truncated pack "
+                            + _packFile);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return buf.array();
+    }
+
+    /**
+     * Return all ids in this pack, in sorted order.
+     * @return ids
+     */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(_count);
+        for (int k = 0; k < _count; k += 1) {
+            result.add(idAt(k));
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates objects into a new pack in directory DIR.  Objects are
+     * appended to a temporary data file as they are added; finish() sorts
+     * the index, writes it, and renames both files into place, index last,
+     * so that readers never see a partial pack.
+     */
+    static class Writer {
+        /** Pack directory. */
+        private final File _dir;
+        /** Temporary data file. */
+        private File _tmpPack;
+        /** Channel to the temporary data file. */
+        private FileChannel _out;
+        /** Ids added so far, in order of addition. */
+        private final List<String> _ids;
+        /** Offsets of the added objects. */
+        private long[] _offsets;
+        /** Lengths of the added objects. */
+        private int[] _lengths;
+        /** Current end of the data file. */
+        private long _pos;
+
+        /**
+         * A writer for a new pack in DIR.
+         * @param dir pack directory
+         */
+        Writer(File dir) {
+            _dir = dir;
+            _dir.mkdirs();
+            try {
+                _tmpPack = File.createTempFile("tmp-", PACK_SUFFIX, dir);
+                _out = FileChannel.open(_tmpPack.toPath(),
+                        StandardOpenOption.WRITE);
+                ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+                header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+                writeFully(header);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _ids = new ArrayList<>();
+            _offsets = new long[16];
+            _lengths = new int[16];
+            _pos = PACK_HEADER;
+        }
+
+        /**
+         * Append object ID with CONTENTS.
+         * @param id hex SHA-1
+         * @param contents object contents
+         */
+        void add(String id, byte[] contents) {
+            int n = _ids.size();
+            if (n == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * n);
+                _lengths = Arrays.copyOf(_lengths, 2 * n);
+            }
+            _ids.add(id);
+            _offsets[n] = _pos;
+            _lengths[n] = contents.length;
+            try {
+                writeFully(ByteBuffer.wrap(contents));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _pos += contents.length;
+        }
+
+        /**
+         * Append object ID whose contents are the LENGTH bytes at OFFSET
+         * in SOURCE, copying them by channel transfer.
+         * @param id hex SHA-1
+         * @param source file holding the contents
+         * @param offset offset of the contents in SOURCE
+         * @param length length of the contents, at most MAX_OBJECT
+         */
+        void add(String id, File source, long offset, long length) {
+            int n = _ids.size();
+            if (n == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * n);
+                _lengths = Arrays.copyOf(_lengths, 2 * n);
+            }
+            _ids.add(id);
+            _offsets[n] = _pos;
+            _lengths[n] = (int) length;
+            try (FileChannel in = FileChannel.open(source.toPath(),
+                    StandardOpenOption.READ)) {
+                for (long done = 0; done < length;) {
+                    done += in.transferTo(offset + done, length - done,
+                            _out);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _pos += length;
+        }
+
+        /**
+         * number of objects added so far.
+         * @return count
+         */
+        int size() {
+            return _ids.size();
+        }
+
+        /**
+         * Write the index and move the pack into place, syncing both and
+         * the pack directory, unless core.fsync is 0, so that the objects
+         * they hold may then be deleted elsewhere.
+         * @return the new pack, or null if nothing was added
+         */
+        Pack finish() {
+            int n = _ids.size();
+            try {
+                if (Journal.syncing()) {
+                    _out.force(true);
+                }
+                _out.close();
+                if (n == 0) {
+                    _tmpPack.delete();
+                    return null;
+                }
+                Integer[] order = new Integer[n];
+                for (int i = 0; i < n; i += 1) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> _ids.get(a).compareTo(
+                        _ids.get(b)));
+                ByteBuffer idx = ByteBuffer.allocate(IDX_HEADER + n * RECORD);
+                idx.putInt(IDX_MAGIC).putInt(VERSION).putInt(n);
+                List<Object> sorted = new ArrayList<>(n);
+                for (int i : order) {
+                    idx.put(Utils.fromHex(_ids.get(i)));
+                    idx.putLong(_offsets[i]);
+                    idx.putInt(_lengths[i]);
+                    sorted.add(_ids.get(i));
+                }
+                String name = "pack-" + Utils.sha1(sorted);
+                File packFile = new File(_dir, name + PACK_SUFFIX);
+                File idxFile = new File(_dir, name + IDX_SUFFIX);
+                File tmpIdx = File.createTempFile("tmp-", IDX_SUFFIX, _dir);
+                Journal.writeFile(tmpIdx, idx.array(), true);
+                Utils.rename(_tmpPack, packFile);
+                Utils.rename(tmpIdx, idxFile);
+                Journal.syncDirectory(_dir);
+                return new Pack(idxFile);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Write all of BUF to the data file.
+         * @param buf bytes to write
+         * @throws IOException on failure
+         */
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                _out.write(buf);
+            }
+        }
+    }
+}
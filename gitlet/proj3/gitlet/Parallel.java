@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of worker threads for I/O-bound work on many files,
+ * such as writing the working tree on checkout.
+ * @author Joshua Park
+ */
+class Parallel {
+
+    /** Default number of workers: enough to keep several I/O requests
+     *  in flight per processor, but bounded. */
+    static final int THREADS = Math.max(2,
+            Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+    /** Fewer items than this are processed on the calling thread. */
+    static final int MIN_PARALLEL = 64;
+
+    /**
+     * Apply ACTION to every member of ITEMS, using up to THREADS worker
+     * threads, and return when all are done.  If any application throws,
+     * the first exception is rethrown after the others finish.
+     * @param items work items
+     * @param threads maximum number of workers
+     * @param action work to do on each item
+     * @param <T> item type
+     */
+    static <T> void forEach(Collection<T> items, int threads,
+                            Consumer<T> action) {
+        if (threads <= 1 || items.size() < MIN_PARALLEL) {
+            items.forEach(action);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(pool.submit(() -> action.accept(item)));
+            }
+            RuntimeException failure = null;
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException excp) {
+                    if (failure == null) {
+                        failure = excp.getCause() instanceof RuntimeException
+                                ? (RuntimeException) excp.getCause()
+                                : new IllegalArgumentException(excp.getCause());
+                    }
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalArgumentException(excp);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -17,6 +17,53 @@ public class Paths {
      */
     public static final File COMMITS = Utils.join(GITLET, "commits");
 
+    /**
+     * Sorted index of commit ids.
+     */
+    public static final File COMMIT_INDEX = Utils.join(GITLET,
+            "commit-index");
+
+    /**
+     * Commit ids not yet merged into the sorted index.
+     */
+    public static final File COMMIT_INDEX_TAIL = Utils.join(GITLET,
+            "commit-index-tail");
+
+    /**
+     * Parents and generation numbers of every commit.
+     */
+    public static final File COMMIT_GRAPH = Utils.join(GITLET,
+            "commit-graph");
+
+    /**
+     * Bloom filters of the paths each commit changed.
+     */
+    public static final File CHANGED_PATHS = Utils.join(GITLET,
+            "commit-graph-paths");
+
+    /**
+     * Metadata of every commit, in the order they were made.
+     */
+    public static final File COMMIT_LOG = Utils.join(GITLET, "commit-log");
+
+    /**
+     * Messages of the commits in the commit log.
+     */
+    public static final File COMMIT_MESSAGES = Utils.join(GITLET,
+            "commit-messages");
+
+    /**
+     * Hash index of the commit log by message.
+     */
+    public static final File MESSAGE_INDEX = Utils.join(GITLET,
+            "message-index");
+
+    /**
+     * Commit log positions sorted by commit time.
+     */
+    public static final File COMMIT_TIMES = Utils.join(GITLET,
+            "commit-times");
+
     /**
      * Head file.
      */
@@ -27,11 +74,37 @@ public class Paths {
      */
     public static final File BLOBS = Utils.join(GITLET, "blobs");
 
+    /**
+     * Tree directory.
+     */
+    public static final File TREES = Utils.join(GITLET, "trees");
+
     /**
      * Branch directory.
      */
     public static final File BRANCHES = Utils.join(GITLET, "branches");
 
+    /**
+     * Directory of remotes, one file per remote holding its path.
+     */
+    public static final File REMOTES = Utils.join(GITLET, "remotes");
+
+    /**
+     * Repository settings.
+     */
+    public static final File CONFIG = Utils.join(GITLET, "config");
+
+    /**
+     * Socket of the repository's daemon, while one is running.
+     */
+    public static final File DAEMON_SOCKET = Utils.join(GITLET,
+            "daemon.sock");
+
+    /**
+     * Stat cache of the working tree.
+     */
+    public static final File INDEX = Utils.join(GITLET, "index");
+
     /**
      * File to keep track of staged for additions.
      */
@@ -44,4 +117,9 @@ public class Paths {
     public static final File STAGEDFORREMOVE = Utils.join(GITLET,
             "stage_removal");
 
+    /**
+     * Journal of the ref and stage updates being applied.
+     */
+    public static final File JOURNAL = Utils.join(GITLET, "journal");
+
 }
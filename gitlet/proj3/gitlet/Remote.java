@@ -0,0 +1,364 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * A handle on the object stores, commit index, commit graph, commit log
+ * and branches of a repository, used to move commits between this
+ * repository and a remote one in another directory of the same file
+ * system.  Each remote is a file in .gitlet/remotes, named by the remote
+ * and holding the path of its .gitlet directory.
+ *
+ * A transfer sends only what the destination lacks.  It walks back from
+ * the commit being sent and stops at commits the destination already
+ * has; walks the trees of the missing commits, skipping any tree the
+ * destination has, since it then has everything under it; and sends the
+ * blobs the destination lacks, with the chunks of chunked blobs that it
+ * lacks.  The objects of each store are copied, in the order they lie
+ * on disk, into one new pack in the destination, so a transfer costs a
+ * few files however many objects it sends.  A
+ * delta blob whose base is neither in the destination nor being sent is
+ * sent whole.  The missing commits are then added to the destination's
+ * commit index, graph and log in one batch each, parents first.
+ * @author Joshua Park
+ */
+class Remote {
+
+    /** This repository. */
+    static final Remote LOCAL = new Remote(Paths.GITLET,
+            ObjectStore.COMMITS, ObjectStore.TREES, ObjectStore.BLOBS,
+            CommitIndex.INDEX, CommitGraph.GRAPH, CommitLog.LOG);
+
+    /** The repository's .gitlet directory. */
+    private final File _dir;
+
+    /** Store of commits. */
+    private final ObjectStore _commits;
+
+    /** Store of trees. */
+    private final ObjectStore _trees;
+
+    /** Store of blobs. */
+    private final ObjectStore _blobs;
+
+    /** Commit index. */
+    private final CommitIndex _index;
+
+    /** Commit graph. */
+    private final CommitGraph _graph;
+
+    /** Commit log. */
+    private final CommitLog _log;
+
+    /**
+     * A handle on the repository whose .gitlet directory is DIR, with
+     * the given stores, index, graph and log.
+     * @param dir .gitlet directory
+     * @param commits commit store
+     * @param trees tree store
+     * @param blobs blob store
+     * @param index commit index
+     * @param graph commit graph
+     * @param log commit log
+     */
+    private Remote(File dir, ObjectStore commits, ObjectStore trees,
+                   ObjectStore blobs, CommitIndex index, CommitGraph graph,
+                   CommitLog log) {
+        _dir = dir;
+        _commits = commits;
+        _trees = trees;
+        _blobs = blobs;
+        _index = index;
+        _graph = graph;
+        _log = log;
+    }
+
+    /**
+     * A handle on the repository whose .gitlet directory is DIR.
+     * @param dir .gitlet directory
+     */
+    private Remote(File dir) {
+        _dir = dir;
+        _commits = new ObjectStore(inDir(Paths.COMMITS));
+        _trees = new ObjectStore(inDir(Paths.TREES));
+        _blobs = new ObjectStore(inDir(Paths.BLOBS));
+        _index = new CommitIndex(inDir(Paths.COMMIT_INDEX),
+                inDir(Paths.COMMIT_INDEX_TAIL), _commits);
+        _graph = new CommitGraph(inDir(Paths.COMMIT_GRAPH), _index);
+        _log = new CommitLog(inDir(Paths.COMMIT_LOG),
+                inDir(Paths.COMMIT_MESSAGES), inDir(Paths.MESSAGE_INDEX),
+                inDir(Paths.COMMIT_TIMES), _index);
+    }
+
+    /**
+     * Return the file of the remote named NAME.
+     * @param name remote name
+     * @return remote file
+     */
+    static File file(String name) {
+        return Utils.join(Paths.REMOTES, name);
+    }
+
+    /**
+     * Record a remote named NAME whose .gitlet directory is at PATH,
+     * written with '/' between components.
+     * @param name remote name
+     * @param path .gitlet directory
+     */
+    static void add(String name, String path) {
+        Paths.REMOTES.mkdir();
+        Utils.writeContents(file(name), path.replace("/", File.separator));
+    }
+
+    /**
+     * Return the repository of the remote named NAME, or null if there is
+     * no such remote or its directory does not exist.
+     * @param name remote name
+     * @return remote repository or null
+     */
+    static Remote open(String name) {
+        File file = file(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        File dir = new File(Utils.readContentsAsString(file));
+        return dir.isDirectory() ? new Remote(dir) : null;
+    }
+
+    /**
+     * Return the commit at the head of branch NAME, or null if there is
+     * no such branch.
+     * @param name branch name
+     * @return hex commit id or null
+     */
+    String branchHead(String name) {
+        File file = Utils.join(inDir(Paths.BRANCHES), name);
+        if (!file.isFile()) {
+            return null;
+        }
+        return Branch.decode(Utils.readContents(file)).getSha1();
+    }
+
+    /**
+     * Make branch NAME point to commit ID, creating it if need be, and
+     * move HEAD with it if it is the current branch, in one Journal
+     * transaction on this repository.  Its working files are left alone.
+     * @param name branch name
+     * @param id hex commit id
+     */
+    void setBranch(String name, String id) {
+        Journal journal = new Journal(_dir);
+        journal.write(Utils.join(inDir(Paths.BRANCHES), name),
+                Branch.encode(name, id));
+        File headFile = inDir(Paths.HEAD);
+        Head head = Head.decode(Utils.readContents(headFile));
+        if (head.getName().equals(name)) {
+            head.setCommitSha1(id);
+            journal.write(headFile, head.encode());
+        }
+        journal.commit();
+    }
+
+    /**
+     * Return the file of this repository corresponding to the file LOCAL
+     * of .gitlet.
+     * @param local a file directly under .gitlet
+     * @return corresponding file
+     */
+    private File inDir(File local) {
+        return Utils.join(_dir, local.getName());
+    }
+
+    /**
+     * Copy to TO commit ID and everything it reaches that TO lacks, and
+     * return the number of commits copied.
+     * @param from source repository
+     * @param to destination repository
+     * @param id hex commit id in FROM
+     * @return commits copied
+     */
+    static int transfer(Remote from, Remote to, String id) {
+        List<Commit> commits = from.missingCommits(to, id);
+        if (commits.isEmpty()) {
+            return 0;
+        }
+        TreeSet<String> trees = new TreeSet<>();
+        TreeSet<String> blobs = new TreeSet<>();
+        for (Commit commit : commits) {
+            if (commit.getStoredTree() != null) {
+                from.missingTrees(to, commit.getStoredTree(), trees, blobs);
+            } else {
+                for (ObjectId blob : commit.getState().values()) {
+                    if (!to._blobs.contains(blob.toString())) {
+                        blobs.add(blob.toString());
+                    }
+                }
+            }
+        }
+        TreeSet<String> chunks = new TreeSet<>();
+        for (String blob : blobs) {
+            if (Blob.format(from._blobs, blob) == Blob.CHUNKED) {
+                Chunks list = Blob.chunks(from._blobs, blob);
+                for (int k = 0; k < list.count(); k += 1) {
+                    if (!to._blobs.chunks().contains(list.idAt(k))) {
+                        chunks.add(list.idAt(k));
+                    }
+                }
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        for (Commit commit : commits) {
+            ids.add(commit.getSha1());
+        }
+        copy(from._blobs.chunks(), to._blobs.chunks(), chunks, null);
+        copy(from._blobs, to._blobs, blobs,
+                blob -> from.wholeUnlessBased(to, blob, blobs));
+        copy(from._trees, to._trees, trees, null);
+        copy(from._commits, to._commits, ids, null);
+        to._index.addAll(ids);
+        to._graph.addAll(commits);
+        to._log.addAll(commits);
+        return commits.size();
+    }
+
+    /**
+     * Return the commits reachable from commit ID that TO lacks, parents
+     * before children.
+     * @param to destination repository
+     * @param id hex commit id
+     * @return missing commits
+     */
+    private List<Commit> missingCommits(Remote to, String id) {
+        List<Commit> result = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String c = work.pop();
+            if (!seen.add(c) || to._commits.contains(c)) {
+                continue;
+            }
+            Commit commit = Commit.read(_commits, c);
+            result.add(commit);
+            if (commit.getParent1() != null) {
+                work.push(commit.getParent1());
+            }
+            if (commit.getParent2() != null) {
+                work.push(commit.getParent2());
+            }
+        }
+        HashMap<String, Integer> generation = new HashMap<>();
+        for (Commit commit : result) {
+            generation.put(commit.getSha1(),
+                    _graph.generation(commit.getSha1()));
+        }
+        result.sort(Comparator.comparing(c -> generation.get(c.getSha1())));
+        return result;
+    }
+
+    /**
+     * Add to TREES tree ID and its subtrees, and to BLOBS their files,
+     * leaving out what TO already has or the sets already hold.
+     * @param to destination repository
+     * @param id hex tree id
+     * @param trees trees to send
+     * @param blobs blobs to send
+     */
+    private void missingTrees(Remote to, String id, TreeSet<String> trees,
+                              TreeSet<String> blobs) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String tree = work.pop();
+            if (tree.equals(Tree.EMPTY) || trees.contains(tree)
+                    || to._trees.contains(tree)) {
+                continue;
+            }
+            trees.add(tree);
+            Tree.list(_trees, tree, (name, blob) -> {
+                String hex = blob.toString();
+                if (!blobs.contains(hex) && !to._blobs.contains(hex)) {
+                    blobs.add(hex);
+                }
+            }, (name, subtree) -> work.push(subtree), work::push);
+        }
+    }
+
+    /**
+     * Return blob ID stored whole if it is a delta whose base is neither
+     * in TO nor among SENT, or null to send it as it is stored.
+     * @param to destination repository
+     * @param id hex blob id
+     * @param sent blobs being sent
+     * @return stored bytes or null
+     */
+    private byte[] wholeUnlessBased(Remote to, String id,
+                                    Collection<String> sent) {
+        if (Blob.format(_blobs, id) != Blob.DELTA) {
+            return null;
+        }
+        byte[] stored = _blobs.read(id);
+        String base = Delta.baseId(Arrays.copyOfRange(stored, 1,
+                stored.length));
+        if (sent.contains(base) || to._blobs.contains(base)) {
+            return null;
+        }
+        byte[] contents = Blob.contents(_blobs, id);
+        byte[] result = new byte[contents.length + 1];
+        result[0] = Blob.RAW;
+        System.arraycopy(contents, 0, result, 1, contents.length);
+        return result;
+    }
+
+    /**
+     * Copy objects IDS from store FROM into one new pack of store TO,
+     * reading them in the order they lie on disk.  Each object for which
+     * REWRITE returns non-null bytes is stored as those bytes instead.
+     * Objects too large for a pack are copied loose.
+     * @param from source store
+     * @param to destination store
+     * @param ids ids of the objects to copy
+     * @param rewrite new contents by id, or null to copy every object
+     */
+    private static void copy(ObjectStore from, ObjectStore to,
+                             Collection<String> ids,
+                             Function<String, byte[]> rewrite) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        HashMap<String, ObjectStore.Location> where = new HashMap<>();
+        for (String id : ids) {
+            where.put(id, from.locate(id));
+        }
+        List<String> order = new ArrayList<>(ids);
+        order.sort(Comparator.comparing(
+                (String id) -> where.get(id).getFile().getPath())
+                .thenComparingLong(id -> where.get(id).getOffset()));
+        File packDir = Utils.join(to.getDir(), ObjectStore.PACK_DIR);
+        Pack.Writer writer = new Pack.Writer(packDir);
+        for (String id : order) {
+            ObjectStore.Location loc = where.get(id);
+            byte[] bytes = rewrite == null ? null : rewrite.apply(id);
+            if (bytes != null) {
+                writer.add(id, bytes);
+            } else if (loc.getLength() <= Pack.MAX_OBJECT) {
+                writer.add(id, loc.getFile(), loc.getOffset(),
+                        loc.getLength());
+            } else {
+                to.write(id, new byte[0], loc.getFile());
+            }
+        }
+        writer.finish();
+        to.invalidate();
+    }
+}
@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State kept in memory between the commands run by one daemon process.
+ * Small state files (HEAD, branch refs and the stages) are kept as bytes
+ * and reread only when their stat data changes.  The in-memory forms of
+ * the commit index, the commit graph, the pack lists and the config are
+ * kept by their own classes; before each command, the files behind them
+ * are compared with their stat data after the previous command, and any
+ * that changed underneath the daemon are dropped and reloaded on next
+ * use.  Files are replaced by rename, so the file key (inode) changes
+ * with every write even when size and mtime do not.
+ *
+ * Outside a daemon the cache is disabled and reads go to the files.
+ * @author Joshua Park
+ */
+class RepoCache {
+
+    /** Most state files kept in FILES. */
+    static final int MAX_FILES = 256;
+
+    /** True if state is kept between commands. */
+    private static volatile boolean _enabled;
+
+    /** Contents of recently read state files and their stat data, least
+     *  recently used first. */
+    private static final LinkedHashMap<File, Entry> FILES =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<File, Entry> eldest) {
+                    return size() > MAX_FILES;
+                }
+            };
+
+    /** Files whose changes invalidate an in-memory structure, with the
+     *  action that drops it. */
+    private static final LinkedHashMap<File, Runnable> WATCHED =
+            new LinkedHashMap<>();
+
+    static {
+        WATCHED.put(Paths.COMMIT_INDEX, CommitIndex.INDEX::invalidate);
+        WATCHED.put(Paths.COMMIT_INDEX_TAIL, CommitIndex.INDEX::invalidate);
+        WATCHED.put(Paths.COMMIT_GRAPH, CommitGraph.GRAPH::invalidate);
+        WATCHED.put(Paths.CHANGED_PATHS, ChangedPaths.FILTERS::invalidate);
+        WATCHED.put(Utils.join(Paths.COMMITS, ObjectStore.PACK_DIR),
+                ObjectStore.COMMITS::invalidate);
+        WATCHED.put(Utils.join(Paths.BLOBS, ObjectStore.PACK_DIR),
+                ObjectStore.BLOBS::invalidate);
+        WATCHED.put(Utils.join(Paths.BLOBS, ObjectStore.CHUNK_DIR,
+                ObjectStore.PACK_DIR), ObjectStore.BLOBS.chunks()::invalidate);
+        WATCHED.put(Utils.join(Paths.TREES, ObjectStore.PACK_DIR),
+                ObjectStore.TREES::invalidate);
+        WATCHED.put(Paths.CONFIG, Config::invalidate);
+    }
+
+    /** Stat data of each watched file after the last command. */
+    private static final HashMap<File, Stamp> SETTLED = new HashMap<>();
+
+    /**
+     * Keep state between commands from now on.
+     */
+    static void enable() {
+        _enabled = true;
+    }
+
+    /**
+     * Return the contents of the state file FILE.
+     * @param file state file
+     * @return contents
+     */
+    static byte[] read(File file) {
+        if (!_enabled) {
+            return Utils.readContents(file);
+        }
+        Stamp stamp = Stamp.of(file);
+        synchronized (RepoCache.class) {
+            Entry cached = FILES.get(file);
+            if (cached != null && stamp != null
+                    && cached._stamp.equals(stamp)) {
+                return cached._contents;
+            }
+        }
+        byte[] contents = Utils.readContents(file);
+        if (stamp != null && stamp.equals(Stamp.of(file))) {
+            synchronized (RepoCache.class) {
+                FILES.put(file, new Entry(stamp, contents));
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Drop every in-memory structure whose files changed since the last
+     * call of settle().
+     */
+    static synchronized void revalidate() {
+        for (Map.Entry<File, Runnable> e : WATCHED.entrySet()) {
+            if (!Objects.equals(SETTLED.get(e.getKey()),
+                    Stamp.of(e.getKey()))) {
+                e.getValue().run();
+            }
+        }
+    }
+
+    /**
+     * Record the stat data of the watched files at the end of a command.
+     */
+    static synchronized void settle() {
+        for (File file : WATCHED.keySet()) {
+            SETTLED.put(file, Stamp.of(file));
+        }
+    }
+
+    /**
+     * Drop everything, as after a command that failed part way.
+     */
+    static synchronized void clear() {
+        FILES.clear();
+        SETTLED.clear();
+        for (Runnable invalidate : WATCHED.values()) {
+            invalidate.run();
+        }
+    }
+
+    /** A cached state file. */
+    private static class Entry {
+        /** Stat data of the file when it was read. */
+        private final Stamp _stamp;
+        /** Its contents. */
+        private final byte[] _contents;
+
+        /**
+         * CONTENTS, read from a file with stat data STAMP.
+         * @param stamp stat data
+         * @param contents contents
+         */
+        Entry(Stamp stamp, byte[] contents) {
+            _stamp = stamp;
+            _contents = contents;
+        }
+    }
+
+    /** The stat data of a file that tells whether it changed. */
+    private static class Stamp {
+        /** Length. */
+        private final long _size;
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+        /** File key (device and inode), or null. */
+        private final Object _key;
+
+        /**
+         * Stat data SIZE, MTIME and KEY.
+         * @param size length
+         * @param mtime modification time
+         * @param key file key
+         */
+        Stamp(long size, long mtime, Object key) {
+            _size = size;
+            _mtime = mtime;
+            _key = key;
+        }
+
+        /**
+         * Return the stat data of FILE, or null if it does not exist.
+         * @param file file or directory
+         * @return stamp
+         */
+        static Stamp of(File file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        file.toPath(), BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                return new Stamp(attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        attrs.fileKey());
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) obj;
+            return _size == other._size && _mtime == other._mtime
+                    && Objects.equals(_key, other._key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_size, _mtime, _key);
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class Repository {
         Paths.HEAD.createNewFile();
         Paths.COMMITS.mkdir();
         Paths.BLOBS.mkdir();
+        Paths.TREES.mkdir();
 
         Paths.STAGEDFORADD.createNewFile();
         Paths.STAGEDFORREMOVE.createNewFile();
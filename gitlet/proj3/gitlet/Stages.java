@@ -3,6 +3,8 @@ package gitlet;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * the stages class.
@@ -13,7 +15,7 @@ public class Stages implements Serializable {
      * Mappings of filenames to their blobs.
      * These filenames are staged for addition.
      */
-    private HashMap<String, String> _addStageMap;
+    private HashMap<String, ObjectId> _addStageMap;
 
     /**
      * Filenames that are staged for deletion.
@@ -24,7 +26,7 @@ public class Stages implements Serializable {
      * Initial commit constructor.
      **/
     Stages() {
-        this._addStageMap = new HashMap<String, String>();
+        this._addStageMap = new HashMap<String, ObjectId>();
         this._removeStageSet = new HashSet<String>();
         serializeAddStage();
         serializeRemoveStage();
@@ -34,21 +36,94 @@ public class Stages implements Serializable {
      * Serialize the addition stage.
      */
     private void serializeAddStage() {
-        Utils.writeObject(Paths.STAGEDFORADD, _addStageMap);
+        Utils.writeContents(Paths.STAGEDFORADD, encodeAddStage(_addStageMap));
     }
 
     /**
      * Serialize the removal stage.
      */
     private void serializeRemoveStage() {
-        Utils.writeObject(Paths.STAGEDFORREMOVE, _removeStageSet);
+        Utils.writeContents(Paths.STAGEDFORREMOVE,
+                encodeRemoveStage(_removeStageSet));
+    }
+
+    /**
+     * Return the binary encoding of the addition stage MAP.
+     * @param map filenames to blob ids
+     * @return encoded bytes
+     */
+    static byte[] encodeAddStage(Map<String, ObjectId> map) {
+        Codec.Writer out = new Codec.Writer(Codec.ADD_STAGE);
+        out.varint(map.size());
+        for (Map.Entry<String, ObjectId> e : map.entrySet()) {
+            out.string(e.getKey()).id(e.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the addition stage stored as BYTES, in binary or legacy form.
+     * @param bytes stored bytes
+     * @return filenames to blob ids
+     */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, ObjectId> decodeAddStage(byte[] bytes) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        if (Codec.isLegacy(bytes)) {
+            HashMap<String, String> legacy =
+                    Utils.deserialize(bytes, HashMap.class);
+            for (Map.Entry<String, String> e : legacy.entrySet()) {
+                result.put(e.getKey(), ObjectId.fromHex(e.getValue()));
+            }
+            return result;
+        }
+        Codec.Reader in = new Codec.Reader(bytes, Codec.ADD_STAGE);
+        int n = in.length();
+        for (int i = 0; i < n; i += 1) {
+            String filename = in.string();
+            result.put(filename, in.objectId());
+        }
+        return result;
+    }
+
+    /**
+     * Return the binary encoding of the removal stage SET.
+     * @param set filenames
+     * @return encoded bytes
+     */
+    static byte[] encodeRemoveStage(Set<String> set) {
+        Codec.Writer out = new Codec.Writer(Codec.REMOVE_STAGE);
+        out.varint(set.size());
+        for (String filename : set) {
+            out.string(filename);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the removal stage stored as BYTES, in binary or legacy form.
+     * @param bytes stored bytes
+     * @return filenames
+     */
+    @SuppressWarnings("unchecked")
+    static HashSet<String> decodeRemoveStage(byte[] bytes) {
+        if (Codec.isLegacy(bytes)) {
+            return Utils.deserialize(bytes, HashSet.class);
+        }
+        Codec.Reader in = new Codec.Reader(bytes, Codec.REMOVE_STAGE);
+        int n = in.length();
+        HashSet<String> result = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(in.string());
+        }
+        return result;
     }
 
     /**
      * stage map.
      * @return add stage map
      */
-    public HashMap<String, String> getAddStageMap() {
+    public HashMap<String, ObjectId> getAddStageMap() {
         return _addStageMap;
     }
 
@@ -63,9 +138,9 @@ public class Stages implements Serializable {
     /**
      * add stage map.
      * @param key string
-     * @param value string
+     * @param value blob id
      */
-    public void putAddStageMap(String key, String value) {
+    public void putAddStageMap(String key, ObjectId value) {
         this._addStageMap.put(key, value);
         serializeAddStage();
     }
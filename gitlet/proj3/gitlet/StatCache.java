@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A git-style index of the working tree: for each file whose blob id is
+ * known it records the file's size, modification time and inode at the
+ * time it was hashed or written.  A file whose stat data still match its
+ * entry is assumed unchanged and is not rehashed.
+ *
+ * As in git, an entry whose modification time is not older than the
+ * index file's own modification time is "racily clean": the file may
+ * have changed within the timestamp granularity after being hashed, so
+ * it is always rehashed.  Both times come from the same filesystem clock
+ * at the same granularity, which the host's clock would not.
+ *
+ * Lookups and updates may come from several threads at once; files are
+ * hashed and stat'ed outside the lock.
+ * @author Joshua Park
+ */
+class StatCache {
+
+    /** Magic number at the start of the index file ("GSTC"). */
+    static final int MAGIC = 0x47535443;
+
+    /** Version of the index format. */
+    static final int VERSION = 2;
+
+    /** The index file. */
+    private final File _file;
+
+    /** Entries by filename. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+
+    /** Modification time of the index file, in nanoseconds. */
+    private long _writeTime;
+
+    /** True if entries changed since the index was read. */
+    private boolean _dirty;
+
+    /**
+     * The stat cache kept in FILE, read if it exists.
+     * @param file index file
+     */
+    StatCache(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                _dirty = true;
+                return;
+            }
+            _writeTime = mtime(file);
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long inode = in.readLong();
+                byte[] id = new byte[Pack.ID_BYTES];
+                in.readFully(id);
+                _entries.put(name, new Entry(size, mtime, inode,
+                        ObjectId.fromRaw(id)));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Return the blob id of the working file FILE, tracked as FILENAME,
+     * rehashing it only if its stat data changed since it was cached.
+     * @param file working file
+     * @param filename tracked name
+     * @return blob id
+     */
+    ObjectId blobId(File file, String filename) {
+        Entry stat = stat(file);
+        synchronized (this) {
+            Entry cached = _entries.get(filename);
+            if (cached != null && cached.sameStat(stat)
+                    && cached._mtime < _writeTime) {
+                return cached._id;
+            }
+        }
+        ObjectId id = Blob.hash(file, filename);
+        synchronized (this) {
+            _entries.put(filename, new Entry(stat._size, stat._mtime,
+                    stat._inode, id));
+            _dirty = true;
+        }
+        return id;
+    }
+
+    /**
+     * Record that FILE, tracked as FILENAME, now holds blob ID, as after
+     * checking it out.
+     * @param file working file
+     * @param filename tracked name
+     * @param id blob id
+     */
+    void update(File file, String filename, ObjectId id) {
+        Entry stat = stat(file);
+        synchronized (this) {
+            _entries.put(filename, new Entry(stat._size, stat._mtime,
+                    stat._inode, id));
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Forget FILENAME.
+     * @param filename tracked name
+     */
+    synchronized void remove(String filename) {
+        if (_entries.remove(filename) != null) {
+            _dirty = true;
+        }
+    }
+
+    /**
+     * Write the index file if any entry changed, replacing the old file
+     * atomically.
+     */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry._size);
+                out.writeLong(entry._mtime);
+                out.writeLong(entry._inode);
+                out.write(entry._id.toRaw());
+            }
+            out.close();
+            File tmp = File.createTempFile("tmp-", null,
+                    _file.getParentFile());
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Utils.rename(tmp, _file);
+            _writeTime = mtime(_file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /**
+     * Return the modification time of FILE in nanoseconds.
+     * @param file a file
+     * @return nanoseconds since the epoch
+     * @throws IOException on failure
+     */
+    private static long mtime(File file) throws IOException {
+        return Files.getLastModifiedTime(file.toPath())
+                .to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the stat data of FILE, with no id.
+     * @param file working file
+     * @return stat data
+     */
+    private static Entry stat(File file) {
+        try {
+            Map<String, Object> attrs;
+            long inode = 0;
+            try {
+                attrs = Files.readAttributes(file.toPath(),
+                        "unix:size,lastModifiedTime,ino");
+                inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException excp) {
+                attrs = Files.readAttributes(file.toPath(),
+                        "size,lastModifiedTime");
+            }
+            return new Entry((Long) attrs.get("size"),
+                    ((FileTime) attrs.get("lastModifiedTime"))
+                            .to(TimeUnit.NANOSECONDS), inode, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cached stat data and blob id of one file. */
+    private static class Entry {
+        /** File size in bytes. */
+        private final long _size;
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+        /** Inode number, or 0 where unavailable. */
+        private final long _inode;
+        /** Blob id of the contents. */
+        private final ObjectId _id;
+
+        /**
+         * An entry.
+         * @param size size
+         * @param mtime modification time
+         * @param inode inode
+         * @param id blob id
+         */
+        Entry(long size, long mtime, long inode, ObjectId id) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _id = id;
+        }
+
+        /**
+         * Return whether OTHER has the same stat data as this entry.
+         * @param other stat data
+         * @return true if unchanged
+         */
+        boolean sameStat(Entry other) {
+            return _size == other._size && _mtime == other._mtime
+                    && _inode == other._inode;
+        }
+    }
+}
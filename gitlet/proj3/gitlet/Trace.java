@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-command tracing: the time each command spends in each phase, and
+ * counts of the work it does, printed to standard error when it ends.
+ * Tracing is on for a command run as "gitlet --trace COMMAND ...", or
+ * with --trace=json for a JSON record instead of a summary line, or
+ * with the environment variable GITLET_TRACE set to 1 or json.
+ *
+ * The phases are the I/O and hashing entry points of Utils, the object
+ * stores and Blob: listing directories, reading and writing files and
+ * objects, hashing, and decoding commits, trees and serialized objects.
+ * Each is timed with a Span opened around it.  Spans nest, and time is
+ * charged to the innermost one, so that the phases never overlap; what
+ * no span covers is "other".  Spans opened on worker threads are
+ * counted too, so the phases of a parallel checkout may add up to more
+ * than the wall time.  When tracing is off, opening a span reads one
+ * volatile field and returns a shared span that does nothing.
+ * @author Joshua Park
+ */
+class Trace {
+
+    /** Environment variable that turns tracing on. */
+    static final String ENV = "GITLET_TRACE";
+
+    /** Option that turns tracing on. */
+    static final String OPTION = "--trace";
+
+    /** Phase: listing directories. */
+    static final int LIST = 0;
+
+    /** Phase: reading files and objects. */
+    static final int READ = 1;
+
+    /** Phase: writing files and objects. */
+    static final int WRITE = 2;
+
+    /** Phase: computing SHA-1 ids. */
+    static final int HASH = 3;
+
+    /** Phase: decoding commits, trees and serialized objects. */
+    static final int DECODE = 4;
+
+    /** Names of the phases. */
+    private static final String[] PHASES = {
+        "list", "read", "write", "hash", "decode"
+    };
+
+    /** Counter: objects read from the object stores. */
+    static final int OBJECTS_READ = 0;
+
+    /** Counter: objects written to the object stores. */
+    static final int OBJECTS_WRITTEN = 1;
+
+    /** Counter: bytes read by Utils, the object stores and Blob. */
+    static final int BYTES_READ = 2;
+
+    /** Counter: bytes written by Utils and the object stores. */
+    static final int BYTES_WRITTEN = 3;
+
+    /** Counter: SHA-1 ids computed. */
+    static final int SHA1 = 4;
+
+    /** Counter: plainFilenamesIn calls. */
+    static final int LISTINGS = 5;
+
+    /** JSON names of the counters. */
+    private static final String[] COUNTERS = {
+        "objectsRead", "objectsWritten", "bytesRead", "bytesWritten",
+        "sha1", "plainFilenamesIn"
+    };
+
+    /** Nanoseconds per millisecond. */
+    private static final double MS = 1e6;
+
+    /** The span returned when tracing is off. */
+    private static final Span NONE = new Span(-1, null, 0);
+
+    /** Innermost open span of each thread. */
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    /** Nanoseconds spent in each phase. */
+    private static final AtomicLongArray NANOS =
+            new AtomicLongArray(PHASES.length);
+
+    /** Value of each counter. */
+    private static final AtomicLongArray COUNTS =
+            new AtomicLongArray(COUNTERS.length);
+
+    /** True while a command is traced. */
+    private static volatile boolean _on;
+
+    /** True if the record is JSON rather than a summary line. */
+    private static boolean _json;
+
+    /** The traced command. */
+    private static String _command;
+
+    /** Time the traced command started, from System.nanoTime. */
+    private static long _start;
+
+    /**
+     * Return ARGS, preceded by the trace option that GITLET_TRACE asks
+     * for, if it is set and ARGS does not start with one.
+     * @param args command line
+     * @return command line
+     */
+    static String[] fromEnvironment(String... args) {
+        String env = System.getenv(ENV);
+        if (env == null || env.isEmpty() || env.equals("0")
+                || args.length > 0 && args[0].startsWith(OPTION)) {
+            return args;
+        }
+        String[] result = new String[args.length + 1];
+        result[0] = env.equalsIgnoreCase("json") ? OPTION + "=json"
+                : OPTION;
+        System.arraycopy(args, 0, result, 1, args.length);
+        return result;
+    }
+
+    /**
+     * Start tracing the command in ARGS if ARGS starts with a trace
+     * option, and return ARGS without it.
+     * @param args command line
+     * @return command and operands
+     */
+    static String[] start(String... args) {
+        _on = false;
+        if (args.length == 0 || !args[0].startsWith(OPTION)) {
+            return args;
+        }
+        String option = args[0];
+        if (!option.equals(OPTION) && !option.equals(OPTION + "=json")) {
+            return args;
+        }
+        args = Arrays.copyOfRange(args, 1, args.length);
+        for (int i = 0; i < PHASES.length; i += 1) {
+            NANOS.set(i, 0);
+        }
+        for (int i = 0; i < COUNTERS.length; i += 1) {
+            COUNTS.set(i, 0);
+        }
+        _json = option.endsWith("=json");
+        _command = args.length > 0 ? args[0] : "";
+        _start = System.nanoTime();
+        _on = true;
+        return args;
+    }
+
+    /**
+     * Return whether a command is being traced.
+     * @return true if tracing is on
+     */
+    static boolean isOn() {
+        return _on;
+    }
+
+    /**
+     * Open a span of PHASE on this thread; close it when the phase ends.
+     * @param phase LIST, READ, WRITE, HASH or DECODE
+     * @return the span
+     */
+    static Span begin(int phase) {
+        if (!_on) {
+            return NONE;
+        }
+        long now = System.nanoTime();
+        Span outer = CURRENT.get();
+        if (outer != null) {
+            NANOS.addAndGet(outer._phase, now - outer._start);
+        }
+        Span result = new Span(phase, outer, now);
+        CURRENT.set(result);
+        return result;
+    }
+
+    /**
+     * Add N to COUNTER, if tracing is on.
+     * @param counter OBJECTS_READ, ..., or LISTINGS
+     * @param n amount
+     */
+    static void count(int counter, long n) {
+        if (_on) {
+            COUNTS.addAndGet(counter, n);
+        }
+    }
+
+    /**
+     * Print the record of the traced command, which ends with STATUS,
+     * and stop tracing.  Does nothing if tracing is off.
+     * @param status exit status
+     */
+    static void finish(int status) {
+        if (!_on) {
+            return;
+        }
+        _on = false;
+        long total = System.nanoTime() - _start;
+        long other = total;
+        for (int i = 0; i < PHASES.length; i += 1) {
+            other -= NANOS.get(i);
+        }
+        other = Math.max(other, 0);
+        Formatter out = new Formatter(Locale.ROOT);
+        if (_json) {
+            out.format("{\"command\":\"%s\",\"status\":%d,\"ms\":%.3f,"
+                    + "\"phases\":{", json(_command), status, total / MS);
+            for (int i = 0; i < PHASES.length; i += 1) {
+                out.format("\"%s\":%.3f,", PHASES[i], NANOS.get(i) / MS);
+            }
+            out.format("\"other\":%.3f}", other / MS);
+            for (int i = 0; i < COUNTERS.length; i += 1) {
+                out.format(",\"%s\":%d", COUNTERS[i], COUNTS.get(i));
+            }
+            out.format("}");
+        } else {
+            out.format("trace: %s %.1f ms (", _command, total / MS);
+            for (int i = 0; i < PHASES.length; i += 1) {
+                out.format("%s %.1f, ", PHASES[i], NANOS.get(i) / MS);
+            }
+            out.format("other %.1f); objects %d read, %d written; bytes %d "
+                    + "read, %d written; sha1 %d; plainFilenamesIn %d",
+                    other / MS, COUNTS.get(OBJECTS_READ),
+                    COUNTS.get(OBJECTS_WRITTEN), COUNTS.get(BYTES_READ),
+                    COUNTS.get(BYTES_WRITTEN), COUNTS.get(SHA1),
+                    COUNTS.get(LISTINGS));
+        }
+        System.err.println(out);
+    }
+
+    /**
+     * Return S with the characters JSON strings must escape escaped.
+     * @param s string
+     * @return escaped string
+     */
+    private static String json(String s) {
+        StringBuilder result = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** The time one thread spends in one phase, from begin to close. */
+    static final class Span implements AutoCloseable {
+        /** The phase, or -1 for NONE. */
+        private final int _phase;
+        /** The span open on this thread when this one was opened. */
+        private final Span _outer;
+        /** Time this span last became the innermost one. */
+        private long _start;
+
+        /**
+         * A span of PHASE inside OUTER, innermost from START.
+         * @param phase phase
+         * @param outer enclosing span or null
+         * @param start System.nanoTime
+         */
+        private Span(int phase, Span outer, long start) {
+            _phase = phase;
+            _outer = outer;
+            _start = start;
+        }
+
+        /**
+         * End this span: charge its time to its phase, and make the
+         * enclosing span the innermost one again.
+         */
+        @Override
+        public void close() {
+            if (this == NONE) {
+                return;
+            }
+            long now = System.nanoTime();
+            NANOS.addAndGet(_phase, now - _start);
+            CURRENT.set(_outer);
+            if (_outer != null) {
+                _outer._start = now;
+            }
+        }
+    }
+}
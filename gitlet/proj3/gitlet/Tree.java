@@ -0,0 +1,1004 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The contents of one directory of a commit, as in git: each entry names
+ * a file, with its blob id, or a subdirectory, with the id of its tree.
+ * A tree's id is the SHA-1 of its encoding, so it is derived from the
+ * ids of its children, and two commits that share a subdirectory share
+ * its tree.  Changing a file rewrites only the trees on its path, and
+ * two trees are compared without descending into subtrees whose ids are
+ * equal.
+ *
+ * Trees are also the in-memory form of a commit's files.  A tree read
+ * from the store is immutable, and each of its entries keeps the subtree
+ * it names once that is read, so the trees of successive commits form a
+ * persistent map: a commit shares every unchanged subtree, in memory,
+ * with its parent.  state() gives a read-only Map view of it, so no
+ * commit's files are ever copied into a map of their own.
+ *
+ * A directory of more than MAX_ENTRIES entries is split into parts, so
+ * that changing one file rewrites and hashes a few bounded trees rather
+ * than the whole directory.  Its entries, in name order, are cut before
+ * every name whose hash is 0 modulo FANOUT, and each run is stored as a
+ * part: a tree of its own, named in the directory's tree by a PART entry
+ * holding its first name and its number of entries.  If there is more
+ * than one part, the PART entries are cut the same way, with another
+ * hash, and so on up to a single tree.  Where the cuts fall depends only
+ * on the names, so a directory has one shape, and one id, however it was
+ * reached, and an update recuts only the parts around the names it
+ * changes.
+ *
+ * Paths are relative to the working directory, with '/' between
+ * components.  Empty directories are not tracked: a tree left with no
+ * entries is removed from its parent.
+ *
+ * Encoding: a Codec record of type TREE holding the entry count, then
+ * for each entry in name order its name, its kind (FILE, DIR or PART),
+ * for a PART its number of entries, and its id.
+ * @author Joshua Park
+ */
+class Tree {
+
+    /** Kind of an entry naming a file. */
+    static final int FILE = 0;
+
+    /** Kind of an entry naming a subdirectory. */
+    static final int DIR = 1;
+
+    /** Kind of an entry naming a part of a split directory. */
+    static final int PART = 2;
+
+    /** Most entries of a directory kept in a single tree. */
+    static final int MAX_ENTRIES = 256;
+
+    /** Mean number of entries of a part of a split directory. */
+    static final int FANOUT = 64;
+
+    /** Seed of the hash that cuts the entries of the lowest parts. */
+    private static final int SPLIT_SEED = 0x5bd1e995;
+
+    /** Most trees kept in CACHE. */
+    static final int CACHE_TREES = 1 << 14;
+
+    /** Recently read trees by id, least recently used first.  Trees are
+     *  immutable, so a cached one is never stale. */
+    private static final LinkedHashMap<String, Tree> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Tree> eldest) {
+                    return size() > CACHE_TREES;
+                }
+            };
+
+    /** Id of the tree with no entries. */
+    static final String EMPTY = new Tree(new TreeMap<>()).id();
+
+    /** Entries by name. */
+    private final TreeMap<String, Entry> _entries;
+
+    /** Number of files in this tree and its subtrees, or -1 if not yet
+     *  counted. */
+    private int _files = -1;
+
+    /**
+     * A tree holding ENTRIES.
+     * @param entries entries by name
+     */
+    private Tree(TreeMap<String, Entry> entries) {
+        _entries = entries;
+    }
+
+    /**
+     * Return tree ID.
+     * @param id hex tree id
+     * @return the tree
+     */
+    static Tree read(String id) {
+        return read(ObjectStore.TREES, id);
+    }
+
+    /**
+     * Return tree ID from STORE, which may belong to another repository.
+     * Trees are cached by id alone, since equal ids mean equal trees.
+     * @param store tree store
+     * @param id hex tree id
+     * @return the tree
+     */
+    static Tree read(ObjectStore store, String id) {
+        if (id.equals(EMPTY)) {
+            return new Tree(new TreeMap<>());
+        }
+        synchronized (CACHE) {
+            Tree cached = CACHE.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Tree result = decode(store.read(id));
+        synchronized (CACHE) {
+            CACHE.put(id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Return the id of a tree holding the files of STATE, storing it and
+     * its subtrees.
+     * @param state paths to blob ids
+     * @return hex tree id
+     */
+    static String build(Map<String, ObjectId> state) {
+        return update(EMPTY, new TreeMap<>(state));
+    }
+
+    /**
+     * Return the id of the tree ROOT with CHANGES applied, storing every
+     * new tree.  Each change maps a path to its new blob id, or to null
+     * to remove it.  Only the trees on the paths of CHANGES are read or
+     * written.
+     * @param root hex tree id
+     * @param changes paths to blob ids or null
+     * @return hex tree id
+     */
+    static String update(String root,
+                         SortedMap<String, ObjectId> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        return update(read(root), changes).write();
+    }
+
+    /**
+     * Return ROOT with CHANGES applied, storing every new subtree but not
+     * the result.  Unchanged entries, and the subtrees they hold, are
+     * shared with ROOT.
+     * @param root tree
+     * @param changes paths to blob ids or null
+     * @return the new tree
+     */
+    private static Tree update(Tree root,
+                               SortedMap<String, ObjectId> changes) {
+        changes = new TreeMap<>(changes);
+        TreeMap<String, Entry> edits = new TreeMap<>();
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                checkName(path);
+                ObjectId blob = changes.remove(path);
+                edits.put(path, blob == null ? null : new Entry(FILE, blob));
+                continue;
+            }
+            String name = path.substring(0, slash);
+            checkName(name);
+            SortedMap<String, ObjectId> group =
+                    changes.subMap(name + "/", name + "0");
+            TreeMap<String, ObjectId> sub = new TreeMap<>();
+            for (Map.Entry<String, ObjectId> e : group.entrySet()) {
+                sub.put(e.getKey().substring(slash + 1), e.getValue());
+            }
+            group.clear();
+            Entry old = root.get(name);
+            Tree tree = update(old != null && old._kind == DIR ? old.child()
+                    : read(EMPTY), sub);
+            if (tree._entries.isEmpty()) {
+                edits.put(name, null);
+            } else {
+                Entry dir = new Entry(DIR, ObjectId.fromHex(tree.write()));
+                dir._child = tree;
+                edits.put(name, dir);
+            }
+        }
+        return edit(root, edits);
+    }
+
+    /**
+     * Return the directory ROOT with EDITS applied, storing every new
+     * part but not the result.  Each edit maps a name to its new entry,
+     * or to null to remove it.  Only the parts holding the edited names,
+     * and any part that loses its first name, with the part before it,
+     * are read and cut again; their trees are replaced by editing the
+     * PART entries one level up in the same way.
+     * @param root tree of a directory
+     * @param edits names to entries or null
+     * @return the new tree
+     */
+    private static Tree edit(Tree root, TreeMap<String, Entry> edits) {
+        if (edits.isEmpty()) {
+            return root;
+        }
+        int top = root.height();
+        if (top == 0) {
+            TreeMap<String, Entry> entries = new TreeMap<>(root._entries);
+            apply(entries, edits);
+            return entries.size() <= MAX_ENTRIES ? new Tree(entries)
+                    : top(entries, 0);
+        }
+        TreeMap<String, Tree> parts = affected(root, top, 0, edits);
+        TreeMap<String, Entry> items = new TreeMap<>();
+        int before = 0;
+        for (Tree part : parts.values()) {
+            items.putAll(part._entries);
+            before += part._entries.size();
+        }
+        apply(items, edits);
+        if (root.size() - before + items.size() <= MAX_ENTRIES) {
+            TreeMap<String, Entry> all = new TreeMap<>();
+            root.collect(all);
+            apply(all, edits);
+            return new Tree(all);
+        }
+        for (int h = 0; h < top; h += 1) {
+            if (h > 0) {
+                parts = affected(root, top, h, edits);
+                items = new TreeMap<>();
+                for (Tree part : parts.values()) {
+                    items.putAll(part._entries);
+                }
+                apply(items, edits);
+            }
+            TreeMap<String, Entry> next = new TreeMap<>();
+            for (String first : parts.keySet()) {
+                next.put(first, null);
+            }
+            next.putAll(cut(items, h));
+            edits = next;
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>(root._entries);
+        apply(entries, edits);
+        return top(entries, top);
+    }
+
+    /**
+     * Return the trees at height H, below ROOT of height TOP, that hold
+     * the names of EDITS, and the tree before each one whose first name
+     * EDITS removes, by first name.
+     * @param root tree of a split directory
+     * @param top height of ROOT
+     * @param h height of the trees sought
+     * @param edits names to entries or null
+     * @return trees by first name
+     */
+    private static TreeMap<String, Tree> affected(Tree root, int top, int h,
+            TreeMap<String, Entry> edits) {
+        TreeMap<String, Tree> result = new TreeMap<>();
+        ArrayDeque<Tree> work = new ArrayDeque<>();
+        for (String name : edits.keySet()) {
+            Tree part = part(root, top, h, name, false);
+            if (result.putIfAbsent(part._entries.firstKey(), part) == null) {
+                work.push(part);
+            }
+        }
+        while (!work.isEmpty()) {
+            String first = work.pop()._entries.firstKey();
+            if (edits.containsKey(first) && edits.get(first) == null) {
+                Tree prev = part(root, top, h, first, true);
+                if (result.putIfAbsent(prev._entries.firstKey(), prev)
+                        == null) {
+                    work.push(prev);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the tree at height H, below ROOT of height TOP, that holds
+     * NAME, or if BEFORE, the last name before NAME.  A name before every
+     * other is held by the first tree.
+     * @param root tree of a split directory
+     * @param top height of ROOT
+     * @param h height of the tree sought
+     * @param name name
+     * @param before true to find the tree before NAME
+     * @return the tree
+     */
+    private static Tree part(Tree root, int top, int h, String name,
+                             boolean before) {
+        Tree tree = root;
+        for (int level = top; level > h; level -= 1) {
+            Map.Entry<String, Entry> e = before
+                    ? tree._entries.lowerEntry(name)
+                    : tree._entries.floorEntry(name);
+            tree = (e != null ? e : tree._entries.firstEntry()).getValue()
+                    .child();
+        }
+        return tree;
+    }
+
+    /**
+     * Apply EDITS to ENTRIES.
+     * @param entries entries by name
+     * @param edits names to entries or null
+     */
+    private static void apply(TreeMap<String, Entry> entries,
+                              Map<String, Entry> edits) {
+        for (Map.Entry<String, Entry> e : edits.entrySet()) {
+            if (e.getValue() == null) {
+                entries.remove(e.getKey());
+            } else {
+                entries.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Cut ITEMS, the entries of trees at height H, into parts, storing
+     * each, and return the PART entries naming them.  A part starts at
+     * the first item and at every item that starts(name, H).
+     * @param items entries by name
+     * @param h height of the parts
+     * @return PART entries by first name
+     */
+    private static TreeMap<String, Entry> cut(TreeMap<String, Entry> items,
+                                              int h) {
+        TreeMap<String, Entry> result = new TreeMap<>();
+        TreeMap<String, Entry> part = null;
+        for (Map.Entry<String, Entry> e : items.entrySet()) {
+            if (part == null || starts(e.getKey(), h)) {
+                if (part != null) {
+                    result.put(part.firstKey(), store(part));
+                }
+                part = new TreeMap<>();
+            }
+            part.put(e.getKey(), e.getValue());
+        }
+        if (part != null) {
+            result.put(part.firstKey(), store(part));
+        }
+        return result;
+    }
+
+    /**
+     * Store a part holding ENTRIES and return the PART entry naming it.
+     * @param entries entries by name
+     * @return PART entry
+     */
+    private static Entry store(TreeMap<String, Entry> entries) {
+        Tree part = new Tree(entries);
+        Entry result = new Entry(PART, ObjectId.fromHex(part.write()),
+                part.size());
+        result._child = part;
+        return result;
+    }
+
+    /**
+     * Return the top tree of a directory whose entries at height H are
+     * ITEMS, storing every part below it but not the result.
+     * @param items entries by name
+     * @param h their height
+     * @return the top tree
+     */
+    private static Tree top(TreeMap<String, Entry> items, int h) {
+        while (!oneCut(items, h)) {
+            items = cut(items, h);
+            h += 1;
+        }
+        Tree result = new Tree(items);
+        while (result._entries.size() == 1 && result.isSplit()) {
+            result = result._entries.firstEntry().getValue().child();
+        }
+        return result;
+    }
+
+    /**
+     * Return whether ITEMS, entries at height H, make a single part.
+     * @param items entries by name
+     * @param h their height
+     * @return true if no item after the first starts a part
+     */
+    private static boolean oneCut(TreeMap<String, Entry> items, int h) {
+        for (String name : items.keySet()) {
+            if (!name.equals(items.firstKey()) && starts(name, h)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return whether the entry NAME starts a part at height H.
+     * @param name entry name
+     * @param h height of the part
+     * @return true if a part starts at NAME
+     */
+    private static boolean starts(String name, int h) {
+        int hash = ChangedPaths.murmur3(
+                name.getBytes(StandardCharsets.UTF_8), SPLIT_SEED + h);
+        return Integer.remainderUnsigned(hash, FANOUT) == 0;
+    }
+
+    /**
+     * Return whether this tree is split into parts.
+     * @return true if its entries are PART entries
+     */
+    private boolean isSplit() {
+        return !_entries.isEmpty()
+                && _entries.firstEntry().getValue()._kind == PART;
+    }
+
+    /**
+     * Return the number of levels of parts below this tree.
+     * @return 0 for an unsplit tree
+     */
+    private int height() {
+        int result = 0;
+        for (Tree t = this; t.isSplit();
+             t = t._entries.firstEntry().getValue().child()) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of entries of the directory this tree holds.
+     * @return entry count
+     */
+    private int size() {
+        int result = 0;
+        for (Entry e : _entries.values()) {
+            result += e._kind == PART ? e._size : 1;
+        }
+        return result;
+    }
+
+    /**
+     * Return the entry named NAME of the directory this tree holds, or
+     * null if there is none.
+     * @param name entry name
+     * @return entry or null
+     */
+    private Entry get(String name) {
+        Tree tree = this;
+        while (tree.isSplit()) {
+            Map.Entry<String, Entry> e = tree._entries.floorEntry(name);
+            tree = (e != null ? e : tree._entries.firstEntry()).getValue()
+                    .child();
+        }
+        return tree._entries.get(name);
+    }
+
+    /**
+     * Add the entries of the directory this tree holds to INTO.
+     * @param into entries by name
+     */
+    private void collect(Map<String, Entry> into) {
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            if (e.getValue()._kind == PART) {
+                e.getValue().child().collect(into);
+            } else {
+                into.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Return the blob id of PATH in tree ROOT, or null if it does not
+     * track that file.
+     * @param root hex tree id
+     * @param path file path
+     * @return blob id or null
+     */
+    static ObjectId lookup(String root, String path) {
+        return lookup(read(root), path);
+    }
+
+    /**
+     * Return the blob id of PATH in TREE, or null if it does not track
+     * that file.
+     * @param tree root tree
+     * @param path file path
+     * @return blob id or null
+     */
+    private static ObjectId lookup(Tree tree, String path) {
+        Entry e = entry(tree, path);
+        return e == null || e._kind != FILE ? null : e._id;
+    }
+
+    /**
+     * Return the entry for PATH, a file or directory, in TREE, or null
+     * if there is none.
+     * @param tree root tree
+     * @param path path
+     * @return entry or null
+     */
+    private static Entry entry(Tree tree, String path) {
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            Entry e = tree.get(path.substring(start, slash));
+            if (e == null || e._kind != DIR) {
+                return null;
+            }
+            tree = e.child();
+            start = slash + 1;
+        }
+        return tree.get(path.substring(start));
+    }
+
+    /**
+     * Return whether PATH, a file or directory, differs between trees
+     * FROM and TO: whether it is added, removed, or has another blob or
+     * tree.
+     * @param from hex tree id, or null for no files
+     * @param to hex tree id
+     * @param path path
+     * @return true if PATH changed
+     */
+    static boolean changed(String from, String to, String path) {
+        Entry x = from == null ? null : entry(read(from), path);
+        Entry y = entry(read(to), path);
+        if (x == null || y == null) {
+            return x != y;
+        }
+        return x._kind != y._kind || !x._id.equals(y._id);
+    }
+
+    /**
+     * Return a read-only view of the files of tree ID, mapping each path
+     * to its blob id.  Lookups walk the path; iteration is in path order.
+     * @param id hex tree id
+     * @return paths to blob ids
+     */
+    static Map<String, ObjectId> state(String id) {
+        return new State(read(id));
+    }
+
+    /**
+     * Return the number of files in this tree and its subtrees.
+     * @return file count
+     */
+    private int files() {
+        if (_files < 0) {
+            int n = 0;
+            for (Entry e : _entries.values()) {
+                n += e._kind == FILE ? 1 : e.child().files();
+            }
+            _files = n;
+        }
+        return _files;
+    }
+
+    /**
+     * Call ACTION with the path and blob id of every file of tree ID,
+     * with PREFIX before its path, skipping the subtrees and parts in
+     * SEEN and adding each tree visited to SEEN.
+     * @param id hex tree id
+     * @param prefix path of the tree's directory, ending in '/', or ""
+     * @param seen ids of trees already visited
+     * @param action called on each file
+     */
+    static void walk(String id, String prefix, Set<String> seen,
+                     BiConsumer<String, ObjectId> action) {
+        if (!seen.add(id)) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : read(id)._entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry._kind == FILE) {
+                action.accept(prefix + e.getKey(), entry._id);
+            } else if (entry._kind == DIR) {
+                walk(entry._id.toString(), prefix + e.getKey() + "/", seen,
+                        action);
+            } else {
+                walk(entry._id.toString(), prefix, seen, action);
+            }
+        }
+    }
+
+    /**
+     * Call FILES with the name and blob id of each file of tree ID, DIRS
+     * with the name and tree id of each of its subdirectories, and PARTS
+     * with the tree id of each of its parts.
+     * @param id hex tree id
+     * @param files called on each file entry
+     * @param dirs called on each subdirectory entry
+     * @param parts called on each part
+     */
+    static void list(String id, BiConsumer<String, ObjectId> files,
+                     BiConsumer<String, String> dirs,
+                     Consumer<String> parts) {
+        list(ObjectStore.TREES, id, files, dirs, parts);
+    }
+
+    /**
+     * Call FILES, DIRS and PARTS on the entries of tree ID in STORE, as
+     * list(ID, FILES, DIRS, PARTS) does.
+     * @param store tree store
+     * @param id hex tree id
+     * @param files called on each file entry
+     * @param dirs called on each subdirectory entry
+     * @param parts called on each part
+     */
+    static void list(ObjectStore store, String id,
+                     BiConsumer<String, ObjectId> files,
+                     BiConsumer<String, String> dirs,
+                     Consumer<String> parts) {
+        for (Map.Entry<String, Entry> e
+                 : read(store, id)._entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry._kind == FILE) {
+                files.accept(e.getKey(), entry._id);
+            } else if (entry._kind == DIR) {
+                dirs.accept(e.getKey(), entry._id.toString());
+            } else {
+                parts.accept(entry._id.toString());
+            }
+        }
+    }
+
+    /**
+     * Add to INTO every file whose blob differs between trees FROM and
+     * TO, mapped to its blob id in TO, or to null if TO does not track
+     * it.  Subtrees with equal ids are skipped.
+     * @param from hex tree id, or null for no files
+     * @param to hex tree id
+     * @param into paths to blob ids or null
+     */
+    static void diff(String from, String to, Map<String, ObjectId> into) {
+        diff(from, to, "", into);
+    }
+
+    /**
+     * Add to INTO the differences between trees FROM and TO, either of
+     * which may be null, with PREFIX before their paths.  Of split
+     * directories, only the parts that are not in both are read.
+     * @param from hex tree id or null
+     * @param to hex tree id or null
+     * @param prefix path of the trees' directory, ending in '/', or ""
+     * @param into paths to blob ids or null
+     */
+    private static void diff(String from, String to, String prefix,
+                             Map<String, ObjectId> into) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        LinkedHashMap<String, Entry> fromParts = leaves(from);
+        LinkedHashMap<String, Entry> toParts = leaves(to);
+        TreeMap<String, Entry> a = new TreeMap<>();
+        TreeMap<String, Entry> b = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : fromParts.entrySet()) {
+            if (!toParts.containsKey(e.getKey())) {
+                a.putAll(e.getValue().child()._entries);
+            }
+        }
+        for (Map.Entry<String, Entry> e : toParts.entrySet()) {
+            if (!fromParts.containsKey(e.getKey())) {
+                b.putAll(e.getValue().child()._entries);
+            }
+        }
+        TreeMap<String, Entry> names = new TreeMap<>(a);
+        names.putAll(b);
+        for (String name : names.keySet()) {
+            Entry x = a.get(name), y = b.get(name);
+            String path = prefix + name;
+            String xDir = x != null && x._kind == DIR ? x._id.toString()
+                    : null;
+            String yDir = y != null && y._kind == DIR ? y._id.toString()
+                    : null;
+            ObjectId xFile = x != null && x._kind == FILE ? x._id : null;
+            ObjectId yFile = y != null && y._kind == FILE ? y._id : null;
+            if (xDir != null || yDir != null) {
+                diff(xDir, yDir, path + "/", into);
+            }
+            if ((xFile != null || yFile != null)
+                    && (xFile == null || !xFile.equals(yFile))) {
+                into.put(path, yFile);
+            }
+        }
+    }
+
+    /**
+     * Return the unsplit trees that hold the entries of the directory
+     * whose tree is ID, by id, each as an entry naming it, without
+     * reading them.
+     * @param id hex tree id, or null for no entries
+     * @return entries naming unsplit trees, by tree id
+     */
+    private static LinkedHashMap<String, Entry> leaves(String id) {
+        LinkedHashMap<String, Entry> result = new LinkedHashMap<>();
+        if (id == null) {
+            return result;
+        }
+        Tree root = read(id);
+        if (root.isSplit()) {
+            leaves(root, root.height(), result);
+        } else {
+            Entry e = new Entry(PART, ObjectId.fromHex(id), root.size());
+            e._child = root;
+            result.put(id, e);
+        }
+        return result;
+    }
+
+    /**
+     * Add to INTO the PART entries of the unsplit trees below TREE, of
+     * height H, by id.
+     * @param tree a split tree
+     * @param h its height
+     * @param into entries naming unsplit trees, by tree id
+     */
+    private static void leaves(Tree tree, int h, Map<String, Entry> into) {
+        for (Entry e : tree._entries.values()) {
+            if (h == 1) {
+                into.put(e._id.toString(), e);
+            } else {
+                leaves(e.child(), h - 1, into);
+            }
+        }
+    }
+
+    /**
+     * Store this tree, if it is not already stored, and return its id.
+     * @return hex tree id
+     */
+    private String write() {
+        byte[] bytes = encode();
+        String id = Utils.sha1(bytes);
+        if (!Paths.TREES.isDirectory()) {
+            Paths.TREES.mkdir();
+        }
+        ObjectStore.TREES.write(id, bytes);
+        synchronized (CACHE) {
+            CACHE.put(id, this);
+        }
+        return id;
+    }
+
+    /**
+     * Return the id of this tree, without storing it.
+     * @return hex tree id
+     */
+    private String id() {
+        return Utils.sha1(encode());
+    }
+
+    /**
+     * Return the encoding of this tree.
+     * @return encoded bytes
+     */
+    private byte[] encode() {
+        Codec.Writer out = new Codec.Writer(Codec.TREE);
+        out.varint(_entries.size());
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            Entry entry = e.getValue();
+            out.string(e.getKey()).varint(entry._kind);
+            if (entry._kind == PART) {
+                out.varint(entry._size);
+            }
+            out.id(entry._id);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return whether NAME may name an entry of a tree: it is not empty,
+     * "." or "..", holds no separator, and is not the .gitlet directory,
+     * so that checking out a tree never writes outside the working tree
+     * or into the repository.
+     * @param name entry name
+     * @return true if valid
+     */
+    static boolean validName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') < 0
+                && name.indexOf(File.separatorChar) < 0
+                && !name.equals(Paths.GITLET.getName());
+    }
+
+    /**
+     * Throw IllegalArgumentException unless NAME is a valid entry name.
+     * @param name entry name
+     */
+    private static void checkName(String name) {
+        if (!validName(name)) {
+            throw new IllegalArgumentException("bad tree entry name "
+                    + name);
+        }
+    }
+
+    /**
+     * Return the tree encoded in BYTES.
+     * @param bytes encoded tree
+     * @return the tree
+     */
+    private static Tree decode(byte[] bytes) {
+        try (Trace.Span span = Trace.begin(Trace.DECODE)) {
+            Codec.Reader in = new Codec.Reader(bytes, Codec.TREE);
+            int n = in.length();
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            for (int i = 0; i < n; i += 1) {
+                String name = in.string();
+                checkName(name);
+                int kind = (int) in.varint();
+                if (kind != FILE && kind != DIR && kind != PART) {
+                    throw new IllegalArgumentException("bad tree entry kind "
+                            + kind);
+                }
+                long size = kind == PART ? in.varint() : 0;
+                if (size < 0 || size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("bad part size "
+                            + size);
+                }
+                entries.put(name, new Entry(kind, in.objectId(),
+                        (int) size));
+            }
+            return new Tree(entries);
+        }
+    }
+
+    /** One entry of a tree. */
+    private static class Entry {
+        /** FILE, DIR or PART. */
+        private final int _kind;
+        /** Blob or tree id. */
+        private final ObjectId _id;
+        /** Number of entries of a PART. */
+        private final int _size;
+        /** The subtree of a DIR entry or tree of a PART, once read. */
+        private Tree _child;
+
+        /**
+         * An entry of kind KIND for object ID.
+         * @param kind FILE or DIR
+         * @param id object id
+         */
+        Entry(int kind, ObjectId id) {
+            this(kind, id, 0);
+        }
+
+        /**
+         * An entry of kind KIND for object ID, holding SIZE entries if it
+         * is a PART.
+         * @param kind FILE, DIR or PART
+         * @param id object id
+         * @param size entries of a PART
+         */
+        Entry(int kind, ObjectId id, int size) {
+            _kind = kind;
+            _id = id;
+            _size = size;
+        }
+
+        /**
+         * Return the tree of this DIR or PART entry, reading it on first
+         * use.
+         * Trees are immutable, so threads that race here read equal trees.
+         * @return the subtree
+         */
+        Tree child() {
+            Tree child = _child;
+            if (child == null) {
+                child = read(_id.toString());
+                _child = child;
+            }
+            return child;
+        }
+    }
+
+    /** The files of a tree as a read-only map from path to blob id. */
+    private static class State extends AbstractMap<String, ObjectId> {
+        /** Root tree. */
+        private final Tree _root;
+
+        /**
+         * The files of ROOT.
+         * @param root root tree
+         */
+        State(Tree root) {
+            _root = root;
+        }
+
+        @Override
+        public ObjectId get(Object path) {
+            return path instanceof String ? lookup(_root, (String) path)
+                    : null;
+        }
+
+        @Override
+        public boolean containsKey(Object path) {
+            return get(path) != null;
+        }
+
+        @Override
+        public int size() {
+            return _root.files();
+        }
+
+        @Override
+        public Set<Map.Entry<String, ObjectId>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, ObjectId>> iterator() {
+                    return new Files(_root);
+                }
+
+                @Override
+                public int size() {
+                    return _root.files();
+                }
+            };
+        }
+    }
+
+    /** An iterator over the files of a tree, in path order. */
+    private static class Files
+            implements Iterator<Map.Entry<String, ObjectId>> {
+        /** Entry iterators of the trees being walked, innermost first. */
+        private final ArrayDeque<Iterator<Map.Entry<String, Entry>>> _walk =
+                new ArrayDeque<>();
+        /** Path prefixes of the trees being walked, innermost first. */
+        private final ArrayDeque<String> _prefixes = new ArrayDeque<>();
+        /** The next file, or null if there are no more. */
+        private Map.Entry<String, ObjectId> _next;
+
+        /**
+         * An iterator over the files of ROOT.
+         * @param root root tree
+         */
+        Files(Tree root) {
+            _walk.push(root._entries.entrySet().iterator());
+            _prefixes.push("");
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next != null;
+        }
+
+        @Override
+        public Map.Entry<String, ObjectId> next() {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, ObjectId> result = _next;
+            advance();
+            return result;
+        }
+
+        /**
+         * Find the next file, descending into subtrees and leaving the
+         * trees that are done.
+         */
+        private void advance() {
+            _next = null;
+            while (_next == null && !_walk.isEmpty()) {
+                if (!_walk.peek().hasNext()) {
+                    _walk.pop();
+                    _prefixes.pop();
+                    continue;
+                }
+                Map.Entry<String, Entry> e = _walk.peek().next();
+                String path = _prefixes.peek() + e.getKey();
+                Entry entry = e.getValue();
+                if (entry._kind == FILE) {
+                    _next = new AbstractMap.SimpleImmutableEntry<>(path,
+                            entry._id);
+                } else if (entry._kind == PART) {
+                    _walk.push(entry.child()._entries.entrySet().iterator());
+                    _prefixes.push(_prefixes.peek());
+                } else {
+                    _walk.push(entry.child()._entries.entrySet().iterator());
+                    _prefixes.push(path + "/");
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -11,11 +12,13 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -32,7 +35,14 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
+        return toHex(sha1Bytes(vals));
+    }
+
+    /** Returns the raw 20-byte SHA-1 hash of the concatenation of VALS,
+     *  which may be any mixture of byte arrays and Strings. */
+    static byte[] sha1Bytes(Object... vals) {
+        Trace.count(Trace.SHA1, 1);
+        try (Trace.Span span = Trace.begin(Trace.HASH)) {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
@@ -43,11 +53,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return md.digest();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -59,6 +65,59 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Values of the hexadecimal digits, indexed by character; -1 for
+     *  other characters. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    /** Returns the lower-case hexadecimal digit of value V. */
+    static char hexDigit(int v) {
+        return HEX_DIGITS[v];
+    }
+
+    /** Returns the value of hexadecimal digit C, or -1 if C is not one. */
+    static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    /** Returns the bytes denoted by the even-length hexadecimal numeral
+     *  HEX.  Throws IllegalArgumentException if HEX is malformed. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("odd-length hex string");
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = hexValue(hex.charAt(2 * i));
+            int lo = hexValue(hex.charAt(2 * i + 1));
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("bad hex digit");
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -93,8 +152,10 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
-        try {
-            return Files.readAllBytes(file.toPath());
+        try (Trace.Span span = Trace.begin(Trace.READ)) {
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.BYTES_READ, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,7 +173,7 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
-        try {
+        try (Trace.Span span = Trace.begin(Trace.WRITE)) {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
@@ -120,11 +181,10 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                Trace.count(Trace.BYTES_WRITTEN, bytes.length);
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
@@ -136,7 +196,7 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
+        try (Trace.Span span = Trace.begin(Trace.DECODE)) {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
@@ -148,6 +208,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (Trace.Span span = Trace.begin(Trace.DECODE)) {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -168,7 +245,11 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
+        Trace.count(Trace.LISTINGS, 1);
+        String[] files;
+        try (Trace.Span span = Trace.begin(Trace.LIST)) {
+            files = dir.list(PLAIN_FILES);
+        }
         if (files == null) {
             return null;
         } else {
@@ -184,8 +265,82 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the paths of all plain files under the current directory,
+     *  outside its .gitlet directory, in lexicographic order as Java
+     *  Strings.  Paths are relative, with '/' between components.
+     *  Symbolic links to directories are not followed. */
+    static List<String> workingFiles() {
+        List<String> result = new ArrayList<>();
+        try (Trace.Span span = Trace.begin(Trace.LIST)) {
+            addWorkingFiles(new File("."), "", result);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the paths, relative to DIR, of all plain files under DIR,
+     *  in lexicographic order as Java Strings, with '/' between
+     *  components.  Returns an empty list if DIR does not denote a
+     *  directory. */
+    static List<String> plainFilesUnder(File dir) {
+        List<String> result = new ArrayList<>();
+        try (Trace.Span span = Trace.begin(Trace.LIST)) {
+            addWorkingFiles(dir, "", result);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add to RESULT the paths, each preceded by PREFIX, of the plain
+     *  files under DIR, leaving out a .gitlet directory at the top. */
+    private static void addWorkingFiles(File dir, String prefix,
+                                        List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                result.add(prefix + name);
+            } else if (file.isDirectory()
+                       && !(prefix.isEmpty() && name.equals(".gitlet"))
+                       && !Files.isSymbolicLink(file.toPath())) {
+                addWorkingFiles(file, prefix + name + "/", result);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
+    /** Atomically rename FROM to TO, replacing TO if it exists.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void rename(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replace the contents of FILE with CONTENTS atomically: they are
+     *  written to a temporary file in the same directory, which is then
+     *  renamed over FILE.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void writeAtomically(File file, byte[] contents) {
+        File tmp;
+        try {
+            tmp = File.createTempFile("tmp-", null,
+                                      file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeContents(tmp, contents);
+        rename(tmp, file);
+    }
+
     /** Return the concatentation of FIRST and OTHERS into a File designator,
      *  analogous to the java.nio.file.Paths.get(String, String[])
      *  method. */